@@ -5,6 +5,7 @@ import chess.ChessMove;
 import com.google.gson.Gson;
 import exception.RequestException;
 import ui.GameplayUI;
+import websocket.BinaryCodec;
 import websocket.commands.UserGameCommand;
 import websocket.messages.*;
 
@@ -13,75 +14,160 @@ import jakarta.websocket.*;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 
 //need to extend Endpoint for websocket to work properly
 @ClientEndpoint
 public class WebsocketFacade extends Endpoint {
 
+    private static final int MAX_RECONNECT_ATTEMPTS = 5;
+
     Session session;
     GameplayUI client;
+    private URI socketURI;
+    private final boolean binary;
+    private boolean authTokenBound = false;
+
+    //What we need to resume our place in the game if the connection drops
+    private String authToken;
+    private Integer gameID;
+    private ChessGame.TeamColor team;
+    private volatile long lastSequence = 0;
+    private volatile boolean resumable = false;
 
     public WebsocketFacade(String url, GameplayUI client) {
+        this(url, client, false);
+    }
+
+    /**
+     * @param binary true to talk to the server with compact binary frames instead of JSON
+     */
+    public WebsocketFacade(String url, GameplayUI client, boolean binary) {
         this.client = client;
+        this.binary = binary;
         try {
             url = url.replace("http", "ws");
-            URI socketURI = new URI(url + "/ws");
+            socketURI = new URI(url + "/ws");
+            openSession();
+        } catch (DeploymentException | IOException | URISyntaxException ex) {
+            String message = "Error: Something went wrong setting up the Websocket Facade.\n" + ex.getMessage();
+            client.handleMessage(new ErrorMessage(message));
+        }
+    }
 
-            WebSocketContainer container = ContainerProvider.getWebSocketContainer();
-            this.session = container.connectToServer(this, socketURI);
+    private void openSession() throws DeploymentException, IOException {
+        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        this.session = container.connectToServer(this, socketURI);
+        authTokenBound = false;
 
-            //set message handler
+        //set message handler
+        if (binary) {
+            this.session.addMessageHandler(new MessageHandler.Whole<ByteBuffer>() {
+                @Override
+                public void onMessage(ByteBuffer message) {
+                    try {
+                        receive(BinaryCodec.decodeMessage(message));
+                    } catch (RequestException ex) {
+                        client.handleMessage(new ErrorMessage(ex.getMessage()));
+                    }
+                }
+            });
+        } else {
             this.session.addMessageHandler(new MessageHandler.Whole<String>() {
                 @Override
                 public void onMessage(String message) {
-                    ServerMessage serverMessage = new Gson().fromJson(message, ServerMessage.class);
-                    client.handleMessage(serverMessage);
+                    receive(parseMessage(message));
                 }
             });
-        } catch (DeploymentException | IOException | URISyntaxException ex) {
-            String message = "Error: Something went wrong setting up the Websocket Facade.\n" + ex.getMessage();
-            client.handleMessage(new ErrorMessage(message));
         }
     }
 
+    private void receive(ServerMessage serverMessage) {
+        if (serverMessage.getSequence() != null) {
+            lastSequence = serverMessage.getSequence();
+        }
+        client.handleMessage(serverMessage);
+    }
+
     //Endpoint requires this method, but you don't have to do anything
     @Override
     public void onOpen(Session session, EndpointConfig endpointConfig) {
     }
 
-    public void connectToGame(String authToken, Integer gameID, ChessGame.TeamColor team) throws RequestException {
-        try {
-            var command = new UserGameCommand(UserGameCommand.CommandType.CONNECT, authToken, gameID, team);
-            this.session.getBasicRemote().sendText(new Gson().toJson(command));
-        } catch (IOException ex) {
-            throw new RequestException(ex.getMessage(), RequestException.Code.ServerError);
+    @Override
+    public void onClose(Session session, CloseReason closeReason) {
+        if (resumable && session == this.session) {
+            new Thread(this::reconnect).start();
         }
     }
 
-    public void makeMove(String authToken, Integer gameID, ChessMove move, ChessGame.TeamColor team) throws RequestException {
-        try {
-            var command = new UserGameCommand(UserGameCommand.CommandType.MAKE_MOVE, authToken, gameID, move, team);
-            this.session.getBasicRemote().sendText(new Gson().toJson(command));
-        } catch (IOException ex) {
-            throw new RequestException(ex.getMessage(), RequestException.Code.ServerError);
+    private void reconnect() {
+        long delay = 500;
+        for (int attempt = 0; attempt < MAX_RECONNECT_ATTEMPTS && resumable; attempt++) {
+            try {
+                Thread.sleep(delay);
+                openSession();
+                sendCommand(new UserGameCommand(UserGameCommand.CommandType.RESUME, authToken, gameID, team,
+                        true, lastSequence));
+                return;
+            } catch (DeploymentException | IOException | RequestException ex) {
+                delay *= 2;
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+        if (resumable) {
+            client.handleMessage(new ErrorMessage("Lost the connection to the server. Try rejoining the game."));
         }
     }
 
-    public void leaveGame(String authToken, Integer gameID, ChessGame.TeamColor team) throws RequestException {
+    private ServerMessage parseMessage(String message) {
+        Gson serializer = new Gson();
+        ServerMessage serverMessage = serializer.fromJson(message, ServerMessage.class);
+        return switch (serverMessage.getServerMessageType()) {
+            case LOAD_GAME -> serializer.fromJson(message, LoadGame.class);
+            case ERROR -> serializer.fromJson(message, ErrorMessage.class);
+            case NOTIFICATION -> serializer.fromJson(message, Notification.class);
+            case MOVE_APPLIED -> serializer.fromJson(message, MoveApplied.class);
+        };
+    }
+
+    private synchronized void sendCommand(UserGameCommand command) throws RequestException {
         try {
-            var command = new UserGameCommand(UserGameCommand.CommandType.LEAVE, authToken, gameID, team);
-            this.session.getBasicRemote().sendText(new Gson().toJson(command));
+            if (binary) {
+                //The server remembers our auth token after the first frame on a connection
+                this.session.getBasicRemote().sendBinary(BinaryCodec.encodeCommand(command, !authTokenBound));
+                authTokenBound = true;
+            } else {
+                this.session.getBasicRemote().sendText(new Gson().toJson(command));
+            }
         } catch (IOException ex) {
             throw new RequestException(ex.getMessage(), RequestException.Code.ServerError);
         }
     }
 
+    public void connectToGame(String authToken, Integer gameID, ChessGame.TeamColor team) throws RequestException {
+        this.authToken = authToken;
+        this.gameID = gameID;
+        this.team = team;
+        resumable = true;
+        sendCommand(new UserGameCommand(UserGameCommand.CommandType.CONNECT, authToken, gameID, team, true));
+    }
+
+    public void requestSync(String authToken, Integer gameID) throws RequestException {
+        sendCommand(new UserGameCommand(UserGameCommand.CommandType.SYNC, authToken, gameID));
+    }
+
+    public void makeMove(String authToken, Integer gameID, ChessMove move, ChessGame.TeamColor team) throws RequestException {
+        sendCommand(new UserGameCommand(UserGameCommand.CommandType.MAKE_MOVE, authToken, gameID, move, team));
+    }
+
+    public void leaveGame(String authToken, Integer gameID, ChessGame.TeamColor team) throws RequestException {
+        resumable = false;
+        sendCommand(new UserGameCommand(UserGameCommand.CommandType.LEAVE, authToken, gameID, team));
+    }
+
     public void resign(String authToken, Integer gameID, ChessGame.TeamColor team) throws RequestException {
-        try {
-            var command = new UserGameCommand(UserGameCommand.CommandType.RESIGN, authToken, gameID, team);
-            this.session.getBasicRemote().sendText(new Gson().toJson(command));
-        } catch (IOException ex) {
-            throw new RequestException(ex.getMessage(), RequestException.Code.ServerError);
-        }
+        sendCommand(new UserGameCommand(UserGameCommand.CommandType.RESIGN, authToken, gameID, team));
     }
 }
@@ -23,7 +23,7 @@ public class GameplayUI extends ClientUI {
         this.gameID = gameID;
         this.teamColor = teamColor;
 
-        ws = new WebsocketFacade(serverFacade.getServerUrl(), this);
+        ws = new WebsocketFacade(serverFacade.getServerUrl(), this, true);
         ws.connectToGame(authToken, gameID, teamColor);
     }
 
@@ -72,10 +72,39 @@ public class GameplayUI extends ClientUI {
         } else if (serverMessage.getServerMessageType() == ServerMessage.ServerMessageType.LOAD_GAME) {
             LoadGame loadGame = (LoadGame) serverMessage;
             displayBoard(loadGame.getGame(), null);
+        } else if (serverMessage.getServerMessageType() == ServerMessage.ServerMessageType.MOVE_APPLIED) {
+            MoveApplied moveApplied = (MoveApplied) serverMessage;
+            if (!applyMove(moveApplied)) {
+                requestSync();
+                return;
+            }
+            displayBoard(currentGame, null);
         }
         printPrompt();
     }
 
+    //Returns false if our copy of the game has fallen out of step with the server's
+    private boolean applyMove(MoveApplied moveApplied) {
+        if (currentGame == null || moveApplied.getMoveSequence() != currentGame.getMoveCount() + 1) {
+            return false;
+        }
+        try {
+            currentGame.makeMove(moveApplied.getMove());
+        } catch (InvalidMoveException ex) {
+            return false;
+        }
+        return currentGame.positionHash() == moveApplied.getPositionHash();
+    }
+
+    private void requestSync() {
+        try {
+            ws.requestSync(authToken, gameID);
+        } catch (RequestException ex) {
+            System.out.println(formatError(ex.getMessage()));
+            printPrompt();
+        }
+    }
+
     @Override
     public String help() {
         String helpString = "";
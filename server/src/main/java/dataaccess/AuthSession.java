@@ -0,0 +1,10 @@
+package dataaccess;
+
+import datamodel.AuthData;
+
+import java.time.Instant;
+
+/**
+ * An auth token with when it was issued and when it was last used.
+ */
+public record AuthSession(AuthData authData, Instant issuedAt, Instant lastSeen) {}
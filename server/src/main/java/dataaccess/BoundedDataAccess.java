@@ -0,0 +1,215 @@
+package dataaccess;
+
+import datamodel.*;
+import exception.RequestException;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Wraps another DataAccess so only a fixed number of calls can be running against it
+ * at once. With virtual threads there can be far more requests in flight than the
+ * database can serve, so the rest wait here instead of piling up on the database.
+ */
+public class BoundedDataAccess implements DataAccess {
+
+    private interface Call<T> {
+        T run() throws RequestException;
+    }
+
+    private final DataAccess dataAccess;
+    private final Semaphore permits;
+
+    public BoundedDataAccess(DataAccess dataAccess, int maxConcurrency) {
+        this.dataAccess = dataAccess;
+        this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+    private <T> T bounded(Call<T> call) throws RequestException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RequestException("Error: interrupted waiting for the database", RequestException.Code.ServerError);
+        }
+        try {
+            return call.run();
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void clear() throws RequestException {
+        bounded(() -> {
+            dataAccess.clear();
+            return null;
+        });
+    }
+
+    @Override
+    public void createUser(UserData user) throws RequestException {
+        bounded(() -> {
+            dataAccess.createUser(user);
+            return null;
+        });
+    }
+
+    @Override
+    public UserData getUser(String username) throws RequestException {
+        return bounded(() -> dataAccess.getUser(username));
+    }
+
+    @Override
+    public int nextGameID() throws RequestException {
+        return bounded(dataAccess::nextGameID);
+    }
+
+    @Override
+    public void createGame(GameData gameData) throws RequestException {
+        bounded(() -> {
+            dataAccess.createGame(gameData);
+            return null;
+        });
+    }
+
+    @Override
+    public GameData getGame(Integer gameID) throws RequestException {
+        return bounded(() -> dataAccess.getGame(gameID));
+    }
+
+    @Override
+    public VersionedGame getVersionedGame(Integer gameID) throws RequestException {
+        return bounded(() -> dataAccess.getVersionedGame(gameID));
+    }
+
+    @Override
+    public ArrayList<GameData> listGames() throws RequestException {
+        return bounded(dataAccess::listGames);
+    }
+
+    @Override
+    public GamesWatermark gamesWatermark() throws RequestException {
+        return bounded(dataAccess::gamesWatermark);
+    }
+
+    @Override
+    public ArrayList<GameData> listGamesByState(GameData.GameState state) throws RequestException {
+        return bounded(() -> dataAccess.listGamesByState(state));
+    }
+
+    @Override
+    public ArrayList<GameData> listGamesForPlayer(String username) throws RequestException {
+        return bounded(() -> dataAccess.listGamesForPlayer(username));
+    }
+
+    @Override
+    public void updateGame(Integer gameID, GameData gameData) throws RequestException {
+        bounded(() -> {
+            dataAccess.updateGame(gameID, gameData);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean compareAndUpdateGame(int expectedVersion, GameData gameData) throws RequestException {
+        return bounded(() -> dataAccess.compareAndUpdateGame(expectedVersion, gameData));
+    }
+
+    @Override
+    public void createGames(List<GameData> games) throws RequestException {
+        bounded(() -> {
+            dataAccess.createGames(games);
+            return null;
+        });
+    }
+
+    @Override
+    public void updateGames(List<GameData> games) throws RequestException {
+        bounded(() -> {
+            dataAccess.updateGames(games);
+            return null;
+        });
+    }
+
+    @Override
+    public void appendMoves(List<MoveRecord> moves) throws RequestException {
+        bounded(() -> {
+            dataAccess.appendMoves(moves);
+            return null;
+        });
+    }
+
+    @Override
+    public ArrayList<MoveRecord> getMoves(int gameID) throws RequestException {
+        return bounded(() -> dataAccess.getMoves(gameID));
+    }
+
+    @Override
+    public ArrayList<Integer> archiveCompletedGames(Instant cutoff) throws RequestException {
+        return bounded(() -> dataAccess.archiveCompletedGames(cutoff));
+    }
+
+    @Override
+    public void createAuth(AuthSession session) throws RequestException {
+        bounded(() -> {
+            dataAccess.createAuth(session);
+            return null;
+        });
+    }
+
+    @Override
+    public AuthSession getAuthSession(String authToken) throws RequestException {
+        return bounded(() -> dataAccess.getAuthSession(authToken));
+    }
+
+    @Override
+    public void touchAuth(String authToken, Instant lastSeen) throws RequestException {
+        bounded(() -> {
+            dataAccess.touchAuth(authToken, lastSeen);
+            return null;
+        });
+    }
+
+    @Override
+    public ArrayList<AuthSession> listAuthsForUser(String username) throws RequestException {
+        return bounded(() -> dataAccess.listAuthsForUser(username));
+    }
+
+    @Override
+    public ArrayList<AuthData> deleteExpiredAuths(Instant lastSeenBefore, int limit) throws RequestException {
+        return bounded(() -> dataAccess.deleteExpiredAuths(lastSeenBefore, limit));
+    }
+
+    @Override
+    public void deleteAuth(AuthData authData) throws RequestException {
+        bounded(() -> {
+            dataAccess.deleteAuth(authData);
+            return null;
+        });
+    }
+
+    @Override
+    public void revokeToken(String authToken, Instant expiresAt) throws RequestException {
+        bounded(() -> {
+            dataAccess.revokeToken(authToken, expiresAt);
+            return null;
+        });
+    }
+
+    @Override
+    public Map<String, Instant> listRevokedTokens() throws RequestException {
+        return bounded(dataAccess::listRevokedTokens);
+    }
+
+    @Override
+    public void deleteExpiredRevocations(Instant now) throws RequestException {
+        bounded(() -> {
+            dataAccess.deleteExpiredRevocations(now);
+            return null;
+        });
+    }
+}
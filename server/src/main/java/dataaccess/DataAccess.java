@@ -3,17 +3,126 @@ package dataaccess;
 import datamodel.*;
 import exception.RequestException;
 
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 public interface DataAccess {
+    int MAX_UPDATE_ATTEMPTS = 16;
+    /**
+     * The version reported for archived games. A compare-and-update at this version brings
+     * the game back out of the archive.
+     */
+    int ARCHIVED_VERSION = -1;
+
     void clear() throws RequestException;
     void createUser(UserData user) throws RequestException;
     UserData getUser(String username) throws RequestException;
+    /**
+     * @return a game id that has never been handed out before
+     */
+    int nextGameID() throws RequestException;
     void createGame(GameData gameData) throws RequestException;
+    /**
+     * @return the game, looking in the archive if it isn't one of the current games
+     */
     GameData getGame(Integer gameID) throws RequestException;
+    VersionedGame getVersionedGame(Integer gameID) throws RequestException;
+    /**
+     * @return every game that hasn't been archived
+     */
     ArrayList<GameData> listGames() throws RequestException;
+    GamesWatermark gamesWatermark() throws RequestException;
+    ArrayList<GameData> listGamesByState(GameData.GameState state) throws RequestException;
+    ArrayList<GameData> listGamesForPlayer(String username) throws RequestException;
     void updateGame(Integer gameID, GameData gameData) throws RequestException;
-    void createAuth(AuthData authData) throws RequestException;
-    AuthData getAuth(String authToken) throws RequestException;
+    /**
+     * Replaces a game only if nobody else has written it since it was read.
+     *
+     * @param expectedVersion the version the game was at when it was read
+     * @param gameData        the new game, with the same game id
+     * @return true if the game was replaced, false if its version has moved on
+     */
+    boolean compareAndUpdateGame(int expectedVersion, GameData gameData) throws RequestException;
+    void appendMoves(List<MoveRecord> moves) throws RequestException;
+    /**
+     * @return the game's moves, in the order they were made
+     */
+    ArrayList<MoveRecord> getMoves(int gameID) throws RequestException;
+    /**
+     * Moves completed games that haven't been written since the cutoff, and their moves,
+     * into the compressed archive.
+     *
+     * @return the ids of the games archived
+     */
+    ArrayList<Integer> archiveCompletedGames(Instant cutoff) throws RequestException;
+    void createAuth(AuthSession session) throws RequestException;
+    AuthSession getAuthSession(String authToken) throws RequestException;
+    /**
+     * Records that the token has been used, for sliding expiry.
+     */
+    void touchAuth(String authToken, Instant lastSeen) throws RequestException;
+    ArrayList<AuthSession> listAuthsForUser(String username) throws RequestException;
     void deleteAuth(AuthData authData) throws RequestException;
+    /**
+     * Deletes up to {@code limit} tokens that haven't been used since the cutoff.
+     *
+     * @return the tokens deleted
+     */
+    ArrayList<AuthData> deleteExpiredAuths(Instant lastSeenBefore, int limit) throws RequestException;
+    /**
+     * Remembers that a signed token has ended, until it would have expired anyway.
+     */
+    void revokeToken(String authToken, Instant expiresAt) throws RequestException;
+    /**
+     * @return the revoked tokens with when each expires
+     */
+    Map<String, Instant> listRevokedTokens() throws RequestException;
+    void deleteExpiredRevocations(Instant now) throws RequestException;
+
+    /**
+     * Creates the token as issued and last used now.
+     */
+    default void createAuth(AuthData authData) throws RequestException {
+        Instant now = Instant.now();
+        createAuth(new AuthSession(authData, now, now));
+    }
+
+    default AuthData getAuth(String authToken) throws RequestException {
+        AuthSession session = getAuthSession(authToken);
+        return session == null ? null : session.authData();
+    }
+
+    default void createGames(List<GameData> games) throws RequestException {
+        for (GameData gameData : games) {
+            createGame(gameData);
+        }
+    }
+
+    default void updateGames(List<GameData> games) throws RequestException {
+        for (GameData gameData : games) {
+            updateGame(gameData.gameID(), gameData);
+        }
+    }
+
+    /**
+     * Reads a game, applies the update and writes it back, trying again from a fresh read
+     * whenever someone else has written the game in between.
+     *
+     * @return the game as written, or null if there is no game with that id
+     */
+    default GameData updateGame(int gameID, GameUpdate update) throws RequestException {
+        for (int attempt = 0; attempt < MAX_UPDATE_ATTEMPTS; attempt++) {
+            VersionedGame current = getVersionedGame(gameID);
+            if (current == null) {
+                return null;
+            }
+            GameData updated = update.apply(current.gameData());
+            if (updated == current.gameData() || compareAndUpdateGame(current.version(), updated)) {
+                return updated;
+            }
+        }
+        throw new RequestException("Error: the game is too busy, try again", RequestException.Code.ServiceUnavailableError);
+    }
 }
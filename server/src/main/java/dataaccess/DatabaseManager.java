@@ -1,13 +1,29 @@
 package dataaccess;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.*;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 public class DatabaseManager {
     private static String databaseName;
     private static String dbUsername;
     private static String dbPassword;
     private static String connectionUrl;
+    private static BlockingQueue<IdleConnection> idleConnections;
+
+    //Each connection caches its prepared statements, and the server keeps them compiled
+    private static final String CONNECTION_OPTIONS = "?cachePrepStmts=true&useServerPrepStmts=true" +
+            "&prepStmtCacheSize=256&prepStmtCacheSqlLimit=2048&rewriteBatchedStatements=true";
+    private static final int DEFAULT_POOL_SIZE = 10;
+    //Connections idle for longer than this are checked before use, since the server may have dropped them
+    private static final long VALIDATE_AFTER_IDLE_MILLIS = 30_000;
+
+    private record IdleConnection(Connection conn, long idleSince) {}
 
     /*
      * Load the database information for the db.properties file.
@@ -30,9 +46,9 @@ public class DatabaseManager {
     }
 
     /**
-     * Create a connection to the database and sets the catalog based upon the
-     * properties specified in db.properties. Connections to the database should
-     * be short-lived, and you must close the connection when you are done with it.
+     * Gets a connection to the database from the pool, with the catalog set based upon the
+     * properties specified in db.properties. Closing the connection hands it back to the
+     * pool, so you must still close it when you are done with it.
      * The easiest way to do that is with a try-with-resource block.
      * <br/>
      * <code>
@@ -42,16 +58,101 @@ public class DatabaseManager {
      * </code>
      */
     static Connection getConnection() throws DataAccessException {
+        IdleConnection idle = idleConnections.poll();
+        Connection conn = (idle == null ? null : idle.conn());
         try {
-            //do not wrap the following line with a try-with-resources
-            var conn = DriverManager.getConnection(connectionUrl, dbUsername, dbPassword);
-            conn.setCatalog(databaseName);
-            return conn;
+            boolean stale = (idle != null && System.currentTimeMillis() - idle.idleSince() > VALIDATE_AFTER_IDLE_MILLIS);
+            if (conn == null || (stale && !conn.isValid(1))) {
+                if (conn != null) {
+                    conn.close();
+                }
+                //do not wrap the following line with a try-with-resources
+                conn = DriverManager.getConnection(connectionUrl + CONNECTION_OPTIONS, dbUsername, dbPassword);
+                conn.setCatalog(databaseName);
+            }
+            return pooled(conn);
         } catch (SQLException ex) {
             throw new DataAccessException("failed to get connection", ex);
         }
     }
 
+    //Wraps a connection so close() puts it back in the pool (with its statement cache) instead
+    private static Connection pooled(Connection conn) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                new PooledConnection(conn));
+    }
+
+    private static class PooledConnection implements InvocationHandler {
+        private final Connection conn;
+        //Whether a call on the connection threw
+        private boolean failed = false;
+        //Once closed the connection may belong to someone else, so the proxy must not touch it
+        private boolean closed = false;
+
+        PooledConnection(Connection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!closed) {
+                        closed = true;
+                        release(conn, failed);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    if (closed) {
+                        return true;
+                    }
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "pooled " + conn;
+                }
+                default -> {
+                    if (closed) {
+                        throw new SQLException("connection has been closed");
+                    }
+                }
+            }
+            try {
+                return method.invoke(conn, args);
+            } catch (InvocationTargetException ex) {
+                failed = true;
+                throw ex.getCause();
+            }
+        }
+    }
+
+    /**
+     * @param failed whether a call on the connection threw, in which case it is only kept if it
+     *               still works
+     */
+    private static void release(Connection conn, boolean failed) throws SQLException {
+        if (conn.isClosed()) {
+            return;
+        }
+        if (failed && !conn.isValid(1)) {
+            conn.close();
+            return;
+        }
+        if (!conn.getAutoCommit()) {
+            conn.rollback();
+            conn.setAutoCommit(true);
+        }
+        if (!idleConnections.offer(new IdleConnection(conn, System.currentTimeMillis()))) {
+            conn.close();
+        }
+    }
+
     private static void loadPropertiesFromResources() {
         try (var propStream = Thread.currentThread().getContextClassLoader().getResourceAsStream("db.properties")) {
             if (propStream == null) {
@@ -73,5 +174,22 @@ public class DatabaseManager {
         var host = props.getProperty("db.host");
         var port = Integer.parseInt(props.getProperty("db.port"));
         connectionUrl = String.format("jdbc:mysql://%s:%d", host, port);
+        String poolSize = props.getProperty("db.poolSize");
+        closeIdleConnections();
+        idleConnections = new ArrayBlockingQueue<>(poolSize == null ? DEFAULT_POOL_SIZE : Integer.parseInt(poolSize));
+    }
+
+    //Pooled connections may point at the old database settings
+    private static void closeIdleConnections() {
+        if (idleConnections == null) {
+            return;
+        }
+        IdleConnection idle;
+        while ((idle = idleConnections.poll()) != null) {
+            try {
+                idle.conn().close();
+            } catch (SQLException ignored) {
+            }
+        }
     }
 }
@@ -0,0 +1,610 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import datamodel.*;
+import exception.RequestException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps everything in memory like {@link MemoryDataAccess}, but also makes every write
+ * durable in a directory on disk, so no database server is needed.
+ * <p>
+ * Each write is applied in memory and appended to a write-ahead log, and the call only
+ * returns once the log has been fsynced (writers waiting together share one fsync).
+ * When the log gets big, the whole state is written out as a compact snapshot and the
+ * log starts over. On startup the snapshot and then the log are read back through
+ * memory mappings.
+ * <p>
+ * Each snapshot gets the next generation number, and the log it starts is marked with the
+ * same one. If the server dies after writing a snapshot but before emptying the log, the
+ * log's older generation shows that its records are already in the snapshot, so they
+ * aren't replayed twice.
+ * <p>
+ * A batch is checked before any of it is applied, so it goes into memory and the log
+ * whole or not at all. If the log can't be written, memory may hold writes the disk
+ * doesn't, so from then on every call fails until a restart reloads what is on disk.
+ */
+public class FileDataAccess implements DataAccess, AutoCloseable {
+
+    public static final long DEFAULT_SNAPSHOT_THRESHOLD = 16 * 1024 * 1024;
+
+    private static final String SNAPSHOT_FILE = "snapshot.dat";
+    private static final String LOG_FILE = "wal.log";
+
+    private static final byte CLEAR = 0;
+    private static final byte USER = 1;
+    private static final byte NEXT_GAME_ID = 2;
+    private static final byte CREATE_GAME = 3;
+    private static final byte UPDATE_GAME = 4;
+    private static final byte VERSIONED_GAME = 5;
+    private static final byte AUTH = 6;
+    private static final byte DELETE_AUTH = 7;
+    private static final byte MOVES = 8;
+    private static final byte ARCHIVE = 9;
+    private static final byte ARCHIVED_GAME = 10;
+    private static final byte AUTH_SESSION = 11;
+    private static final byte TOUCH_AUTH = 12;
+    private static final byte GENERATION = 13;
+    private static final byte REVOKE_TOKEN = 14;
+    private static final byte DELETE_REVOCATIONS = 15;
+
+    private interface Write {
+        /**
+         * @return the log records for the write, once it has been applied in memory
+         */
+        List<byte[]> apply() throws RequestException;
+    }
+
+    private final MemoryDataAccess memory = new MemoryDataAccess();
+    private final Path snapshotPath;
+    private final long snapshotThreshold;
+    private final WriteAheadLog log;
+    //Writes are applied and logged in the same order, and a snapshot sees no half-done write
+    private final ReentrantLock writeLock = new ReentrantLock();
+    //The generation of the snapshot, and of the log records written since it
+    private long generation;
+    //The last generation record read while replaying a file
+    private long replayedGeneration;
+    //Set once the log has failed, after which memory can't be trusted to match the disk
+    private volatile boolean failed = false;
+
+    public FileDataAccess(Path directory) throws RequestException {
+        this(directory, DEFAULT_SNAPSHOT_THRESHOLD);
+    }
+
+    public FileDataAccess(Path directory, long snapshotThreshold) throws RequestException {
+        this.snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        this.snapshotThreshold = snapshotThreshold;
+        try {
+            Files.createDirectories(directory);
+            WriteAheadLog.replay(snapshotPath, this::replayRecord);
+            generation = replayedGeneration;
+            replayedGeneration = 0;
+            WriteAheadLog.replay(directory.resolve(LOG_FILE), record -> {
+                //Records from before the snapshot are already in it
+                if (record.get(0) == GENERATION || replayedGeneration >= generation) {
+                    replayRecord(record);
+                }
+            });
+            log = new WriteAheadLog(directory.resolve(LOG_FILE));
+            if (replayedGeneration < generation) {
+                startLog();
+            }
+        } catch (IOException | RuntimeException ex) {
+            throw new RequestException("Error: unable to load data from " + directory, RequestException.Code.DataAccessError);
+        }
+    }
+
+    @Override
+    public void clear() throws RequestException {
+        write(() -> {
+            memory.clear();
+            return List.of(new byte[]{CLEAR});
+        });
+    }
+
+    @Override
+    public void createUser(UserData user) throws RequestException {
+        write(() -> {
+            memory.createUser(user);
+            return List.of(record(USER, out -> {
+                writeString(out, user.username());
+                writeString(out, user.password());
+                writeString(out, user.email());
+            }));
+        });
+    }
+
+    @Override
+    public UserData getUser(String username) throws RequestException {
+        checkUsable();
+        return memory.getUser(username);
+    }
+
+    @Override
+    public int nextGameID() throws RequestException {
+        int[] gameID = new int[1];
+        write(() -> {
+            gameID[0] = memory.nextGameID();
+            return List.of(record(NEXT_GAME_ID, out -> out.writeInt(gameID[0] + 1)));
+        });
+        return gameID[0];
+    }
+
+    @Override
+    public void createGame(GameData gameData) throws RequestException {
+        createGames(List.of(gameData));
+    }
+
+    @Override
+    public void createGames(List<GameData> games) throws RequestException {
+        write(() -> {
+            Set<Integer> gameIDs = new HashSet<>();
+            for (GameData gameData : games) {
+                if (gameData.gameName() == null || gameData.game() == null || !gameIDs.add(gameData.gameID()) ||
+                        memory.getVersionedGame(gameData.gameID()) != null) {
+                    throw new RequestException("data access error", RequestException.Code.DataAccessError);
+                }
+            }
+            List<byte[]> records = new ArrayList<>();
+            for (GameData gameData : games) {
+                memory.createGame(gameData);
+                records.add(record(CREATE_GAME, out -> writeGame(out, gameData)));
+            }
+            return records;
+        });
+    }
+
+    @Override
+    public GameData getGame(Integer gameID) throws RequestException {
+        checkUsable();
+        return memory.getGame(gameID);
+    }
+
+    @Override
+    public VersionedGame getVersionedGame(Integer gameID) throws RequestException {
+        checkUsable();
+        return memory.getVersionedGame(gameID);
+    }
+
+    @Override
+    public ArrayList<GameData> listGames() throws RequestException {
+        checkUsable();
+        return memory.listGames();
+    }
+
+    @Override
+    public GamesWatermark gamesWatermark() throws RequestException {
+        checkUsable();
+        return memory.gamesWatermark();
+    }
+
+    @Override
+    public ArrayList<GameData> listGamesByState(GameData.GameState state) throws RequestException {
+        checkUsable();
+        return memory.listGamesByState(state);
+    }
+
+    @Override
+    public ArrayList<GameData> listGamesForPlayer(String username) throws RequestException {
+        checkUsable();
+        return memory.listGamesForPlayer(username);
+    }
+
+    @Override
+    public void updateGame(Integer gameID, GameData gameData) throws RequestException {
+        write(() -> {
+            memory.updateGame(gameID, gameData);
+            return List.of(updateRecord(gameID, gameData));
+        });
+    }
+
+    @Override
+    public void updateGames(List<GameData> games) throws RequestException {
+        write(() -> {
+            for (GameData gameData : games) {
+                if (gameData.gameName() == null || gameData.game() == null) {
+                    throw new RequestException("data access error", RequestException.Code.DataAccessError);
+                }
+            }
+            List<byte[]> records = new ArrayList<>();
+            for (GameData gameData : games) {
+                memory.updateGame(gameData.gameID(), gameData);
+                records.add(updateRecord(gameData.gameID(), gameData));
+            }
+            return records;
+        });
+    }
+
+    @Override
+    public boolean compareAndUpdateGame(int expectedVersion, GameData gameData) throws RequestException {
+        boolean[] updated = new boolean[1];
+        write(() -> {
+            updated[0] = memory.compareAndUpdateGame(expectedVersion, gameData);
+            //A successful compare-and-set moves the version on by one, same as replaying a plain update
+            return updated[0] ? List.of(updateRecord(gameData.gameID(), gameData)) : List.of();
+        });
+        return updated[0];
+    }
+
+    @Override
+    public void appendMoves(List<MoveRecord> moves) throws RequestException {
+        write(() -> {
+            memory.appendMoves(moves);
+            return List.of(record(MOVES, out -> writeMoves(out, moves)));
+        });
+    }
+
+    @Override
+    public ArrayList<MoveRecord> getMoves(int gameID) throws RequestException {
+        checkUsable();
+        return memory.getMoves(gameID);
+    }
+
+    @Override
+    public ArrayList<Integer> archiveCompletedGames(Instant cutoff) throws RequestException {
+        ArrayList<Integer> archived = new ArrayList<>();
+        write(() -> {
+            ArrayList<Integer> gameIDs = memory.archiveCompletedGames(cutoff);
+            archived.addAll(gameIDs);
+            //Logged by id, since replaying at a later time would archive a different set
+            return gameIDs.isEmpty() ? List.of() : List.of(record(ARCHIVE, out -> {
+                out.writeInt(gameIDs.size());
+                for (int gameID : gameIDs) {
+                    out.writeInt(gameID);
+                }
+            }));
+        });
+        return archived;
+    }
+
+    @Override
+    public void createAuth(AuthSession session) throws RequestException {
+        write(() -> {
+            memory.createAuth(session);
+            return List.of(record(AUTH_SESSION, out -> writeAuthSession(out, session)));
+        });
+    }
+
+    @Override
+    public AuthSession getAuthSession(String authToken) throws RequestException {
+        checkUsable();
+        return memory.getAuthSession(authToken);
+    }
+
+    @Override
+    public void touchAuth(String authToken, Instant lastSeen) throws RequestException {
+        write(() -> {
+            memory.touchAuth(authToken, lastSeen);
+            return List.of(record(TOUCH_AUTH, out -> {
+                writeString(out, authToken);
+                out.writeLong(lastSeen.toEpochMilli());
+            }));
+        });
+    }
+
+    @Override
+    public ArrayList<AuthSession> listAuthsForUser(String username) throws RequestException {
+        checkUsable();
+        return memory.listAuthsForUser(username);
+    }
+
+    @Override
+    public void deleteAuth(AuthData authData) throws RequestException {
+        write(() -> {
+            memory.deleteAuth(authData);
+            return authData.authToken() == null ? List.of() :
+                    List.of(record(DELETE_AUTH, out -> writeString(out, authData.authToken())));
+        });
+    }
+
+    @Override
+    public void revokeToken(String authToken, Instant expiresAt) throws RequestException {
+        write(() -> {
+            memory.revokeToken(authToken, expiresAt);
+            return List.of(revocationRecord(authToken, expiresAt));
+        });
+    }
+
+    @Override
+    public Map<String, Instant> listRevokedTokens() throws RequestException {
+        checkUsable();
+        return memory.listRevokedTokens();
+    }
+
+    @Override
+    public void deleteExpiredRevocations(Instant now) throws RequestException {
+        write(() -> {
+            memory.deleteExpiredRevocations(now);
+            return List.of(record(DELETE_REVOCATIONS, out -> out.writeLong(now.toEpochMilli())));
+        });
+    }
+
+    @Override
+    public ArrayList<AuthData> deleteExpiredAuths(Instant lastSeenBefore, int limit) throws RequestException {
+        ArrayList<AuthData> deleted = new ArrayList<>();
+        write(() -> {
+            deleted.addAll(memory.deleteExpiredAuths(lastSeenBefore, limit));
+            List<byte[]> records = new ArrayList<>();
+            for (AuthData authData : deleted) {
+                records.add(record(DELETE_AUTH, out -> writeString(out, authData.authToken())));
+            }
+            return records;
+        });
+        return deleted;
+    }
+
+    /**
+     * Writes the whole state out as a snapshot and empties the log.
+     */
+    public void snapshot() throws RequestException {
+        writeLock.lock();
+        try {
+            checkUsable();
+            Path temp = snapshotPath.resolveSibling(SNAPSHOT_FILE + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                 OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel))) {
+                out.write(WriteAheadLog.frame(record(GENERATION, o -> o.writeLong(generation + 1))));
+                out.write(WriteAheadLog.frame(record(NEXT_GAME_ID, o -> o.writeInt(memory.peekNextGameID()))));
+                for (UserData user : memory.allUsers()) {
+                    out.write(WriteAheadLog.frame(record(USER, o -> {
+                        writeString(o, user.username());
+                        writeString(o, user.password());
+                        writeString(o, user.email());
+                    })));
+                }
+                for (AuthSession session : memory.allAuths()) {
+                    out.write(WriteAheadLog.frame(record(AUTH_SESSION, o -> writeAuthSession(o, session))));
+                }
+                for (Map.Entry<String, Instant> revoked : memory.listRevokedTokens().entrySet()) {
+                    out.write(WriteAheadLog.frame(revocationRecord(revoked.getKey(), revoked.getValue())));
+                }
+                for (VersionedGame game : memory.allGames()) {
+                    out.write(WriteAheadLog.frame(record(VERSIONED_GAME, o -> {
+                        writeGame(o, game.gameData());
+                        o.writeInt(game.version());
+                    })));
+                }
+                for (int gameID : memory.gamesWithMoves()) {
+                    List<MoveRecord> moves = memory.getMoves(gameID);
+                    out.write(WriteAheadLog.frame(record(MOVES, o -> writeMoves(o, moves))));
+                }
+                for (Map.Entry<Integer, byte[]> archived : memory.archivedGames().entrySet()) {
+                    out.write(WriteAheadLog.frame(record(ARCHIVED_GAME, o -> {
+                        o.writeInt(archived.getKey());
+                        o.writeInt(archived.getValue().length);
+                        o.write(archived.getValue());
+                    })));
+                }
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            generation++;
+            startLog();
+        } catch (IOException ex) {
+            throw new RequestException("Error: unable to write snapshot", RequestException.Code.DataAccessError);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    //Empties the log and marks it with the snapshot's generation
+    private void startLog() throws IOException {
+        log.reset();
+        log.awaitDurable(log.append(record(GENERATION, out -> out.writeLong(generation))));
+    }
+
+    private void snapshotIfLogIsLarge() throws RequestException, IOException {
+        writeLock.lock();
+        try {
+            //Another writer may have just taken the snapshot
+            if (log.size() > snapshotThreshold) {
+                snapshot();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    private void write(Write write) throws RequestException {
+        long sequence = 0;
+        writeLock.lock();
+        try {
+            checkUsable();
+            for (byte[] record : write.apply()) {
+                sequence = log.append(record);
+            }
+        } catch (IOException ex) {
+            throw logFailed();
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            if (sequence != 0) {
+                log.awaitDurable(sequence);
+            }
+        } catch (IOException ex) {
+            throw logFailed();
+        }
+        try {
+            if (log.size() > snapshotThreshold) {
+                snapshotIfLogIsLarge();
+            }
+        } catch (IOException ex) {
+            throw new RequestException("Error: unable to write to the log", RequestException.Code.DataAccessError);
+        }
+    }
+
+    private RequestException logFailed() {
+        failed = true;
+        return new RequestException("Error: unable to write to the log", RequestException.Code.DataAccessError);
+    }
+
+    private void checkUsable() throws RequestException {
+        if (failed) {
+            throw new RequestException("Error: the log failed, restart to reload from disk",
+                    RequestException.Code.DataAccessError);
+        }
+    }
+
+    private void replayRecord(ByteBuffer in) {
+        try {
+            switch (in.get()) {
+                case CLEAR -> memory.clear();
+                case GENERATION -> replayedGeneration = in.getLong();
+                case USER -> memory.createUser(new UserData(readString(in), readString(in), readString(in)));
+                case NEXT_GAME_ID -> memory.restoreNextGameID(in.getInt());
+                case CREATE_GAME -> memory.createGame(readGame(in));
+                case UPDATE_GAME -> memory.updateGame(in.getInt(), readGame(in));
+                case VERSIONED_GAME -> memory.restoreGame(new VersionedGame(readGame(in), in.getInt()));
+                //Written before tokens had timestamps, so they count as issued now
+                case AUTH -> memory.createAuth(new AuthData(readString(in), readString(in)));
+                case DELETE_AUTH -> memory.deleteAuth(new AuthData(null, readString(in)));
+                case AUTH_SESSION -> memory.createAuth(new AuthSession(new AuthData(readString(in), readString(in)),
+                        Instant.ofEpochMilli(in.getLong()), Instant.ofEpochMilli(in.getLong())));
+                case TOUCH_AUTH -> memory.touchAuth(readString(in), Instant.ofEpochMilli(in.getLong()));
+                case REVOKE_TOKEN -> memory.revokeToken(readString(in), Instant.ofEpochMilli(in.getLong()));
+                case DELETE_REVOCATIONS -> memory.deleteExpiredRevocations(Instant.ofEpochMilli(in.getLong()));
+                case MOVES -> memory.appendMoves(readMoves(in));
+                case ARCHIVE -> {
+                    int count = in.getInt();
+                    for (int i = 0; i < count; i++) {
+                        memory.archiveGame(in.getInt());
+                    }
+                }
+                case ARCHIVED_GAME -> {
+                    int gameID = in.getInt();
+                    byte[] archived = new byte[in.getInt()];
+                    in.get(archived);
+                    memory.restoreArchivedGame(gameID, archived);
+                }
+                default -> throw new IllegalStateException("unknown record type");
+            }
+        } catch (RequestException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private interface RecordBody {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] record(byte type, RecordBody body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            body.write(out);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] updateRecord(int gameID, GameData gameData) {
+        return record(UPDATE_GAME, out -> {
+            out.writeInt(gameID);
+            writeGame(out, gameData);
+        });
+    }
+
+    private static byte[] revocationRecord(String authToken, Instant expiresAt) {
+        return record(REVOKE_TOKEN, out -> {
+            writeString(out, authToken);
+            out.writeLong(expiresAt.toEpochMilli());
+        });
+    }
+
+    private static void writeAuthSession(DataOutputStream out, AuthSession session) throws IOException {
+        writeString(out, session.authData().username());
+        writeString(out, session.authData().authToken());
+        out.writeLong(session.issuedAt().toEpochMilli());
+        out.writeLong(session.lastSeen().toEpochMilli());
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeGame(DataOutputStream out, GameData gameData) throws IOException {
+        out.writeInt(gameData.gameID());
+        writeString(out, gameData.whiteUsername());
+        writeString(out, gameData.blackUsername());
+        writeString(out, gameData.gameName());
+        out.write(gameData.game().pack());
+        out.writeByte(gameData.state() == null ? -1 : gameData.state().ordinal());
+    }
+
+    private static GameData readGame(ByteBuffer in) {
+        int gameID = in.getInt();
+        String whiteUsername = readString(in);
+        String blackUsername = readString(in);
+        String gameName = readString(in);
+        byte[] packed = new byte[ChessGame.PACKED_SIZE];
+        in.get(packed);
+        int state = in.get();
+        return new GameData(gameID, whiteUsername, blackUsername, gameName, ChessGame.unpack(packed),
+                state < 0 ? null : GameData.GameState.values()[state]);
+    }
+
+    private static void writeMoves(DataOutputStream out, List<MoveRecord> moves) throws IOException {
+        out.writeInt(moves.size());
+        for (MoveRecord move : moves) {
+            out.writeInt(move.gameID());
+            out.writeInt(move.moveNumber());
+            out.writeShort(move.move().encode());
+        }
+    }
+
+    private static List<MoveRecord> readMoves(ByteBuffer in) {
+        int count = in.getInt();
+        List<MoveRecord> moves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            moves.add(new MoveRecord(in.getInt(), in.getInt(), ChessMove.decode(in.getShort() & 0xFFFF)));
+        }
+        return moves;
+    }
+}
@@ -0,0 +1,136 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.InvalidMoveException;
+import datamodel.GameData;
+import datamodel.MoveRecord;
+import exception.RequestException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The compressed form of a finished game, as kept in the archive.
+ * <p>
+ * A game is stored as its players, name and state plus its moves (2 bytes each, see
+ * {@link ChessMove#encode()}), all deflated. The board is rebuilt by replaying the
+ * moves from the start. Games whose moves don't replay to their final board (e.g.
+ * games from before moves were recorded) keep their packed board as well.
+ */
+final class GameArchive {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int HAS_BOARD = 1;
+    private static final int HAS_MOVE_NUMBERS = 2;
+
+    private GameArchive() {
+    }
+
+    static byte[] compress(GameData gameData, List<MoveRecord> moves) {
+        boolean consecutive = true;
+        for (int i = 0; i < moves.size(); i++) {
+            consecutive &= moves.get(i).moveNumber() == i + 1;
+        }
+        boolean replays = consecutive && Arrays.equals(replay(moves).pack(), gameData.game().pack());
+        int flags = (replays ? 0 : HAS_BOARD) | (consecutive ? 0 : HAS_MOVE_NUMBERS);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes,
+                new Deflater(Deflater.BEST_COMPRESSION)))) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeByte(flags);
+            out.writeByte(gameData.state() == null ? -1 : gameData.state().ordinal());
+            writeString(out, gameData.whiteUsername());
+            writeString(out, gameData.blackUsername());
+            writeString(out, gameData.gameName());
+            out.writeInt(moves.size());
+            for (MoveRecord move : moves) {
+                if ((flags & HAS_MOVE_NUMBERS) != 0) {
+                    out.writeInt(move.moveNumber());
+                }
+                out.writeShort(move.move().encode());
+            }
+            if ((flags & HAS_BOARD) != 0) {
+                out.write(gameData.game().pack());
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    static GameData gameData(int gameID, byte[] archived) throws RequestException {
+        return read(gameID, archived).gameData();
+    }
+
+    static ArrayList<MoveRecord> moves(int gameID, byte[] archived) throws RequestException {
+        return read(gameID, archived).moves();
+    }
+
+    private record Archived(GameData gameData, ArrayList<MoveRecord> moves) {}
+
+    private static Archived read(int gameID, byte[] archived) throws RequestException {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(archived)))) {
+            if (in.readByte() != FORMAT_VERSION) {
+                throw new IOException("unknown archive format");
+            }
+            int flags = in.readByte();
+            int state = in.readByte();
+            String whiteUsername = readString(in);
+            String blackUsername = readString(in);
+            String gameName = readString(in);
+            int count = in.readInt();
+            ArrayList<MoveRecord> moves = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int moveNumber = ((flags & HAS_MOVE_NUMBERS) != 0 ? in.readInt() : i + 1);
+                moves.add(new MoveRecord(gameID, moveNumber, ChessMove.decode(in.readUnsignedShort())));
+            }
+            ChessGame game;
+            if ((flags & HAS_BOARD) != 0) {
+                byte[] packed = new byte[ChessGame.PACKED_SIZE];
+                in.readFully(packed);
+                game = ChessGame.unpack(packed);
+            } else {
+                game = replay(moves);
+            }
+            return new Archived(new GameData(gameID, whiteUsername, blackUsername, gameName, game,
+                    state < 0 ? null : GameData.GameState.values()[state]), moves);
+        } catch (IOException | RuntimeException ex) {
+            throw new RequestException("Error: unable to read archived game", RequestException.Code.DataAccessError);
+        }
+    }
+
+    private static ChessGame replay(List<MoveRecord> moves) {
+        ChessGame game = new ChessGame();
+        try {
+            for (MoveRecord move : moves) {
+                game.makeMove(move.move());
+            }
+        } catch (InvalidMoveException ex) {
+            //Can't happen for moves the server accepted, and the board check catches it anyway
+        }
+        return game;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
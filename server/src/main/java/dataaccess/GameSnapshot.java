@@ -0,0 +1,191 @@
+package dataaccess;
+
+import chess.ChessGame;
+import datamodel.GameData;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * A memory-mapped file of fixed-size game records (id, state, usernames, name and
+ * packed board), so every game can be listed at startup without touching the database
+ * or Gson. Record i is at a fixed offset, and a game is only unpacked into a ChessGame
+ * when it is read.
+ * <p>
+ * The header has a clean flag that is cleared while a server is using the file, so a
+ * snapshot left behind by a crash is never trusted, and the {@link GamesWatermark} the
+ * database had when the snapshot was written, so one is only used if nothing has changed
+ * the games since.
+ */
+class GameSnapshot implements AutoCloseable {
+
+    private static final int MAGIC = 0x43484753;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 48;
+    private static final int CLEAN_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int WATERMARK_OFFSET = 16;
+
+    private static final int USERNAME_BYTES = 40;
+    private static final int NAME_BYTES = 64;
+    private static final int ID_OFFSET = 0;
+    private static final int STATE_OFFSET = 4;
+    private static final int FLAGS_OFFSET = 5;
+    private static final int WHITE_OFFSET = 6;
+    private static final int BLACK_OFFSET = WHITE_OFFSET + 1 + USERNAME_BYTES;
+    private static final int NAME_OFFSET = BLACK_OFFSET + 1 + USERNAME_BYTES;
+    private static final int BOARD_OFFSET = NAME_OFFSET + 1 + NAME_BYTES;
+    static final int RECORD_SIZE = 192;
+
+    //Set when a username or game name doesn't fit in its field, so the record can't be used
+    private static final int OVERFLOW = 1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer mapped;
+    private final int count;
+    private final HashMap<Integer, Integer> indexes = new HashMap<>();
+
+    private GameSnapshot(FileChannel channel, MappedByteBuffer mapped) {
+        this.channel = channel;
+        this.mapped = mapped;
+        this.count = mapped.getInt(COUNT_OFFSET);
+        for (int i = 0; i < count; i++) {
+            indexes.put(mapped.getInt(HEADER_SIZE + i * RECORD_SIZE + ID_OFFSET), i);
+        }
+    }
+
+    /**
+     * @return the snapshot, or null if there is no usable snapshot at that path
+     */
+    static GameSnapshot open(Path path) throws IOException {
+        if (!Files.exists(path) || Files.size(path) < HEADER_SIZE) {
+            return null;
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        int count = mapped.getInt(COUNT_OFFSET);
+        if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != FORMAT_VERSION || mapped.get(CLEAN_OFFSET) != 1 ||
+                channel.size() != HEADER_SIZE + (long) count * RECORD_SIZE) {
+            channel.close();
+            return null;
+        }
+        return new GameSnapshot(channel, mapped);
+    }
+
+    /**
+     * @param watermark the database's watermark, taken before the games were read
+     */
+    static void write(Path path, Collection<GameData> games, GamesWatermark watermark) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + games.size() * RECORD_SIZE);
+        buffer.putInt(0, MAGIC).putInt(4, FORMAT_VERSION).put(CLEAN_OFFSET, (byte) 1).putInt(COUNT_OFFSET, games.size());
+        buffer.putLong(WATERMARK_OFFSET, watermark.count()).putLong(WATERMARK_OFFSET + 8, watermark.versions())
+                .putLong(WATERMARK_OFFSET + 16, watermark.lastWritten());
+        int offset = HEADER_SIZE;
+        for (GameData gameData : games) {
+            writeRecord(buffer, offset, gameData);
+            offset += RECORD_SIZE;
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Clears the clean flag, so the file is only trusted again once it has been rewritten.
+     */
+    void markInUse() {
+        mapped.put(CLEAN_OFFSET, (byte) 0);
+        mapped.force();
+    }
+
+    GamesWatermark watermark() {
+        return new GamesWatermark(mapped.getLong(WATERMARK_OFFSET), mapped.getLong(WATERMARK_OFFSET + 8),
+                mapped.getLong(WATERMARK_OFFSET + 16));
+    }
+
+    int size() {
+        return count;
+    }
+
+    int gameID(int index) {
+        return mapped.getInt(HEADER_SIZE + index * RECORD_SIZE + ID_OFFSET);
+    }
+
+    /**
+     * @return the index of the game's record, or -1 if the snapshot doesn't have it
+     */
+    int indexOf(int gameID) {
+        return indexes.getOrDefault(gameID, -1);
+    }
+
+    /**
+     * @return the game in that record, or null if it didn't fit and has to be read from
+     * the database instead
+     */
+    GameData read(int index) {
+        int offset = HEADER_SIZE + index * RECORD_SIZE;
+        if ((mapped.get(offset + FLAGS_OFFSET) & OVERFLOW) != 0) {
+            return null;
+        }
+        byte[] packed = new byte[ChessGame.PACKED_SIZE];
+        mapped.get(offset + BOARD_OFFSET, packed);
+        int state = mapped.get(offset + STATE_OFFSET);
+        return new GameData(mapped.getInt(offset + ID_OFFSET), readString(offset + WHITE_OFFSET),
+                readString(offset + BLACK_OFFSET), readString(offset + NAME_OFFSET), ChessGame.unpack(packed),
+                state < 0 ? null : GameData.GameState.values()[state]);
+    }
+
+    private String readString(int offset) {
+        int length = mapped.get(offset);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        mapped.get(offset + 1, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeRecord(ByteBuffer buffer, int offset, GameData gameData) {
+        buffer.putInt(offset + ID_OFFSET, gameData.gameID());
+        buffer.put(offset + STATE_OFFSET, (byte) (gameData.state() == null ? -1 : gameData.state().ordinal()));
+        boolean fits = writeString(buffer, offset + WHITE_OFFSET, gameData.whiteUsername(), USERNAME_BYTES)
+                & writeString(buffer, offset + BLACK_OFFSET, gameData.blackUsername(), USERNAME_BYTES)
+                & writeString(buffer, offset + NAME_OFFSET, gameData.gameName(), NAME_BYTES);
+        buffer.put(offset + FLAGS_OFFSET, (byte) (fits ? 0 : OVERFLOW));
+        buffer.put(offset + BOARD_OFFSET, gameData.game().pack());
+    }
+
+    private static boolean writeString(ByteBuffer buffer, int offset, String string, int capacity) {
+        if (string == null) {
+            buffer.put(offset, (byte) -1);
+            return true;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > capacity) {
+            return false;
+        }
+        buffer.put(offset, (byte) bytes.length);
+        buffer.put(offset + 1, bytes);
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,17 @@
+package dataaccess;
+
+import datamodel.GameData;
+import exception.RequestException;
+
+/**
+ * A change to a game, for {@link DataAccess#updateGame(int, GameUpdate)}. It may be run
+ * more than once if other writers get in first, so it shouldn't have side effects.
+ */
+@FunctionalInterface
+public interface GameUpdate {
+    /**
+     * @param current the game as it is stored now
+     * @return the new game, or the same instance to leave it unchanged
+     */
+    GameData apply(GameData current) throws RequestException;
+}
@@ -0,0 +1,12 @@
+package dataaccess;
+
+/**
+ * A summary of the current games that changes whenever one of them is created, written,
+ * archived or brought back, for telling whether a copy of the games is still up to date.
+ *
+ * @param count       how many current games there are
+ * @param versions    the sum of their versions
+ * @param lastWritten when one was last written, in epoch milliseconds, or 0 if the store
+ *                    doesn't keep track
+ */
+public record GamesWatermark(long count, long versions, long lastWritten) {}
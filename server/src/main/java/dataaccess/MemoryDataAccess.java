@@ -3,19 +3,53 @@ package dataaccess;
 import datamodel.*;
 import exception.RequestException;
 
+import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MemoryDataAccess implements DataAccess {
-    private final HashMap<String, UserData> users = new HashMap<>();
-    private final HashMap<Integer, GameData> games = new HashMap<>();
-    private final HashMap<String, AuthData> auths = new HashMap<>();
+    private static final int GAME_LOCK_STRIPES = 64;
+    private static final int FIRST_GAME_ID = 1000;
+
+    private final AtomicInteger gameIDs = new AtomicInteger(FIRST_GAME_ID);
+    private final ConcurrentHashMap<String, UserData> users = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, VersionedGame> games = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AuthSession> auths = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> authsByUser = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, List<MoveRecord>> moves = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<GameData.GameState, Set<Integer>> gamesByState = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<Integer>> gamesByPlayer = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Instant> lastWritten = new ConcurrentHashMap<>();
+    //Archived games, compressed by GameArchive
+    private final ConcurrentHashMap<Integer, byte[]> archive = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Instant> revokedTokens = new ConcurrentHashMap<>();
+    //A game's row and its index entries only change while holding that game's stripe
+    private final Object[] gameLocks = new Object[GAME_LOCK_STRIPES];
+
+    public MemoryDataAccess() {
+        for (int i = 0; i < gameLocks.length; i++) {
+            gameLocks[i] = new Object();
+        }
+    }
+
     @Override
     public void clear() {
         users.clear();
         games.clear();
         auths.clear();
+        authsByUser.clear();
+        moves.clear();
+        gamesByState.clear();
+        gamesByPlayer.clear();
+        lastWritten.clear();
+        archive.clear();
+        revokedTokens.clear();
     }
 
     @Override
@@ -23,64 +57,372 @@ public class MemoryDataAccess implements DataAccess {
         if (user.username() == null || user.password() == null || user.email() == null) {
             throw new RequestException("data access error", RequestException.Code.DataAccessError);
         }
-        users.put(user.username(), user);
+        if (users.putIfAbsent(user.username(), user) != null) {
+            throw new RequestException("Error: already taken", RequestException.Code.AlreadyTakenError);
+        }
     }
 
     @Override
     public UserData getUser(String username) {
-        return users.get(username);
+        return username == null ? null : users.get(username);
+    }
+
+    @Override
+    public int nextGameID() {
+        return gameIDs.getAndIncrement();
     }
 
     @Override
     public void createGame(GameData gameData) throws RequestException {
-        if (games.containsKey(gameData.gameID()) || gameData.gameName() == null || gameData.game() == null) {
+        if (gameData.gameName() == null || gameData.game() == null) {
             throw new RequestException("data access error", RequestException.Code.DataAccessError);
         }
-        games.put(gameData.gameID(), gameData);
+        synchronized (gameLock(gameData.gameID())) {
+            if (archive.containsKey(gameData.gameID()) ||
+                    games.putIfAbsent(gameData.gameID(), new VersionedGame(gameData, 0)) != null) {
+                throw new RequestException("data access error", RequestException.Code.DataAccessError);
+            }
+            index(gameData);
+            lastWritten.put(gameData.gameID(), Instant.now());
+        }
     }
 
     @Override
     public GameData getGame(Integer gameID) throws RequestException {
-        return games.get(gameID);
+        VersionedGame versionedGame = getVersionedGame(gameID);
+        return versionedGame == null ? null : versionedGame.gameData();
+    }
+
+    @Override
+    public VersionedGame getVersionedGame(Integer gameID) throws RequestException {
+        if (gameID == null) {
+            return null;
+        }
+        VersionedGame versionedGame = games.get(gameID);
+        if (versionedGame == null) {
+            byte[] archived = archive.get(gameID);
+            if (archived != null) {
+                return new VersionedGame(GameArchive.gameData(gameID, archived), ARCHIVED_VERSION);
+            }
+        }
+        return versionedGame;
     }
 
     @Override
     public ArrayList<GameData> listGames() {
         ArrayList<GameData> allGames = new ArrayList<>();
-        for (int id : games.keySet()) {
-            allGames.add(games.get(id));
+        for (VersionedGame versionedGame : games.values()) {
+            allGames.add(versionedGame.gameData());
         }
         return allGames;
     }
 
+    //Write times start over when a FileDataAccess replays its log, so only the versions count
+    @Override
+    public GamesWatermark gamesWatermark() {
+        long versions = 0;
+        for (VersionedGame versionedGame : games.values()) {
+            versions += versionedGame.version();
+        }
+        return new GamesWatermark(games.size(), versions, 0);
+    }
+
+    @Override
+    public ArrayList<GameData> listGamesByState(GameData.GameState state) {
+        ArrayList<GameData> matches = new ArrayList<>();
+        for (int gameID : gamesByState.getOrDefault(state, Set.of())) {
+            VersionedGame versionedGame = games.get(gameID);
+            if (versionedGame != null && versionedGame.gameData().state() == state) {
+                matches.add(versionedGame.gameData());
+            }
+        }
+        return matches;
+    }
+
+    @Override
+    public ArrayList<GameData> listGamesForPlayer(String username) {
+        ArrayList<GameData> matches = new ArrayList<>();
+        for (int gameID : gamesByPlayer.getOrDefault(username, Set.of())) {
+            VersionedGame versionedGame = games.get(gameID);
+            if (versionedGame != null && (username.equals(versionedGame.gameData().whiteUsername()) ||
+                    username.equals(versionedGame.gameData().blackUsername()))) {
+                matches.add(versionedGame.gameData());
+            }
+        }
+        return matches;
+    }
+
     @Override
     public void updateGame(Integer gameID, GameData gameData) throws RequestException {
         if (gameData.gameName() == null || gameData.game() == null) {
             throw new RequestException("data access error", RequestException.Code.DataAccessError);
         }
-        games.remove(gameID);
-        games.put(gameData.gameID(), gameData);
+        if (gameID != gameData.gameID()) {
+            synchronized (gameLock(gameID)) {
+                VersionedGame old = games.remove(gameID);
+                archive.remove(gameID);
+                if (old != null) {
+                    unindex(old.gameData());
+                }
+            }
+        }
+        synchronized (gameLock(gameData.gameID())) {
+            VersionedGame old = games.get(gameData.gameID());
+            if (old == null) {
+                old = unarchive(gameData.gameID());
+            }
+            replace(old, gameData, old == null ? 0 : old.version() + 1);
+        }
+    }
+
+    @Override
+    public boolean compareAndUpdateGame(int expectedVersion, GameData gameData) throws RequestException {
+        if (gameData.gameName() == null || gameData.game() == null) {
+            throw new RequestException("data access error", RequestException.Code.DataAccessError);
+        }
+        synchronized (gameLock(gameData.gameID())) {
+            VersionedGame old = games.get(gameData.gameID());
+            if (old == null && expectedVersion == ARCHIVED_VERSION) {
+                old = unarchive(gameData.gameID());
+            }
+            if (old == null || old.version() != expectedVersion) {
+                return false;
+            }
+            replace(old, gameData, expectedVersion + 1);
+            return true;
+        }
+    }
+
+    private void replace(VersionedGame old, GameData gameData, int version) {
+        games.put(gameData.gameID(), new VersionedGame(gameData, version));
+        if (old != null) {
+            unindex(old.gameData());
+        }
+        index(gameData);
+        lastWritten.put(gameData.gameID(), Instant.now());
+    }
+
+    //Takes the game out of the archive and puts its moves back, leaving the caller to write the game
+    private VersionedGame unarchive(int gameID) throws RequestException {
+        byte[] archived = archive.get(gameID);
+        if (archived == null) {
+            return null;
+        }
+        moves.put(gameID, new ArrayList<>(GameArchive.moves(gameID, archived)));
+        archive.remove(gameID);
+        return new VersionedGame(GameArchive.gameData(gameID, archived), ARCHIVED_VERSION);
+    }
+
+    @Override
+    public void appendMoves(List<MoveRecord> newMoves) {
+        for (MoveRecord move : newMoves) {
+            List<MoveRecord> gameMoves = moves.computeIfAbsent(move.gameID(), id -> new ArrayList<>());
+            synchronized (gameMoves) {
+                gameMoves.add(move);
+            }
+        }
+    }
+
+    @Override
+    public ArrayList<MoveRecord> getMoves(int gameID) throws RequestException {
+        byte[] archived = archive.get(gameID);
+        if (archived != null) {
+            return GameArchive.moves(gameID, archived);
+        }
+        List<MoveRecord> gameMoves = moves.getOrDefault(gameID, List.of());
+        synchronized (gameMoves) {
+            ArrayList<MoveRecord> sorted = new ArrayList<>(gameMoves);
+            sorted.sort((a, b) -> Integer.compare(a.moveNumber(), b.moveNumber()));
+            return sorted;
+        }
+    }
+
+    @Override
+    public ArrayList<Integer> archiveCompletedGames(Instant cutoff) throws RequestException {
+        ArrayList<Integer> archived = new ArrayList<>();
+        for (int gameID : List.copyOf(gamesByState.getOrDefault(GameData.GameState.COMPLETE, Set.of()))) {
+            synchronized (gameLock(gameID)) {
+                VersionedGame versionedGame = games.get(gameID);
+                Instant written = lastWritten.get(gameID);
+                if (versionedGame != null && versionedGame.gameData().state() == GameData.GameState.COMPLETE &&
+                        written != null && written.isBefore(cutoff)) {
+                    archiveGame(versionedGame.gameData());
+                    archived.add(gameID);
+                }
+            }
+        }
+        return archived;
+    }
+
+    private void archiveGame(GameData gameData) throws RequestException {
+        archive.put(gameData.gameID(), GameArchive.compress(gameData, getMoves(gameData.gameID())));
+        games.remove(gameData.gameID());
+        unindex(gameData);
+        moves.remove(gameData.gameID());
+        lastWritten.remove(gameData.gameID());
     }
 
     @Override
-    public void createAuth(AuthData authData) throws RequestException {
+    public void createAuth(AuthSession session) throws RequestException {
+        AuthData authData = session.authData();
         if (authData.authToken() == null || authData.username() == null) {
             throw new RequestException("data access error", RequestException.Code.DataAccessError);
         }
-        auths.put(authData.authToken(), authData);
+        auths.put(authData.authToken(), session);
+        authsByUser.computeIfAbsent(authData.username(), u -> ConcurrentHashMap.newKeySet()).add(authData.authToken());
     }
 
     @Override
-    public AuthData getAuth(String authToken) throws RequestException {
+    public AuthSession getAuthSession(String authToken) throws RequestException {
         if (authToken == null) {
             throw new RequestException("data access error", RequestException.Code.DataAccessError);
         }
         return auths.get(authToken);
     }
 
+    @Override
+    public void touchAuth(String authToken, Instant lastSeen) {
+        auths.computeIfPresent(authToken, (token, session) -> lastSeen.isAfter(session.lastSeen()) ?
+                new AuthSession(session.authData(), session.issuedAt(), lastSeen) : session);
+    }
+
+    @Override
+    public ArrayList<AuthSession> listAuthsForUser(String username) {
+        ArrayList<AuthSession> sessions = new ArrayList<>();
+        for (String authToken : authsByUser.getOrDefault(username, Set.of())) {
+            AuthSession session = auths.get(authToken);
+            if (session != null) {
+                sessions.add(session);
+            }
+        }
+        return sessions;
+    }
+
     @Override
     public void deleteAuth(AuthData authData) {
-        auths.remove(authData.authToken());
+        if (authData.authToken() != null) {
+            AuthSession removed = auths.remove(authData.authToken());
+            if (removed != null) {
+                unindexAuth(removed.authData());
+            }
+        }
+    }
+
+    @Override
+    public ArrayList<AuthData> deleteExpiredAuths(Instant lastSeenBefore, int limit) {
+        ArrayList<AuthData> deleted = new ArrayList<>();
+        for (AuthSession session : auths.values()) {
+            if (deleted.size() >= limit) {
+                break;
+            }
+            //Only removes the session as it was seen, so a token used in the meantime survives
+            if (session.lastSeen().isBefore(lastSeenBefore) && auths.remove(session.authData().authToken(), session)) {
+                unindexAuth(session.authData());
+                deleted.add(session.authData());
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public void revokeToken(String authToken, Instant expiresAt) {
+        revokedTokens.put(authToken, expiresAt);
+    }
+
+    @Override
+    public Map<String, Instant> listRevokedTokens() {
+        return Map.copyOf(revokedTokens);
+    }
+
+    @Override
+    public void deleteExpiredRevocations(Instant now) {
+        revokedTokens.values().removeIf(expiresAt -> !now.isBefore(expiresAt));
+    }
+
+    private void unindexAuth(AuthData authData) {
+        Set<String> tokens = authsByUser.get(authData.username());
+        if (tokens != null) {
+            tokens.remove(authData.authToken());
+        }
+    }
+
+    //For FileDataAccess, which snapshots and restores everything, versions included
+
+    Collection<UserData> allUsers() {
+        return users.values();
+    }
+
+    Collection<AuthSession> allAuths() {
+        return auths.values();
+    }
+
+    Collection<VersionedGame> allGames() {
+        return games.values();
+    }
+
+    Collection<Integer> gamesWithMoves() {
+        return moves.keySet();
+    }
+
+    Map<Integer, byte[]> archivedGames() {
+        return archive;
+    }
+
+    void restoreArchivedGame(int gameID, byte[] archived) {
+        archive.put(gameID, archived);
+    }
+
+    void archiveGame(int gameID) throws RequestException {
+        synchronized (gameLock(gameID)) {
+            VersionedGame versionedGame = games.get(gameID);
+            if (versionedGame != null) {
+                archiveGame(versionedGame.gameData());
+            }
+        }
+    }
+
+    int peekNextGameID() {
+        return gameIDs.get();
+    }
+
+    void restoreNextGameID(int nextGameID) {
+        gameIDs.accumulateAndGet(nextGameID, Math::max);
+    }
+
+    void restoreGame(VersionedGame versionedGame) {
+        synchronized (gameLock(versionedGame.gameData().gameID())) {
+            replace(games.get(versionedGame.gameData().gameID()), versionedGame.gameData(), versionedGame.version());
+        }
+    }
+
+    private Object gameLock(int gameID) {
+        return gameLocks[Math.floorMod(gameID, gameLocks.length)];
+    }
+
+    private void index(GameData gameData) {
+        if (gameData.state() != null) {
+            gamesByState.computeIfAbsent(gameData.state(), s -> ConcurrentHashMap.newKeySet()).add(gameData.gameID());
+        }
+        for (String player : new String[]{gameData.whiteUsername(), gameData.blackUsername()}) {
+            if (player != null) {
+                gamesByPlayer.computeIfAbsent(player, p -> ConcurrentHashMap.newKeySet()).add(gameData.gameID());
+            }
+        }
+    }
+
+    private void unindex(GameData gameData) {
+        if (gameData.state() != null) {
+            Set<Integer> ids = gamesByState.get(gameData.state());
+            if (ids != null) {
+                ids.remove(gameData.gameID());
+            }
+        }
+        for (String player : new String[]{gameData.whiteUsername(), gameData.blackUsername()}) {
+            Set<Integer> ids = (player == null ? null : gamesByPlayer.get(player));
+            if (ids != null) {
+                ids.remove(gameData.gameID());
+            }
+        }
     }
 
 
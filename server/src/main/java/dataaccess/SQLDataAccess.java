@@ -1,6 +1,7 @@
 package dataaccess;
 
 import chess.ChessGame;
+import chess.ChessMove;
 import com.google.gson.Gson;
 import datamodel.*;
 import exception.RequestException;
@@ -9,7 +10,14 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class SQLDataAccess implements DataAccess {
 
@@ -21,13 +29,14 @@ public class SQLDataAccess implements DataAccess {
 
     @Override
     public void clear() throws RequestException {
-        try (Connection conn = DatabaseManager.getConnection()) {
-            String statement1 = "DELETE FROM auth";
-            String statement2 = "DELETE FROM user";
-            String statement3 = "DELETE FROM game";
-            conn.prepareStatement(statement1).executeUpdate();
-            conn.prepareStatement(statement2).executeUpdate();
-            conn.prepareStatement(statement3).executeUpdate();
+        try (Connection conn = DatabaseManager.getConnection(); Statement statement = conn.createStatement()) {
+            statement.addBatch("DELETE FROM auth");
+            statement.addBatch("DELETE FROM revoked_token");
+            statement.addBatch("DELETE FROM user");
+            statement.addBatch("DELETE FROM game_move");
+            statement.addBatch("DELETE FROM game_archive");
+            statement.addBatch("DELETE FROM game");
+            statement.executeBatch();
         } catch (DataAccessException | SQLException ex) {
             throw dataAccessException;
         }
@@ -43,6 +52,8 @@ public class SQLDataAccess implements DataAccess {
                 ps.setString(3, user.email());
                 ps.executeUpdate();
             }
+        } catch (SQLIntegrityConstraintViolationException ex) {
+            throw new RequestException("Error: already taken", RequestException.Code.AlreadyTakenError);
         } catch (DataAccessException | SQLException ex) {
             throw dataAccessException;
         }
@@ -67,6 +78,24 @@ public class SQLDataAccess implements DataAccess {
         return null;
     }
 
+    @Override
+    public int nextGameID() throws RequestException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            //LAST_INSERT_ID(expr) hands the new value back to this connection without another lock or read
+            String statement = "UPDATE `game_sequence` SET lastID = LAST_INSERT_ID(lastID + 1) WHERE id = 1";
+            try (PreparedStatement ps = conn.prepareStatement(statement)) {
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = conn.prepareStatement("SELECT LAST_INSERT_ID()")) {
+                ResultSet rs = ps.executeQuery();
+                rs.next();
+                return rs.getInt(1);
+            }
+        } catch (DataAccessException | SQLException ex) {
+            throw dataAccessException;
+        }
+    }
+
     @Override
     public void createGame(GameData gameData) throws RequestException {
         try (Connection conn = DatabaseManager.getConnection()) {
@@ -96,44 +125,106 @@ public class SQLDataAccess implements DataAccess {
                 ps.setInt(1, gameID);
                 ResultSet rs = ps.executeQuery();
                 if (rs.next()) {
-                    String whiteUsername = rs.getString("whiteUsername");
-                    String blackUsername = rs.getString("blackUsername");
-                    String gameName = rs.getString("gameName");
-                    String jsonGame = rs.getString("game");
-                    GameData.GameState state = new Gson().fromJson(rs.getString("state"), GameData.GameState.class);
-                    ChessGame game = new Gson().fromJson(jsonGame, ChessGame.class);
-                    return new GameData(gameID, whiteUsername, blackUsername, gameName, game, state);
+                    return readGame(rs);
                 }
             }
+            byte[] archived = readArchive(conn, gameID);
+            return archived == null ? null : GameArchive.gameData(gameID, archived);
         } catch (DataAccessException | SQLException ex) {
             throw dataAccessException;
         }
-        return null;
+    }
+
+    @Override
+    public VersionedGame getVersionedGame(Integer gameID) throws RequestException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            String statement = "SELECT * FROM `game`WHERE gameID=?";
+            try (PreparedStatement ps = conn.prepareStatement(statement)) {
+                ps.setInt(1, gameID);
+                ResultSet rs = ps.executeQuery();
+                if (rs.next()) {
+                    return new VersionedGame(readGame(rs), rs.getInt("version"));
+                }
+            }
+            byte[] archived = readArchive(conn, gameID);
+            return archived == null ? null : new VersionedGame(GameArchive.gameData(gameID, archived), ARCHIVED_VERSION);
+        } catch (DataAccessException | SQLException ex) {
+            throw dataAccessException;
+        }
+    }
+
+    private byte[] readArchive(Connection conn, int gameID) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT data FROM `game_archive` WHERE gameID=?")) {
+            ps.setInt(1, gameID);
+            ResultSet rs = ps.executeQuery();
+            return rs.next() ? rs.getBytes("data") : null;
+        }
     }
 
     @Override
     public ArrayList<GameData> listGames() throws RequestException {
-       ArrayList<GameData> gameList = new ArrayList<>();
-       try (Connection conn = DatabaseManager.getConnection()) {
-           String statement = "SELECT gameID FROM game";
-           try (PreparedStatement ps = conn.prepareStatement(statement)) {
-               ResultSet rs = ps.executeQuery();
-               while (rs.next()) {
-                   int gameID = rs.getInt("gameID");
-                   gameList.add(getGame(gameID));
-               }
-           }
-       } catch (DataAccessException | SQLException ex) {
-           throw dataAccessException;
-       }
+        return queryGames("SELECT * FROM `game`");
+    }
+
+    @Override
+    public GamesWatermark gamesWatermark() throws RequestException {
+        //updatedAt also catches rows changed by hand, which leave the version alone
+        String statement = "SELECT COUNT(*), COALESCE(SUM(version), 0), " +
+                "COALESCE(FLOOR(UNIX_TIMESTAMP(MAX(updatedAt)) * 1000), 0) FROM `game`";
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(statement)) {
+            ResultSet rs = ps.executeQuery();
+            rs.next();
+            return new GamesWatermark(rs.getLong(1), rs.getLong(2), rs.getLong(3));
+        } catch (DataAccessException | SQLException ex) {
+            throw dataAccessException;
+        }
+    }
+
+    @Override
+    public ArrayList<GameData> listGamesByState(GameData.GameState state) throws RequestException {
+        return queryGames("SELECT * FROM `game` WHERE state=?", new Gson().toJson(state));
+    }
+
+    @Override
+    public ArrayList<GameData> listGamesForPlayer(String username) throws RequestException {
+        return queryGames("SELECT * FROM `game` WHERE whiteUsername=? OR blackUsername=?", username, username);
+    }
+
+    private ArrayList<GameData> queryGames(String statement, String... params) throws RequestException {
+        ArrayList<GameData> gameList = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement(statement)) {
+                for (int i = 0; i < params.length; i++) {
+                    ps.setString(i + 1, params[i]);
+                }
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    gameList.add(readGame(rs));
+                }
+            }
+        } catch (DataAccessException | SQLException ex) {
+            throw dataAccessException;
+        }
         return gameList;
     }
 
+    private GameData readGame(ResultSet rs) throws SQLException {
+        int gameID = rs.getInt("gameID");
+        String whiteUsername = rs.getString("whiteUsername");
+        String blackUsername = rs.getString("blackUsername");
+        String gameName = rs.getString("gameName");
+        String jsonGame = rs.getString("game");
+        GameData.GameState state = new Gson().fromJson(rs.getString("state"), GameData.GameState.class);
+        ChessGame game = new Gson().fromJson(jsonGame, ChessGame.class);
+        return new GameData(gameID, whiteUsername, blackUsername, gameName, game, state);
+    }
+
     @Override
     public void updateGame(Integer gameID, GameData gameData) throws RequestException {
         try (Connection conn = DatabaseManager.getConnection()) {
             String deleteStatement = "UPDATE `game`" +
-                    "SET gameID=?, whiteUsername=?, blackUsername=?, gameName=?, game=?, state=? " +
+                    "SET gameID=?, whiteUsername=?, blackUsername=?, gameName=?, game=?, state=?, version=version + 1 " +
                     "WHERE gameID=?";
             try (PreparedStatement ps = conn.prepareStatement(deleteStatement)) {
                 ps.setInt(1, gameData.gameID());
@@ -145,20 +236,250 @@ public class SQLDataAccess implements DataAccess {
                 String jsonState = new Gson().toJson(gameData.state());
                 ps.setString(6, jsonState);
                 ps.setInt(7, gameID);
+                if (ps.executeUpdate() == 0 && unarchive(conn, gameID)) {
+                    ps.executeUpdate();
+                }
+            }
+        } catch (DataAccessException | SQLException ex) {
+            throw dataAccessException;
+        }
+    }
+
+    @Override
+    public boolean compareAndUpdateGame(int expectedVersion, GameData gameData) throws RequestException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            String statement = "UPDATE `game` SET whiteUsername=?, blackUsername=?, gameName=?, game=?, state=?, " +
+                    "version=version + 1 WHERE gameID=? AND version=?";
+            try (PreparedStatement ps = conn.prepareStatement(statement)) {
+                ps.setString(1, gameData.whiteUsername());
+                ps.setString(2, gameData.blackUsername());
+                ps.setString(3, gameData.gameName());
+                ps.setString(4, gameData.game().toString());
+                ps.setString(5, new Gson().toJson(gameData.state()));
+                ps.setInt(6, gameData.gameID());
+                ps.setInt(7, expectedVersion);
+                if (expectedVersion == ARCHIVED_VERSION) {
+                    unarchive(conn, gameData.gameID());
+                }
+                return ps.executeUpdate() == 1;
+            }
+        } catch (DataAccessException | SQLException ex) {
+            throw dataAccessException;
+        }
+    }
+
+    @Override
+    public void createGames(List<GameData> games) throws RequestException {
+        String statement = "INSERT INTO `game`(gameID, whiteUsername, blackUsername, gameName, game, state) " +
+                "VALUES (?, ?, ?, ?, ?, ?)";
+        executeBatch(statement, games, (ps, gameData) -> {
+            ps.setInt(1, gameData.gameID());
+            ps.setString(2, gameData.whiteUsername());
+            ps.setString(3, gameData.blackUsername());
+            ps.setString(4, gameData.gameName());
+            ps.setString(5, gameData.game().toString());
+            ps.setString(6, new Gson().toJson(gameData.state()));
+        });
+    }
+
+    @Override
+    public void updateGames(List<GameData> games) throws RequestException {
+        String statement = "UPDATE `game` SET whiteUsername=?, blackUsername=?, gameName=?, game=?, state=?, " +
+                "version=version + 1 WHERE gameID=?";
+        executeBatch(statement, games, (ps, gameData) -> {
+            ps.setString(1, gameData.whiteUsername());
+            ps.setString(2, gameData.blackUsername());
+            ps.setString(3, gameData.gameName());
+            ps.setString(4, gameData.game().toString());
+            ps.setString(5, new Gson().toJson(gameData.state()));
+            ps.setInt(6, gameData.gameID());
+        });
+    }
+
+    @Override
+    public void appendMoves(List<MoveRecord> moves) throws RequestException {
+        String statement = "INSERT INTO `game_move`(gameID, moveNumber, move) VALUES (?, ?, ?)";
+        executeBatch(statement, moves, (ps, move) -> {
+            ps.setInt(1, move.gameID());
+            ps.setInt(2, move.moveNumber());
+            ps.setShort(3, (short) move.move().encode());
+        });
+    }
+
+    @Override
+    public ArrayList<MoveRecord> getMoves(int gameID) throws RequestException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            ArrayList<MoveRecord> moves = readMoves(conn, gameID);
+            if (moves.isEmpty()) {
+                byte[] archived = readArchive(conn, gameID);
+                return archived == null ? moves : GameArchive.moves(gameID, archived);
+            }
+            return moves;
+        } catch (DataAccessException | SQLException ex) {
+            throw dataAccessException;
+        }
+    }
+
+    private ArrayList<MoveRecord> readMoves(Connection conn, int gameID) throws SQLException {
+        ArrayList<MoveRecord> moves = new ArrayList<>();
+        String statement = "SELECT moveNumber, move FROM `game_move` WHERE gameID=? ORDER BY moveNumber";
+        try (PreparedStatement ps = conn.prepareStatement(statement)) {
+            ps.setInt(1, gameID);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                ChessMove move = ChessMove.decode(rs.getShort("move") & 0xFFFF);
+                moves.add(new MoveRecord(gameID, rs.getInt("moveNumber"), move));
+            }
+        }
+        return moves;
+    }
+
+    @Override
+    public ArrayList<Integer> archiveCompletedGames(Instant cutoff) throws RequestException {
+        ArrayList<Integer> archived = new ArrayList<>();
+        String completeJson = new Gson().toJson(GameData.GameState.COMPLETE);
+        try (Connection conn = DatabaseManager.getConnection()) {
+            ArrayList<Integer> candidates = new ArrayList<>();
+            String statement = "SELECT gameID FROM `game` WHERE state=? AND updatedAt < ?";
+            try (PreparedStatement ps = conn.prepareStatement(statement)) {
+                ps.setString(1, completeJson);
+                ps.setTimestamp(2, Timestamp.from(cutoff));
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    candidates.add(rs.getInt("gameID"));
+                }
+            }
+            //One transaction per game, so a busy game only holds up itself
+            conn.setAutoCommit(false);
+            for (int gameID : candidates) {
+                if (archiveGame(conn, gameID, completeJson, cutoff)) {
+                    archived.add(gameID);
+                }
+                conn.commit();
+            }
+        } catch (DataAccessException | SQLException ex) {
+            throw dataAccessException;
+        }
+        return archived;
+    }
+
+    private boolean archiveGame(Connection conn, int gameID, String completeJson, Instant cutoff) throws SQLException {
+        GameData gameData;
+        //Check again under the row lock, in case the game was written since it was picked
+        String statement = "SELECT * FROM `game` WHERE gameID=? AND state=? AND updatedAt < ? FOR UPDATE";
+        try (PreparedStatement ps = conn.prepareStatement(statement)) {
+            ps.setInt(1, gameID);
+            ps.setString(2, completeJson);
+            ps.setTimestamp(3, Timestamp.from(cutoff));
+            ResultSet rs = ps.executeQuery();
+            if (!rs.next()) {
+                return false;
+            }
+            gameData = readGame(rs);
+        }
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO `game_archive`(gameID, data) VALUES (?, ?)")) {
+            ps.setInt(1, gameID);
+            ps.setBytes(2, GameArchive.compress(gameData, readMoves(conn, gameID)));
+            ps.executeUpdate();
+        }
+        deleteGameRows(conn, gameID, "DELETE FROM `game_move` WHERE gameID=?", "DELETE FROM `game` WHERE gameID=?");
+        return true;
+    }
+
+    //Puts an archived game back in the game table at ARCHIVED_VERSION, so the caller's write moves it on to 0
+    private boolean unarchive(Connection conn, int gameID) throws SQLException, RequestException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            byte[] archived;
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT data FROM `game_archive` WHERE gameID=? FOR UPDATE")) {
+                ps.setInt(1, gameID);
+                ResultSet rs = ps.executeQuery();
+                if (!rs.next()) {
+                    conn.rollback();
+                    return false;
+                }
+                archived = rs.getBytes("data");
+            }
+            GameData gameData = GameArchive.gameData(gameID, archived);
+            String statement = "INSERT INTO `game`(gameID, whiteUsername, blackUsername, gameName, game, state, version) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?)";
+            try (PreparedStatement ps = conn.prepareStatement(statement)) {
+                ps.setInt(1, gameID);
+                ps.setString(2, gameData.whiteUsername());
+                ps.setString(3, gameData.blackUsername());
+                ps.setString(4, gameData.gameName());
+                ps.setString(5, gameData.game().toString());
+                ps.setString(6, new Gson().toJson(gameData.state()));
+                ps.setInt(7, ARCHIVED_VERSION);
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO `game_move`(gameID, moveNumber, move) VALUES (?, ?, ?)")) {
+                for (MoveRecord move : GameArchive.moves(gameID, archived)) {
+                    ps.setInt(1, gameID);
+                    ps.setInt(2, move.moveNumber());
+                    ps.setShort(3, (short) move.move().encode());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            deleteGameRows(conn, gameID, "DELETE FROM `game_archive` WHERE gameID=?");
+            conn.commit();
+            return true;
+        } catch (SQLException | RequestException | RuntimeException ex) {
+            //Restoring auto-commit below would otherwise commit a half-restored game
+            conn.rollback();
+            throw ex;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void deleteGameRows(Connection conn, int gameID, String... statements) throws SQLException {
+        for (String statement : statements) {
+            try (PreparedStatement ps = conn.prepareStatement(statement)) {
+                ps.setInt(1, gameID);
                 ps.executeUpdate();
             }
+        }
+    }
+
+    private interface BatchBinder<T> {
+        void bind(PreparedStatement ps, T item) throws SQLException;
+    }
+
+    //Sends every row in one round trip (rewriteBatchedStatements turns it into a multi-row statement)
+    private <T> int[] executeBatch(String statement, List<T> items, BatchBinder<T> binder) throws RequestException {
+        if (items.isEmpty()) {
+            return new int[0];
+        }
+        try (Connection conn = DatabaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(statement)) {
+                for (T item : items) {
+                    binder.bind(ps, item);
+                    ps.addBatch();
+                }
+                int[] counts = ps.executeBatch();
+                conn.commit();
+                return counts;
+            }
         } catch (DataAccessException | SQLException ex) {
             throw dataAccessException;
         }
     }
 
     @Override
-    public void createAuth(AuthData authData) throws RequestException {
+    public void createAuth(AuthSession session) throws RequestException {
         try (Connection conn = DatabaseManager.getConnection()) {
-            String statement = "INSERT INTO `auth`(username, authToken) VALUES (?, ?)";
+            String statement = "INSERT INTO `auth`(username, authToken, issuedAt, lastSeen) VALUES (?, ?, ?, ?)";
             try (PreparedStatement ps = conn.prepareStatement(statement)) {
-                ps.setString(1, authData.username());
-                ps.setString(2, authData.authToken());
+                ps.setString(1, session.authData().username());
+                ps.setString(2, session.authData().authToken());
+                ps.setTimestamp(3, Timestamp.from(session.issuedAt()));
+                ps.setTimestamp(4, Timestamp.from(session.lastSeen()));
                 ps.executeUpdate();
             }
         } catch (DataAccessException | SQLException ex) {
@@ -167,14 +488,14 @@ public class SQLDataAccess implements DataAccess {
     }
 
     @Override
-    public AuthData getAuth(String authToken) throws RequestException {
+    public AuthSession getAuthSession(String authToken) throws RequestException {
         try (Connection conn = DatabaseManager.getConnection()) {
             String statement = "SELECT * FROM `auth`WHERE authToken=?";
             try (PreparedStatement ps = conn.prepareStatement(statement)) {
                 ps.setString(1, authToken);
                 ResultSet rs = ps.executeQuery();
                 if (rs.next()) {
-                    return new AuthData(rs.getString("username"), authToken);
+                    return readAuthSession(rs);
                 }
             }
         } catch (DataAccessException | SQLException ex) {
@@ -183,6 +504,43 @@ public class SQLDataAccess implements DataAccess {
         return null;
     }
 
+    @Override
+    public void touchAuth(String authToken, Instant lastSeen) throws RequestException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            String statement = "UPDATE `auth` SET lastSeen=GREATEST(lastSeen, ?) WHERE authToken=?";
+            try (PreparedStatement ps = conn.prepareStatement(statement)) {
+                ps.setTimestamp(1, Timestamp.from(lastSeen));
+                ps.setString(2, authToken);
+                ps.executeUpdate();
+            }
+        } catch (DataAccessException | SQLException ex) {
+            throw dataAccessException;
+        }
+    }
+
+    @Override
+    public ArrayList<AuthSession> listAuthsForUser(String username) throws RequestException {
+        ArrayList<AuthSession> sessions = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getConnection()) {
+            String statement = "SELECT * FROM `auth` WHERE username=?";
+            try (PreparedStatement ps = conn.prepareStatement(statement)) {
+                ps.setString(1, username);
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    sessions.add(readAuthSession(rs));
+                }
+            }
+        } catch (DataAccessException | SQLException ex) {
+            throw dataAccessException;
+        }
+        return sessions;
+    }
+
+    private AuthSession readAuthSession(ResultSet rs) throws SQLException {
+        AuthData authData = new AuthData(rs.getString("username"), rs.getString("authToken"));
+        return new AuthSession(authData, rs.getTimestamp("issuedAt").toInstant(), rs.getTimestamp("lastSeen").toInstant());
+    }
+
     @Override
     public void deleteAuth(AuthData authData) throws RequestException {
         try (Connection conn = DatabaseManager.getConnection()) {
@@ -196,6 +554,78 @@ public class SQLDataAccess implements DataAccess {
         }
     }
 
+    @Override
+    public ArrayList<AuthData> deleteExpiredAuths(Instant lastSeenBefore, int limit) throws RequestException {
+        ArrayList<AuthData> expired = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getConnection()) {
+            String statement = "SELECT username, authToken FROM `auth` WHERE lastSeen < ? LIMIT ?";
+            try (PreparedStatement ps = conn.prepareStatement(statement)) {
+                ps.setTimestamp(1, Timestamp.from(lastSeenBefore));
+                ps.setInt(2, limit);
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    expired.add(new AuthData(rs.getString("username"), rs.getString("authToken")));
+                }
+            }
+        } catch (DataAccessException | SQLException ex) {
+            throw dataAccessException;
+        }
+        //Checks lastSeen again, so a token used in the meantime survives
+        ArrayList<AuthData> deleted = new ArrayList<>();
+        int[] counts = executeBatch("DELETE FROM `auth` WHERE authToken=? AND lastSeen < ?", expired, (ps, authData) -> {
+            ps.setString(1, authData.authToken());
+            ps.setTimestamp(2, Timestamp.from(lastSeenBefore));
+        });
+        for (int i = 0; i < expired.size(); i++) {
+            if (counts[i] != 0) {
+                deleted.add(expired.get(i));
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public void revokeToken(String authToken, Instant expiresAt) throws RequestException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            String statement = "INSERT INTO `revoked_token`(authToken, expiresAt) VALUES (?, ?) " +
+                    "ON DUPLICATE KEY UPDATE expiresAt=VALUES(expiresAt)";
+            try (PreparedStatement ps = conn.prepareStatement(statement)) {
+                ps.setString(1, authToken);
+                ps.setTimestamp(2, Timestamp.from(expiresAt));
+                ps.executeUpdate();
+            }
+        } catch (DataAccessException | SQLException ex) {
+            throw dataAccessException;
+        }
+    }
+
+    @Override
+    public Map<String, Instant> listRevokedTokens() throws RequestException {
+        Map<String, Instant> revoked = new HashMap<>();
+        try (Connection conn = DatabaseManager.getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement("SELECT authToken, expiresAt FROM `revoked_token`")) {
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    revoked.put(rs.getString("authToken"), rs.getTimestamp("expiresAt").toInstant());
+                }
+            }
+        } catch (DataAccessException | SQLException ex) {
+            throw dataAccessException;
+        }
+        return revoked;
+    }
+
+    @Override
+    public void deleteExpiredRevocations(Instant now) throws RequestException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM `revoked_token` WHERE expiresAt <= ?")) {
+                ps.setTimestamp(1, Timestamp.from(now));
+                ps.executeUpdate();
+            }
+        } catch (DataAccessException | SQLException ex) {
+            throw dataAccessException;
+        }
+    }
 
     private final String[] createStatements = {
             """
@@ -211,7 +641,11 @@ public class SQLDataAccess implements DataAccess {
             CREATE TABLE IF NOT EXISTS `auth` (
                 `username` VARCHAR(255) NOT NULL,
                 `authToken` VARCHAR(512) NOT NULL,
-                PRIMARY KEY (`authToken`)
+                `issuedAt` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+                `lastSeen` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+                PRIMARY KEY (`authToken`),
+                INDEX(`username`),
+                INDEX(`lastSeen`)
             ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
             """,
             """
@@ -222,13 +656,74 @@ public class SQLDataAccess implements DataAccess {
                 `gameName` VARCHAR(255) NOT NULL,
                 `game` LONGTEXT NOT NULL,
                 `state` LONGTEXT NOT NULL,
+                `version` INT NOT NULL DEFAULT 0,
+                `updatedAt` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
                 PRIMARY KEY (`gameID`),
-                INDEX(`gameName`)
+                INDEX(`gameName`),
+                INDEX(`whiteUsername`),
+                INDEX(`blackUsername`),
+                INDEX(`state`(16))
+            ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+            """,
+            """
+            CREATE TABLE IF NOT EXISTS `game_sequence` (
+                `id` INT NOT NULL,
+                `lastID` INT NOT NULL,
+                PRIMARY KEY (`id`)
+            ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+            """,
+            """
+            CREATE TABLE IF NOT EXISTS `game_move` (
+                `gameID` INT NOT NULL,
+                `moveNumber` INT NOT NULL,
+                `move` SMALLINT NOT NULL,
+                PRIMARY KEY (`gameID`, `moveNumber`)
+            ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+            """,
+            """
+            CREATE TABLE IF NOT EXISTS `game_archive` (
+                `gameID` INT NOT NULL,
+                `data` MEDIUMBLOB NOT NULL,
+                PRIMARY KEY (`gameID`)
             ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+            """,
+            """
+            CREATE TABLE IF NOT EXISTS `revoked_token` (
+                `authToken` VARCHAR(512) NOT NULL,
+                `expiresAt` TIMESTAMP(3) NOT NULL,
+                PRIMARY KEY (`authToken`),
+                INDEX(`expiresAt`)
+            ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+            """,
+            //Start after any games made before the sequence existed
+            """
+            INSERT IGNORE INTO `game_sequence`(id, lastID)
+            SELECT 1, GREATEST(999, COALESCE(MAX(gameID), 0)) FROM `game`;
             """
     };
 
 
+    //Brings tables made by older versions of the server up to date
+    private void migrate(Connection conn) throws SQLException {
+        addColumnIfMissing(conn, "game", "version", "ALTER TABLE `game` ADD COLUMN `version` INT NOT NULL DEFAULT 0");
+        addColumnIfMissing(conn, "game", "updatedAt", "ALTER TABLE `game` ADD COLUMN `updatedAt` TIMESTAMP(3) NOT NULL " +
+                "DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3)");
+        addColumnIfMissing(conn, "auth", "issuedAt", "ALTER TABLE `auth` " +
+                "ADD COLUMN `issuedAt` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3), " +
+                "ADD COLUMN `lastSeen` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3), " +
+                "ADD INDEX(`username`), ADD INDEX(`lastSeen`)");
+    }
+
+    private void addColumnIfMissing(Connection conn, String table, String column, String statement) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getColumns(conn.getCatalog(), null, table, column)) {
+            if (!rs.next()) {
+                try (var preparedStatement = conn.prepareStatement(statement)) {
+                    preparedStatement.executeUpdate();
+                }
+            }
+        }
+    }
+
     private void configureDatabase() throws RequestException {
         try {
             DatabaseManager.createDatabase();
@@ -238,6 +733,7 @@ public class SQLDataAccess implements DataAccess {
                         preparedStatement.executeUpdate();
                     }
                 }
+                migrate(conn);
             }
         } catch (SQLException | DataAccessException ex) {
             throw new RequestException("Error: Unable to configure database" , RequestException.Code.DataAccessError);
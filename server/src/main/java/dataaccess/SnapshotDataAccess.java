@@ -0,0 +1,280 @@
+package dataaccess;
+
+import datamodel.*;
+import exception.RequestException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wraps another DataAccess (normally SQL) and answers game reads from a
+ * {@link GameSnapshot} mapped at startup, plus every game written since. Listing games
+ * never has to fetch and deserialize every row from the database.
+ * <p>
+ * Every write to the games has to go through this class for the reads to stay right
+ * while it runs. The snapshot is rewritten when the server stops cleanly. After a crash,
+ * or if the wrapped DataAccess's {@link GamesWatermark} no longer matches the one in the
+ * snapshot because the games were written some other way, it is rebuilt from the wrapped
+ * DataAccess.
+ */
+public class SnapshotDataAccess implements DataAccess, AutoCloseable {
+
+    private final DataAccess dataAccess;
+    private final Path path;
+    private volatile GameSnapshot snapshot;
+    //Games created or written since the snapshot was taken, at the newest version written
+    private final ConcurrentHashMap<Integer, VersionedGame> changedGames = new ConcurrentHashMap<>();
+    //Games archived since the snapshot was taken
+    private final Set<Integer> archivedGames = ConcurrentHashMap.newKeySet();
+
+    public SnapshotDataAccess(DataAccess dataAccess, Path path) throws RequestException {
+        this.dataAccess = dataAccess;
+        this.path = path;
+        try {
+            GameSnapshot opened = GameSnapshot.open(path);
+            GamesWatermark watermark = dataAccess.gamesWatermark();
+            if (opened != null && !opened.watermark().equals(watermark)) {
+                opened.close();
+                opened = null;
+            }
+            if (opened == null) {
+                GameSnapshot.write(path, dataAccess.listGames(), watermark);
+                opened = GameSnapshot.open(path);
+            }
+            opened.markInUse();
+            snapshot = opened;
+        } catch (IOException ex) {
+            throw new RequestException("Error: unable to load game snapshot", RequestException.Code.DataAccessError);
+        }
+    }
+
+    @Override
+    public void clear() throws RequestException {
+        dataAccess.clear();
+        changedGames.clear();
+        archivedGames.clear();
+        try {
+            snapshot.close();
+            GameSnapshot.write(path, List.of(), dataAccess.gamesWatermark());
+            snapshot = GameSnapshot.open(path);
+            snapshot.markInUse();
+        } catch (IOException ex) {
+            throw new RequestException("Error: unable to reset game snapshot", RequestException.Code.DataAccessError);
+        }
+    }
+
+    @Override
+    public void createUser(UserData user) throws RequestException {
+        dataAccess.createUser(user);
+    }
+
+    @Override
+    public UserData getUser(String username) throws RequestException {
+        return dataAccess.getUser(username);
+    }
+
+    @Override
+    public int nextGameID() throws RequestException {
+        return dataAccess.nextGameID();
+    }
+
+    @Override
+    public void createGame(GameData gameData) throws RequestException {
+        dataAccess.createGame(gameData);
+        changed(new VersionedGame(gameData, 0));
+    }
+
+    @Override
+    public void createGames(List<GameData> games) throws RequestException {
+        dataAccess.createGames(games);
+        for (GameData gameData : games) {
+            changed(new VersionedGame(gameData, 0));
+        }
+    }
+
+    @Override
+    public GameData getGame(Integer gameID) throws RequestException {
+        if (gameID == null) {
+            return null;
+        }
+        VersionedGame changed = changedGames.get(gameID);
+        if (changed != null) {
+            return changed.gameData();
+        }
+        if (archivedGames.contains(gameID)) {
+            return dataAccess.getGame(gameID);
+        }
+        GameSnapshot current = snapshot;
+        int index = current.indexOf(gameID);
+        GameData snapshotted = (index < 0 ? null : current.read(index));
+        return snapshotted != null ? snapshotted : dataAccess.getGame(gameID);
+    }
+
+    @Override
+    public VersionedGame getVersionedGame(Integer gameID) throws RequestException {
+        return dataAccess.getVersionedGame(gameID);
+    }
+
+    @Override
+    public ArrayList<GameData> listGames() throws RequestException {
+        GameSnapshot current = snapshot;
+        ArrayList<GameData> games = new ArrayList<>(current.size() + changedGames.size());
+        for (int i = 0; i < current.size(); i++) {
+            int gameID = current.gameID(i);
+            if (!changedGames.containsKey(gameID) && !archivedGames.contains(gameID)) {
+                GameData gameData = current.read(i);
+                if (gameData == null) {
+                    gameData = dataAccess.getGame(gameID);
+                }
+                if (gameData != null) {
+                    games.add(gameData);
+                }
+            }
+        }
+        for (VersionedGame changed : changedGames.values()) {
+            games.add(changed.gameData());
+        }
+        return games;
+    }
+
+    @Override
+    public GamesWatermark gamesWatermark() throws RequestException {
+        return dataAccess.gamesWatermark();
+    }
+
+    @Override
+    public ArrayList<GameData> listGamesByState(GameData.GameState state) throws RequestException {
+        return dataAccess.listGamesByState(state);
+    }
+
+    @Override
+    public ArrayList<GameData> listGamesForPlayer(String username) throws RequestException {
+        return dataAccess.listGamesForPlayer(username);
+    }
+
+    @Override
+    public void updateGame(Integer gameID, GameData gameData) throws RequestException {
+        dataAccess.updateGame(gameID, gameData);
+        if (gameID != gameData.gameID()) {
+            //Renamed, so the old id is gone from the database
+            archivedGames.add(gameID);
+            changedGames.remove(gameID);
+        }
+        reread(gameData.gameID());
+    }
+
+    @Override
+    public void updateGames(List<GameData> games) throws RequestException {
+        dataAccess.updateGames(games);
+        for (GameData gameData : games) {
+            reread(gameData.gameID());
+        }
+    }
+
+    @Override
+    public boolean compareAndUpdateGame(int expectedVersion, GameData gameData) throws RequestException {
+        boolean updated = dataAccess.compareAndUpdateGame(expectedVersion, gameData);
+        if (updated) {
+            changed(new VersionedGame(gameData, expectedVersion + 1));
+        }
+        return updated;
+    }
+
+    @Override
+    public void appendMoves(List<MoveRecord> moves) throws RequestException {
+        dataAccess.appendMoves(moves);
+    }
+
+    @Override
+    public ArrayList<MoveRecord> getMoves(int gameID) throws RequestException {
+        return dataAccess.getMoves(gameID);
+    }
+
+    @Override
+    public ArrayList<Integer> archiveCompletedGames(Instant cutoff) throws RequestException {
+        ArrayList<Integer> archived = dataAccess.archiveCompletedGames(cutoff);
+        for (int gameID : archived) {
+            archivedGames.add(gameID);
+            changedGames.remove(gameID);
+        }
+        return archived;
+    }
+
+    //A plain write doesn't say which version it made, so the game is read back to find out
+    private void reread(int gameID) throws RequestException {
+        VersionedGame versionedGame = dataAccess.getVersionedGame(gameID);
+        if (versionedGame != null && versionedGame.version() != ARCHIVED_VERSION) {
+            changed(versionedGame);
+        }
+    }
+
+    //Writes can finish in a different order than they were made, so only a newer version replaces the cached one
+    private void changed(VersionedGame versionedGame) {
+        changedGames.merge(versionedGame.gameData().gameID(), versionedGame,
+                (cached, written) -> written.version() > cached.version() ? written : cached);
+        archivedGames.remove(versionedGame.gameData().gameID());
+    }
+
+    @Override
+    public void createAuth(AuthSession session) throws RequestException {
+        dataAccess.createAuth(session);
+    }
+
+    @Override
+    public AuthSession getAuthSession(String authToken) throws RequestException {
+        return dataAccess.getAuthSession(authToken);
+    }
+
+    @Override
+    public void touchAuth(String authToken, Instant lastSeen) throws RequestException {
+        dataAccess.touchAuth(authToken, lastSeen);
+    }
+
+    @Override
+    public ArrayList<AuthSession> listAuthsForUser(String username) throws RequestException {
+        return dataAccess.listAuthsForUser(username);
+    }
+
+    @Override
+    public ArrayList<AuthData> deleteExpiredAuths(Instant lastSeenBefore, int limit) throws RequestException {
+        return dataAccess.deleteExpiredAuths(lastSeenBefore, limit);
+    }
+
+    @Override
+    public void deleteAuth(AuthData authData) throws RequestException {
+        dataAccess.deleteAuth(authData);
+    }
+
+    @Override
+    public void revokeToken(String authToken, Instant expiresAt) throws RequestException {
+        dataAccess.revokeToken(authToken, expiresAt);
+    }
+
+    @Override
+    public Map<String, Instant> listRevokedTokens() throws RequestException {
+        return dataAccess.listRevokedTokens();
+    }
+
+    @Override
+    public void deleteExpiredRevocations(Instant now) throws RequestException {
+        dataAccess.deleteExpiredRevocations(now);
+    }
+
+    /**
+     * Writes every game out as a fresh, clean snapshot for the next startup.
+     */
+    @Override
+    public void close() throws IOException, RequestException {
+        //Taken first, so a write that lands while the games are listed makes the next startup rebuild
+        GamesWatermark watermark = dataAccess.gamesWatermark();
+        ArrayList<GameData> games = listGames();
+        snapshot.close();
+        GameSnapshot.write(path, games, watermark);
+    }
+}
@@ -0,0 +1,9 @@
+package dataaccess;
+
+import datamodel.GameData;
+
+/**
+ * A game along with the version it was stored at. The version goes up by one every
+ * time the game is written.
+ */
+public record VersionedGame(GameData gameData, int version) {}
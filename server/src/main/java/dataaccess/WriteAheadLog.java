@@ -0,0 +1,209 @@
+package dataaccess;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log file of length- and checksum-framed records.
+ * <p>
+ * Appends only copy the record into memory. A single flusher thread writes everything
+ * appended so far and fsyncs it, so many writers waiting at once share one fsync.
+ */
+class WriteAheadLog implements AutoCloseable {
+
+    private static final int HEADER_SIZE = 8;
+
+    private final FileChannel channel;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushNeeded = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final Thread flusher;
+
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long appendedSequence = 0;
+    private long durableSequence = 0;
+    private IOException failure;
+    private boolean closed = false;
+
+    WriteAheadLog(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        flusher = new Thread(this::flushLoop, "wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    static byte[] frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return ByteBuffer.allocate(HEADER_SIZE + payload.length)
+                .putInt(payload.length).putInt((int) crc.getValue()).put(payload).array();
+    }
+
+    /**
+     * Reads every intact record in a file through a memory mapping. Anything after the
+     * first torn or corrupt record (say, from a crash mid-write) is cut off the file.
+     *
+     * @return how many records were read
+     */
+    static int replay(Path path, Consumer<ByteBuffer> handler) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        int records = 0;
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = file.size();
+            MappedByteBuffer mapped = file.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            while (mapped.remaining() >= HEADER_SIZE) {
+                int start = mapped.position();
+                int length = mapped.getInt();
+                int checksum = mapped.getInt();
+                if (length < 0 || length > mapped.remaining()) {
+                    mapped.position(start);
+                    break;
+                }
+                ByteBuffer payload = mapped.slice(mapped.position(), length);
+                CRC32 crc = new CRC32();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    mapped.position(start);
+                    break;
+                }
+                handler.accept(payload);
+                mapped.position(mapped.position() + length);
+                records++;
+            }
+            if (mapped.position() < size) {
+                file.truncate(mapped.position());
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return a sequence number to pass to {@link #awaitDurable(long)}
+     */
+    long append(byte[] payload) throws IOException {
+        lock.lock();
+        try {
+            if (closed || failure != null) {
+                throw failure != null ? failure : new IOException("write-ahead log is closed");
+            }
+            pending.writeBytes(frame(payload));
+            flushNeeded.signal();
+            return ++appendedSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void awaitDurable(long sequence) throws IOException {
+        lock.lock();
+        try {
+            while (durableSequence < sequence && failure == null) {
+                flushed.awaitUninterruptibly();
+            }
+            if (durableSequence < sequence) {
+                throw failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long size() throws IOException {
+        lock.lock();
+        try {
+            return channel.size() + pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Empties the log once everything in it is durable. Callers must make sure nothing
+     * is appended until this returns.
+     */
+    void reset() throws IOException {
+        lock.lock();
+        try {
+            awaitDurable(appendedSequence);
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            byte[] batch;
+            long batchSequence;
+            lock.lock();
+            try {
+                while (pending.size() == 0 && !closed) {
+                    flushNeeded.awaitUninterruptibly();
+                }
+                if (pending.size() == 0) {
+                    return;
+                }
+                batch = pending.toByteArray();
+                batchSequence = appendedSequence;
+                pending = new ByteArrayOutputStream();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException ex) {
+                lock.lock();
+                try {
+                    failure = ex;
+                    flushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+            lock.lock();
+            try {
+                durableSequence = batchSequence;
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            flushNeeded.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,106 @@
+package server;
+
+import org.eclipse.jetty.websocket.api.Session;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides which thread runs each websocket command.
+ * <p>
+ * Commands from one session always run in the order they arrived, and commands for one
+ * game never run at the same time. With virtual threads each command gets its own
+ * virtual thread, so a command waiting on the database doesn't hold up a Jetty thread.
+ * The game locks are ReentrantLocks rather than monitors so a blocked virtual thread
+ * doesn't pin its carrier thread. There is a fixed number of them, shared between games,
+ * so games that come and go (or ids that don't exist) don't add up to more locks.
+ * <p>
+ * A command that throws has its exception passed to the error handler, so
+ * it isn't lost on a virtual thread.
+ */
+public class CommandDispatcher {
+
+    private static final int GAME_LOCK_STRIPES = 64;
+
+    public interface ErrorHandler {
+        void failed(Session session, RuntimeException ex);
+    }
+
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<Session, CompletableFuture<Void>> sessionQueues = new ConcurrentHashMap<>();
+    private final ReentrantLock[] gameLocks = new ReentrantLock[GAME_LOCK_STRIPES];
+    private volatile ErrorHandler errorHandler = (session, ex) -> {};
+
+    /**
+     * @param virtualThreads true to run commands on virtual threads, false to run them on
+     *                       the calling thread
+     */
+    public CommandDispatcher(boolean virtualThreads) {
+        executor = virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        for (int i = 0; i < gameLocks.length; i++) {
+            gameLocks[i] = new ReentrantLock();
+        }
+    }
+
+    public void setErrorHandler(ErrorHandler errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    public void dispatch(Session session, Runnable command) {
+        Runnable handled = () -> {
+            try {
+                command.run();
+            } catch (RuntimeException ex) {
+                System.out.println("Websocket command failed: " + ex);
+                errorHandler.failed(session, ex);
+            }
+        };
+        if (executor == null) {
+            handled.run();
+            return;
+        }
+        //Only the error handler itself can still throw, and that mustn't stop the session's queue
+        sessionQueues.compute(session, (s, queue) -> queue == null ?
+                CompletableFuture.runAsync(handled, executor) :
+                queue.exceptionally(ex -> null).thenRunAsync(handled, executor));
+    }
+
+    public void runForGame(Integer gameID, Runnable command) {
+        if (gameID == null) {
+            command.run();
+            return;
+        }
+        ReentrantLock lock = gameLocks[Math.floorMod(gameID, gameLocks.length)];
+        lock.lock();
+        try {
+            command.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs a command for a game that didn't come from a session, like a bot's move, on
+     * its own thread if there is an executor.
+     */
+    public void submitForGame(Integer gameID, Runnable command) {
+        if (executor == null) {
+            runForGame(gameID, command);
+            return;
+        }
+        executor.execute(() -> runForGame(gameID, command));
+    }
+
+    public void removeSession(Session session) {
+        sessionQueues.remove(session);
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package server;
+
+import websocket.BinaryCodec;
+import websocket.messages.ServerMessage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A server message that is encoded at most once per wire format, no matter how many
+ * sessions it is sent to.
+ */
+public class OutgoingMessage {
+
+    private final ServerMessage message;
+    private String json;
+    private ByteBuffer binary;
+
+    public OutgoingMessage(ServerMessage message) {
+        this.message = message;
+    }
+
+    public ServerMessage message() {
+        return message;
+    }
+
+    public synchronized String json() {
+        if (json == null) {
+            json = message.toString();
+        }
+        return json;
+    }
+
+    public synchronized ByteBuffer binary() {
+        if (binary == null) {
+            binary = BinaryCodec.encodeMessage(message);
+        }
+        return binary.asReadOnlyBuffer();
+    }
+}
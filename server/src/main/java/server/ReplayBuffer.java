@@ -0,0 +1,77 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hands out the sequence numbers for one game's broadcast messages and keeps the most
+ * recent ones so a client that reconnects can be sent only what it missed.
+ * <p>
+ * Callers should hold the buffer's lock while they number, send and record a message
+ * so every session sees the game's messages in sequence order.
+ */
+public class ReplayBuffer {
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * @param excludedUsername the user the message was not sent to, or null if everyone got it
+     * @param message          the message as sent to full-update sessions
+     * @param deltaMessage     the message as sent to delta-update sessions
+     */
+    public record Entry(long sequence, String excludedUsername, OutgoingMessage message,
+                        OutgoingMessage deltaMessage) {}
+
+    private final Entry[] entries;
+    //The sequence the buffer started at, below which it has never numbered anything
+    private final long firstSequence;
+    private long lastSequence = 0;
+
+    public ReplayBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ReplayBuffer(int capacity) {
+        this(capacity, 0);
+    }
+
+    /**
+     * @param lastSequence where numbering carries on from, so a buffer that replaces an
+     *                     earlier one for the same game never reuses its numbers
+     */
+    public ReplayBuffer(int capacity, long lastSequence) {
+        entries = new Entry[capacity];
+        this.firstSequence = lastSequence;
+        this.lastSequence = lastSequence;
+    }
+
+    public synchronized long nextSequence() {
+        return lastSequence + 1;
+    }
+
+    public synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    public synchronized void add(Entry entry) {
+        lastSequence = entry.sequence();
+        entries[(int) (entry.sequence() % entries.length)] = entry;
+    }
+
+    /**
+     * @param sequence the last sequence number the client received
+     * @return Every message after that sequence number, oldest first, or null if some
+     * of them have already been dropped from the buffer or the number isn't one this
+     * buffer handed out
+     */
+    public synchronized List<Entry> since(long sequence) {
+        if (sequence > lastSequence || sequence < lastSequence - entries.length || sequence < firstSequence) {
+            return null;
+        }
+        List<Entry> missed = new ArrayList<>();
+        for (long seq = sequence + 1; seq <= lastSequence; seq++) {
+            missed.add(entries[(int) (seq % entries.length)]);
+        }
+        return missed;
+    }
+}
@@ -3,49 +3,194 @@ package server;
 import com.google.gson.Gson;
 import dataaccess.*;
 import datamodel.*;
+import engine.OpeningBook;
+import engine.SearchLimits;
+import engine.Tablebase;
 import exception.RequestException;
 import io.javalin.*;
 import io.javalin.http.Context;
 import response.*;
 import service.*;
 import request.*;
+import websocket.messages.Notification;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class Server {
 
+    private static final long MAX_MAINTENANCE_INTERVAL_MILLIS = 10 * 60 * 1000;
+    private static final int ANALYSIS_PROGRESS_INTERVAL = 10;
+
     private final Javalin server;
     private final UserService userService;
     private final GameService gameService;
     private final WebsocketHandler websocketHandler;
+    private final CommandDispatcher dispatcher;
+    private final PasswordHasher passwordHasher;
+    private final List<AutoCloseable> closeOnStop = new ArrayList<>();
+    private final AuthService authService;
+    private final AnalysisService analysisService;
+    private final BotService botService;
+    //Runs background jobs like archiving games and reaping expired sessions
+    private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public Server() {
+        this(ServerConfig.fromSystemProperties());
+    }
+
+    public Server(ServerConfig config) {
         DataAccess dataAccess;
         try {
-            dataAccess = new SQLDataAccess();
+            dataAccess = withGameSnapshot(new SQLDataAccess(), config);
         } catch (RequestException ex) {
             System.out.println(ex.getMessage());
-            dataAccess = new MemoryDataAccess();
+            dataAccess = fallbackDataAccess(config);
+        }
+        if (config.maxDatabaseConcurrency() > 0) {
+            dataAccess = new BoundedDataAccess(dataAccess, config.maxDatabaseConcurrency());
         }
 
-        userService = new UserService(dataAccess);
-        gameService = new GameService(dataAccess);
-        websocketHandler = new WebsocketHandler(dataAccess);
+        passwordHasher = new PasswordHasher(config.hashThreads(), config.hashQueueCapacity(),
+                config.bcryptLogRounds(), config.hashTimeoutMillis());
+        authService = new AuthService(dataAccess, Duration.ofMillis(config.sessionTtlMillis()),
+                config.maxSessionsPerUser(), tokenSigner(config));
+        userService = new UserService(dataAccess, passwordHasher, authService);
+        gameService = new GameService(dataAccess, authService);
+        dispatcher = new CommandDispatcher(config.virtualThreads());
+        OpeningBook book = openingBook(config);
+        Tablebase tablebase = tablebase(config);
+        botService = new BotService(config.botThreads(), book);
+        botService.setTablebase(tablebase);
+        websocketHandler = new WebsocketHandler(dataAccess, dispatcher, authService, botService);
+        botService.setMoveSink(websocketHandler::playBotMove);
+        authService.addSessionEndListener(websocketHandler::invalidateAuth);
+        analysisService = new AnalysisService(dataAccess, authService, config.analysisThreads(),
+                SearchLimits.millis(config.analysisMillisPerMove()), AnalysisService.DEFAULT_QUEUE_CAPACITY,
+                AnalysisService.DEFAULT_CACHED_POSITIONS, book);
+        analysisService.setTablebase(tablebase);
+        analysisService.addProgressListener(this::broadcastAnalysisProgress, ANALYSIS_PROGRESS_INTERVAL);
+        if (config.archiveAfterMillis() > 0) {
+            Duration archiveAfter = Duration.ofMillis(config.archiveAfterMillis());
+            schedule(config.archiveAfterMillis(), () -> gameService.archiveCompletedGames(archiveAfter));
+        }
+        schedule(config.sessionTtlMillis(), authService::reapExpiredSessions);
 
-        server = Javalin.create(config -> config.staticFiles.add("web"));
+        server = Javalin.create(javalinConfig -> {
+            javalinConfig.staticFiles.add("web");
+            javalinConfig.useVirtualThreads = config.virtualThreads();
+        });
 
         server.delete("db", this::clear);
         server.post("user", this::registerHandler);
         server.post("session", this::loginHandler);
         server.delete("session", this::logoutHandler);
+        server.delete("session/all", this::logoutAllHandler);
         server.get("game", this::listGamesHandler);
         server.post("game", this::createGameHandler);
         server.put("game", this::joinGameHandler);
+        server.post("game/bot", this::createBotGameHandler);
+        server.post("game/{id}/analysis", this::requestAnalysisHandler);
+        server.get("game/{id}/analysis", this::getAnalysisHandler);
+        server.get("metrics", this::metricsHandler);
         server.ws("/ws", ws -> {
             ws.onConnect(websocketHandler);
             ws.onMessage(websocketHandler);
+            ws.onBinaryMessage(websocketHandler);
             ws.onClose(websocketHandler);
         });
     }
 
+    private interface MaintenanceJob {
+        void run() throws RequestException;
+    }
+
+    //Runs the job about as often as the period it cares about, and at least every ten minutes
+    private void schedule(long periodMillis, MaintenanceJob job) {
+        long interval = Math.max(1, Math.min(periodMillis, MAX_MAINTENANCE_INTERVAL_MILLIS));
+        maintenance.scheduleWithFixedDelay(() -> {
+            try {
+                job.run();
+            } catch (RequestException ex) {
+                System.out.println(ex.getMessage());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private TokenSigner tokenSigner(ServerConfig config) {
+        if (!config.signedTokens()) {
+            return null;
+        }
+        return config.tokenKeys() != null ? TokenSigner.fromSpec(config.tokenKeys()) : TokenSigner.withRandomKey();
+    }
+
+    private DataAccess withGameSnapshot(DataAccess dataAccess, ServerConfig config) {
+        if (config.gameSnapshotFile() == null) {
+            return dataAccess;
+        }
+        try {
+            SnapshotDataAccess snapshotDataAccess = new SnapshotDataAccess(dataAccess, Path.of(config.gameSnapshotFile()));
+            closeOnStop.add(snapshotDataAccess);
+            return snapshotDataAccess;
+        } catch (RequestException ex) {
+            System.out.println(ex.getMessage());
+            return dataAccess;
+        }
+    }
+
+    private OpeningBook openingBook(ServerConfig config) {
+        if (config.openingBookFile() == null) {
+            return null;
+        }
+        try {
+            OpeningBook book = OpeningBook.open(Path.of(config.openingBookFile()));
+            closeOnStop.add(book);
+            return book;
+        } catch (IOException ex) {
+            System.out.println(ex.getMessage());
+            return null;
+        }
+    }
+
+    private Tablebase tablebase(ServerConfig config) {
+        if (config.tablebaseDirectory() == null) {
+            return null;
+        }
+        try {
+            Tablebase tablebase = Tablebase.open(Path.of(config.tablebaseDirectory()));
+            closeOnStop.add(tablebase);
+            return tablebase;
+        } catch (IOException ex) {
+            System.out.println(ex.getMessage());
+            return null;
+        }
+    }
+
+    private DataAccess fallbackDataAccess(ServerConfig config) {
+        if (config.dataDirectory() != null) {
+            try {
+                FileDataAccess fileDataAccess = new FileDataAccess(Path.of(config.dataDirectory()));
+                closeOnStop.add(fileDataAccess);
+                return fileDataAccess;
+            } catch (RequestException ex) {
+                //Starting empty would look like the saved data was lost
+                throw new IllegalStateException(ex.getMessage(), ex);
+            }
+        }
+        return new MemoryDataAccess();
+    }
+
     public int run(int desiredPort) {
         server.start(desiredPort);
         return server.port();
@@ -53,6 +198,18 @@ public class Server {
 
     public void stop() {
         server.stop();
+        dispatcher.shutdown();
+        maintenance.shutdownNow();
+        passwordHasher.shutdown();
+        analysisService.shutdown();
+        botService.shutdown();
+        for (AutoCloseable closeable : closeOnStop) {
+            try {
+                closeable.close();
+            } catch (Exception ex) {
+                System.out.println(ex.getMessage());
+            }
+        }
     }
 
     private void clear(Context ctx) {
@@ -99,6 +256,16 @@ public class Server {
         }
     }
 
+    private void logoutAllHandler(Context ctx) {
+        try {
+            String authToken = ctx.header("authorization");
+            userService.logoutAll(new LogoutRequest(authToken));
+            ctx.result("{}");
+        } catch (RequestException ex) {
+            ctx.status(ex.toHttpStatusCode()).result(ex.toJson());
+        }
+    }
+
     private void listGamesHandler(Context ctx) {
         Gson serializer = new Gson();
         try {
@@ -125,6 +292,20 @@ public class Server {
         }
     }
 
+    private void createBotGameHandler(Context ctx) {
+        Gson serializer = new Gson();
+        try {
+            var tempBody = serializer.fromJson(ctx.body(), CreateBotGameRequestBody.class);
+            String authToken = ctx.header("authorization");
+            CreateBotGameRequest request = new CreateBotGameRequest(tempBody.gameName(), tempBody.botLevel(),
+                    tempBody.botColor(), authToken);
+            CreateGameResponse response = gameService.createBotGame(request);
+            ctx.result(serializer.toJson(response));
+        } catch (RequestException ex) {
+            ctx.status(ex.toHttpStatusCode()).result(ex.toJson());
+        }
+    }
+
     private void joinGameHandler(Context ctx) {
         Gson serializer = new Gson();
         try {
@@ -138,4 +319,51 @@ public class Server {
             ctx.status(ex.toHttpStatusCode()).result(ex.toJson());
         }
     }
+
+    private void requestAnalysisHandler(Context ctx) {
+        Gson serializer = new Gson();
+        try {
+            AnalysisRequest request = new AnalysisRequest(gameIDParam(ctx), ctx.header("authorization"));
+            ctx.result(serializer.toJson(analysisService.requestAnalysis(request)));
+        } catch (RequestException ex) {
+            ctx.status(ex.toHttpStatusCode()).result(ex.toJson());
+        }
+    }
+
+    private void getAnalysisHandler(Context ctx) {
+        Gson serializer = new Gson();
+        try {
+            AnalysisRequest request = new AnalysisRequest(gameIDParam(ctx), ctx.header("authorization"));
+            ctx.result(serializer.toJson(analysisService.getAnalysis(request)));
+        } catch (RequestException ex) {
+            ctx.status(ex.toHttpStatusCode()).result(ex.toJson());
+        }
+    }
+
+    private int gameIDParam(Context ctx) throws RequestException {
+        try {
+            return Integer.parseInt(ctx.pathParam("id"));
+        } catch (NumberFormatException ex) {
+            throw new RequestException("Error: bad request", RequestException.Code.BadRequestError);
+        }
+    }
+
+    //Tells anyone watching the game when analysis starts and finishes, and every few moves in between
+    private void broadcastAnalysisProgress(AnalysisResponse progress) {
+        String message;
+        if (progress.state() == AnalysisResponse.State.RUNNING) {
+            message = "Analysis: " + progress.analysedMoves() + "/" + progress.totalMoves() + " moves";
+        } else if (progress.state() == AnalysisResponse.State.DONE) {
+            long blunders = progress.moves().stream().filter(MoveAnalysis::blunder).count();
+            message = "Analysis finished: " + blunders + " blunder" + (blunders == 1 ? "" : "s");
+        } else {
+            message = "Analysis failed";
+        }
+        websocketHandler.broadcast(null, new Notification(message), progress.gameID());
+    }
+
+    private void metricsHandler(Context ctx) {
+        Gson serializer = new Gson();
+        ctx.result(serializer.toJson(Map.of("passwordHashing", passwordHasher.stats())));
+    }
 }
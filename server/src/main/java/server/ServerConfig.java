@@ -0,0 +1,93 @@
+package server;
+
+import service.AuthService;
+
+/**
+ * Tuning options for the server, read from system properties so they can be set on
+ * the command line (e.g. {@code -Dchess.virtualThreads=true}).
+ *
+ * @param virtualThreads         run HTTP handlers and websocket commands on virtual threads
+ * @param maxDatabaseConcurrency the most data access calls allowed at once, or 0 for no limit
+ * @param hashThreads            how many threads hash passwords
+ * @param hashQueueCapacity      how many password hashes can wait before requests get a 503
+ * @param bcryptLogRounds        the BCrypt work factor for new passwords
+ * @param hashTimeoutMillis      how long a request waits for its password hash before getting a 503
+ * @param dataDirectory          where to keep data on disk when MySQL isn't available, or null to keep
+ *                               it only in memory
+ * @param gameSnapshotFile       where to keep a memory-mapped snapshot of the games when using MySQL,
+ *                               or null to read games straight from the database
+ * @param archiveAfterMillis     how long a completed game sits untouched before it is moved to the
+ *                               compressed archive, or 0 to never archive games
+ * @param sessionTtlMillis       how long an auth token can go unused before it expires
+ * @param maxSessionsPerUser     the most auth tokens a user can have at once, or 0 for no limit
+ * @param signedTokens           issue HMAC-signed auth tokens that are checked without going to storage
+ * @param tokenKeys              the signing keys as {@code keyId:base64Secret} pairs, newest first, or
+ *                               null to sign with a random key that only lasts until the server stops
+ * @param analysisThreads        how many games the engine can analyse at once
+ * @param analysisMillisPerMove  how long the engine searches each position of a game being analysed
+ * @param botThreads             how many bot moves the engine can search for at once
+ * @param openingBookFile        the opening book bots and analysis play from, built by
+ *                               {@code engine.OpeningBookBuilder}, or null to always search
+ * @param tablebaseDirectory     the endgame tables bots and analysis look up, built by
+ *                               {@code engine.TablebaseGenerator}, or null to search endgames
+ */
+public record ServerConfig(boolean virtualThreads, int maxDatabaseConcurrency, int hashThreads,
+                           int hashQueueCapacity, int bcryptLogRounds, long hashTimeoutMillis, String dataDirectory,
+                           String gameSnapshotFile, long archiveAfterMillis,
+                           long sessionTtlMillis, int maxSessionsPerUser, boolean signedTokens,
+                           String tokenKeys, int analysisThreads, long analysisMillisPerMove,
+                           int botThreads, String openingBookFile, String tablebaseDirectory) {
+
+    public static final String VIRTUAL_THREADS_PROPERTY = "chess.virtualThreads";
+    public static final String MAX_DATABASE_CONCURRENCY_PROPERTY = "chess.maxDatabaseConcurrency";
+    public static final String HASH_THREADS_PROPERTY = "chess.hashThreads";
+    public static final String HASH_QUEUE_CAPACITY_PROPERTY = "chess.hashQueueCapacity";
+    public static final String BCRYPT_LOG_ROUNDS_PROPERTY = "chess.bcryptLogRounds";
+    public static final String HASH_TIMEOUT_MILLIS_PROPERTY = "chess.hashTimeoutMillis";
+    public static final String DATA_DIRECTORY_PROPERTY = "chess.dataDir";
+    public static final String GAME_SNAPSHOT_FILE_PROPERTY = "chess.gameSnapshot";
+    public static final String ARCHIVE_AFTER_MILLIS_PROPERTY = "chess.archiveAfterMillis";
+    public static final String SESSION_TTL_MILLIS_PROPERTY = "chess.sessionTtlMillis";
+    public static final String MAX_SESSIONS_PER_USER_PROPERTY = "chess.maxSessionsPerUser";
+    public static final String SIGNED_TOKENS_PROPERTY = "chess.signedTokens";
+    public static final String TOKEN_KEYS_PROPERTY = "chess.tokenKeys";
+    public static final String ANALYSIS_THREADS_PROPERTY = "chess.analysisThreads";
+    public static final String ANALYSIS_MILLIS_PER_MOVE_PROPERTY = "chess.analysisMillisPerMove";
+    public static final String BOT_THREADS_PROPERTY = "chess.botThreads";
+    public static final String OPENING_BOOK_FILE_PROPERTY = "chess.openingBook";
+    public static final String TABLEBASE_DIRECTORY_PROPERTY = "chess.tablebaseDir";
+
+    public static ServerConfig defaults() {
+        return new ServerConfig(false, 0, Runtime.getRuntime().availableProcessors(), 256, 10, 10_000, null, null, 0,
+                AuthService.DEFAULT_SESSION_TTL.toMillis(), 0, false, null,
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2), 100,
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2), null, null);
+    }
+
+    public static ServerConfig fromSystemProperties() {
+        ServerConfig defaults = defaults();
+        boolean virtualThreads = Boolean.parseBoolean(System.getProperty(VIRTUAL_THREADS_PROPERTY, "false"));
+        int maxDatabaseConcurrency = Integer.getInteger(MAX_DATABASE_CONCURRENCY_PROPERTY,
+                defaults.maxDatabaseConcurrency());
+        int hashThreads = Integer.getInteger(HASH_THREADS_PROPERTY, defaults.hashThreads());
+        int hashQueueCapacity = Integer.getInteger(HASH_QUEUE_CAPACITY_PROPERTY, defaults.hashQueueCapacity());
+        int bcryptLogRounds = Integer.getInteger(BCRYPT_LOG_ROUNDS_PROPERTY, defaults.bcryptLogRounds());
+        long hashTimeoutMillis = Long.getLong(HASH_TIMEOUT_MILLIS_PROPERTY, defaults.hashTimeoutMillis());
+        String dataDirectory = System.getProperty(DATA_DIRECTORY_PROPERTY);
+        String gameSnapshotFile = System.getProperty(GAME_SNAPSHOT_FILE_PROPERTY);
+        long archiveAfterMillis = Long.getLong(ARCHIVE_AFTER_MILLIS_PROPERTY, defaults.archiveAfterMillis());
+        long sessionTtlMillis = Long.getLong(SESSION_TTL_MILLIS_PROPERTY, defaults.sessionTtlMillis());
+        int maxSessionsPerUser = Integer.getInteger(MAX_SESSIONS_PER_USER_PROPERTY, defaults.maxSessionsPerUser());
+        boolean signedTokens = Boolean.parseBoolean(System.getProperty(SIGNED_TOKENS_PROPERTY, "false"));
+        String tokenKeys = System.getProperty(TOKEN_KEYS_PROPERTY);
+        int analysisThreads = Integer.getInteger(ANALYSIS_THREADS_PROPERTY, defaults.analysisThreads());
+        long analysisMillisPerMove = Long.getLong(ANALYSIS_MILLIS_PER_MOVE_PROPERTY, defaults.analysisMillisPerMove());
+        int botThreads = Integer.getInteger(BOT_THREADS_PROPERTY, defaults.botThreads());
+        String openingBookFile = System.getProperty(OPENING_BOOK_FILE_PROPERTY);
+        String tablebaseDirectory = System.getProperty(TABLEBASE_DIRECTORY_PROPERTY);
+        return new ServerConfig(virtualThreads, maxDatabaseConcurrency, hashThreads, hashQueueCapacity,
+                bcryptLogRounds, hashTimeoutMillis, dataDirectory, gameSnapshotFile, archiveAfterMillis,
+                sessionTtlMillis, maxSessionsPerUser, signedTokens, tokenKeys, analysisThreads, analysisMillisPerMove,
+                botThreads, openingBookFile, tablebaseDirectory);
+    }
+}
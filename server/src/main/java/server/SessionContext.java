@@ -0,0 +1,12 @@
+package server;
+
+import chess.ChessGame;
+import datamodel.AuthData;
+
+/**
+ * What a websocket connection authenticated as when it connected to a game, so later
+ * commands on the same connection don't have to look the auth token up again.
+ *
+ * @param team the team the user is playing, or null for an observer
+ */
+public record SessionContext(AuthData auth, int gameID, ChessGame.TeamColor team, boolean deltaUpdates) {}
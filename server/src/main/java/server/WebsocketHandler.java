@@ -2,13 +2,17 @@
 package server;
 
 import chess.ChessGame;
+import chess.ChessMove;
 import chess.ChessPosition;
 import chess.InvalidMoveException;
 import com.google.gson.Gson;
 import dataaccess.DataAccess;
 import datamodel.AuthData;
 import datamodel.GameData;
+import datamodel.MoveRecord;
 import exception.RequestException;
+import io.javalin.websocket.WsBinaryMessageContext;
+import io.javalin.websocket.WsBinaryMessageHandler;
 import io.javalin.websocket.WsCloseContext;
 import io.javalin.websocket.WsCloseHandler;
 import io.javalin.websocket.WsConnectContext;
@@ -16,21 +20,59 @@ import io.javalin.websocket.WsConnectHandler;
 import io.javalin.websocket.WsMessageContext;
 import io.javalin.websocket.WsMessageHandler;
 import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
 import org.jetbrains.annotations.NotNull;
+import service.AuthService;
+import service.BotService;
+import websocket.BinaryCodec;
 import websocket.commands.UserGameCommand;
 import websocket.messages.*;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class WebsocketHandler implements WsConnectHandler, WsMessageHandler, WsCloseHandler {
+public class WebsocketHandler implements WsConnectHandler, WsMessageHandler, WsBinaryMessageHandler, WsCloseHandler {
 
     public final ConcurrentHashMap<Integer, ConcurrentHashMap<Session, Session>>
             connections = new ConcurrentHashMap<>();
+    //Only for games someone is connected to, dropped when the last of them leaves
+    private final ConcurrentHashMap<Integer, ReplayBuffer> replayBuffers = new ConcurrentHashMap<>();
+    private final AtomicLong replayBuffersCreated = new AtomicLong();
+    private final ConcurrentHashMap<Session, SessionContext> sessions = new ConcurrentHashMap<>();
+    private final Set<Session> binarySessions = ConcurrentHashMap.newKeySet();
     private final DataAccess dataAccess;
+    private final CommandDispatcher dispatcher;
+    private final AuthService authService;
+    private final BotService botService;
 
     public WebsocketHandler(DataAccess dataAccess) {
+        this(dataAccess, new CommandDispatcher(false));
+    }
+
+    public WebsocketHandler(DataAccess dataAccess, CommandDispatcher dispatcher) {
+        this(dataAccess, dispatcher, new AuthService(dataAccess));
+    }
+
+    public WebsocketHandler(DataAccess dataAccess, CommandDispatcher dispatcher, AuthService authService) {
+        this(dataAccess, dispatcher, authService, null);
+    }
+
+    /**
+     * @param botService thinks for the bots in bot games, or null if there are none
+     */
+    public WebsocketHandler(DataAccess dataAccess, CommandDispatcher dispatcher, AuthService authService,
+                            BotService botService) {
         this.dataAccess = dataAccess;
+        this.dispatcher = dispatcher;
+        this.authService = authService;
+        this.botService = botService;
+        dispatcher.setErrorHandler((session, ex) ->
+                directMessage(session, new ErrorMessage("Sorry, something went wrong on the server. Try again.")));
     }
 
     @Override
@@ -41,102 +83,232 @@ public class WebsocketHandler implements WsConnectHandler, WsMessageHandler, WsC
 
     @Override
     public void handleMessage(WsMessageContext ctx) {
+        String message = ctx.message();
+        Session session = ctx.session;
+        dispatcher.dispatch(session, () -> {
+            UserGameCommand userCommand = new Gson().fromJson(message, UserGameCommand.class);
+            handleCommand(userCommand, session);
+        });
+    }
+
+    @Override
+    public void handleBinaryMessage(WsBinaryMessageContext ctx) {
+        Session session = ctx.session;
+        binarySessions.add(session);
+        //Jetty may reuse the frame's array once we return, and the command might not have run yet
+        ByteBuffer frame = ByteBuffer.wrap(Arrays.copyOfRange(ctx.data(), ctx.offset(), ctx.offset() + ctx.length()));
+        dispatcher.dispatch(session, () -> {
+            try {
+                //Decoded in order with the session's other commands, so a CONNECT has bound its token first
+                SessionContext context = sessions.get(session);
+                String boundAuthToken = (context == null ? null : context.auth().authToken());
+                UserGameCommand userCommand = BinaryCodec.decodeCommand(frame, boundAuthToken);
+                handleCommand(userCommand, session);
+            } catch (RequestException ex) {
+                directMessage(session, new ErrorMessage(ex.getMessage()));
+            }
+        });
+    }
+
+    private void handleCommand(UserGameCommand userCommand, Session session) {
+        dispatcher.runForGame(userCommand.getGameID(), () -> runCommand(userCommand, session));
+    }
+
+    private void runCommand(UserGameCommand userCommand, Session session) {
         try {
-            UserGameCommand userCommand = new Gson().fromJson(ctx.message(), UserGameCommand.class);
             switch (userCommand.getCommandType()) {
-                case CONNECT -> connectToGame(userCommand, ctx.session);
-                case MAKE_MOVE -> makeMove(userCommand, ctx.session);
-                case LEAVE -> leaveGame(userCommand, ctx.session);
-                case RESIGN -> resignFromGame(userCommand, ctx.session);
+                case CONNECT -> connectToGame(userCommand, session);
+                case MAKE_MOVE -> makeMove(userCommand, session);
+                case LEAVE -> leaveGame(userCommand, session);
+                case RESIGN -> resignFromGame(userCommand, session);
+                case SYNC -> syncGame(userCommand, session);
+                case RESUME -> resumeGame(userCommand, session);
             }
         } catch (RequestException ex) {
             ErrorMessage serverError = new ErrorMessage(ex.getMessage());
-            directMessage(ctx.session, serverError);
-        } catch (InvalidMoveException ex) {
-            String message = "Sorry, that move is not valid. Try again to make a valid move.";
-            ErrorMessage serverError = new ErrorMessage(message);
-            directMessage(ctx.session, serverError);
+            directMessage(session, serverError);
         }
     }
 
     @Override
     public void handleClose(@NotNull WsCloseContext ctx) {
+        Session session = ctx.session;
+        dispatcher.dispatch(session, () -> {
+            for (Integer gameID : connections.keySet()) {
+                remove(session, gameID);
+            }
+            binarySessions.remove(session);
+            sessions.remove(session);
+            dispatcher.removeSession(session);
+        });
         System.out.println("Websocket closed");
     }
 
     private void connectToGame(UserGameCommand command, Session session) throws RequestException {
-        AuthData auth = dataAccess.getAuth(command.getAuthToken());
-        if (auth == null) {
-            String errorMessage = "Sorry, you are not authorized to make a move.";
-            throw new RequestException(errorMessage, RequestException.Code.UnauthorizedError);
+        AuthData auth = authenticate(command, "Sorry, you are not authorized to make a move.");
+        GameData gameData = dataAccess.getGame(command.getGameID());
+        if (gameData == null) {
+            String errorMessage = "Sorry, for some reason your game could not be found. Try loading up a new game.";
+            throw new RequestException(errorMessage, RequestException.Code.BadRequestError);
         }
-        ChessGame.TeamColor team = getTeam(command);
+        ChessGame.TeamColor team = getTeam(command, auth, gameData);
+        sessions.put(session, new SessionContext(auth, gameData.gameID(), team, command.wantsDeltaUpdates()));
         String message = String.format("%s has joined the game as %s!", auth.username(), teamToString(team));
         Notification serverMessage = new Notification(message);
         broadcast(session, serverMessage, command.getGameID());
 
+        ReplayBuffer buffer = getReplayBuffer(command.getGameID());
+        synchronized (buffer) {
+            LoadGame gameLoad = new LoadGame(gameData.game());
+            gameLoad.setSequence(buffer.lastSequence());
+            directMessage(session, gameLoad);
+            add(session, command.getGameID());
+        }
+        //A bot playing white waits for its opponent to show up
+        botMoveIfTurn(gameData);
+    }
+
+    private void resumeGame(UserGameCommand command, Session session) throws RequestException {
+        AuthData auth = authenticate(command, "Sorry, you are not authorized to rejoin this game.");
         GameData gameData = dataAccess.getGame(command.getGameID());
         if (gameData == null) {
             String errorMessage = "Sorry, for some reason your game could not be found. Try loading up a new game.";
             throw new RequestException(errorMessage, RequestException.Code.BadRequestError);
         }
-        LoadGame gameLoad = new LoadGame(gameData.game());
-        directMessage(session, gameLoad);
-        add(session, command.getGameID());
+        boolean delta = command.wantsDeltaUpdates();
+        ChessGame.TeamColor team = getTeam(command, auth, gameData);
+        sessions.put(session, new SessionContext(auth, gameData.gameID(), team, delta));
+        ReplayBuffer buffer = getReplayBuffer(command.getGameID());
+        synchronized (buffer) {
+            List<ReplayBuffer.Entry> missed = buffer.since(command.getLastSequence());
+            if (missed == null) {
+                LoadGame gameLoad = new LoadGame(gameData.game());
+                gameLoad.setSequence(buffer.lastSequence());
+                directMessage(session, gameLoad);
+            } else {
+                for (ReplayBuffer.Entry entry : missed) {
+                    if (!auth.username().equals(entry.excludedUsername())) {
+                        send(session, delta ? entry.deltaMessage() : entry.message());
+                    }
+                }
+            }
+            add(session, command.getGameID());
+        }
     }
 
-    private void makeMove(UserGameCommand command, Session session) throws RequestException, InvalidMoveException {
-        AuthData auth = dataAccess.getAuth(command.getAuthToken());
-        if (auth == null) {
-            String message = "Sorry, you are not authorized to make a move.";
-            throw new RequestException(message, RequestException.Code.UnauthorizedError);
-        }
+    private void syncGame(UserGameCommand command, Session session) throws RequestException {
+        getSessionContext(command, session, "Sorry, you are not authorized to load this game.");
         GameData gameData = dataAccess.getGame(command.getGameID());
         if (gameData == null) {
-            String message = "Sorry, for some reason your game could not be found. Try loading up a new game.";
-            throw new RequestException(message, RequestException.Code.BadRequestError);
-        } else if (gameData.state() == GameData.GameState.COMPLETE) {
-            String message = """ 
-                    This game has already been completed!
-                    Join a new game to play!
-                    """;
-            ErrorMessage serverError = new ErrorMessage(message);
-            directMessage(session, serverError);
-            return;
+            String errorMessage = "Sorry, for some reason your game could not be found. Try loading up a new game.";
+            throw new RequestException(errorMessage, RequestException.Code.BadRequestError);
         }
+        //Only games with someone connected have a buffer, and a sync mustn't create one that nothing frees
+        ReplayBuffer buffer = replayBuffers.get(command.getGameID());
+        LoadGame gameLoad = new LoadGame(gameData.game());
+        gameLoad.setSequence(buffer == null ? 0 : buffer.lastSequence());
+        directMessage(session, gameLoad);
+    }
 
-        ChessGame.TeamColor team = getTeam(command);
-        if (team == null) {
-            String message = """ 
-                    Sorry, you cannot make a move as an observer!
-                    Join a game as either WHITE or BLACK to play the game.
-                    """;
-            ErrorMessage serverError = new ErrorMessage(message);
-            directMessage(session, serverError);
-            return;
+    private void makeMove(UserGameCommand command, Session session) throws RequestException {
+        SessionContext context = getSessionContext(command, session, "Sorry, you are not authorized to make a move.");
+        applyMove(command.getGameID(), context.team(), context.auth().username(), command.getMove(), null, session);
+    }
+
+    /**
+     * Plays a move a bot has found. It runs in the game's turn with the players' commands,
+     * off the bot's thread, and is dropped if the game has changed since the bot started
+     * thinking.
+     */
+    public void playBotMove(int gameID, ChessGame.TeamColor team, String username, ChessMove move, int moveCount) {
+        dispatcher.submitForGame(gameID, () -> {
+            try {
+                applyMove(gameID, team, username, move, moveCount, null);
+            } catch (RequestException ex) {
+                //The game moved on while the bot was thinking, e.g. its opponent resigned
+                System.out.println("Bot move in game " + gameID + " not played: " + ex.getMessage());
+            } finally {
+                botMoveFinished(gameID);
+            }
+        });
+    }
+
+    //Lets the bot think again, and start now if the game has moved on to its turn meanwhile
+    private void botMoveFinished(int gameID) {
+        GameData current = null;
+        try {
+            current = dataAccess.getGame(gameID);
+        } catch (RequestException ex) {
+            System.out.println("Bot in game " + gameID + " could not reload the game: " + ex.getMessage());
         }
-        ChessGame game = gameData.game();
-        if (game.getTeamTurn() != team) {
-            String message = """ 
-                    Sorry, it is not your turn!
-                    Wait for the other team to go first, and then try again.
-                    """;
-            ErrorMessage serverError = new ErrorMessage(message);
-            directMessage(session, serverError);
-            return;
+        botService.moveFinished(gameID, current);
+    }
+
+    /**
+     * Makes the move for the team, whether it came from a player's session or a bot
+     *
+     * @param moveCount how many moves the game must have had for the move to be played, or
+     *                  null to play it whatever has happened since
+     */
+    private void applyMove(int gameID, ChessGame.TeamColor team, String username, ChessMove move, Integer moveCount,
+                           Session session) throws RequestException {
+        GameData newGameData = dataAccess.updateGame(gameID, gameData -> {
+            if (gameData.state() == GameData.GameState.COMPLETE) {
+                String message = """ 
+                        This game has already been completed!
+                        Join a new game to play!
+                        """;
+                throw new RequestException(message, RequestException.Code.BadRequestError);
+            }
+            if (team == null) {
+                String message = """ 
+                        Sorry, you cannot make a move as an observer!
+                        Join a game as either WHITE or BLACK to play the game.
+                        """;
+                throw new RequestException(message, RequestException.Code.BadRequestError);
+            }
+            //Work on a copy so a retry after a conflicting write starts from the stored game
+            ChessGame game = gameData.game().copy();
+            if (moveCount != null && game.getMoveCount() != moveCount) {
+                String message = "The game has changed since the move was chosen.";
+                throw new RequestException(message, RequestException.Code.BadRequestError);
+            }
+            if (game.getTeamTurn() != team) {
+                String message = """ 
+                        Sorry, it is not your turn!
+                        Wait for the other team to go first, and then try again.
+                        """;
+                throw new RequestException(message, RequestException.Code.BadRequestError);
+            }
+            try {
+                game.makeMove(move);
+            } catch (InvalidMoveException ex) {
+                String message = "Sorry, that move is not valid. Try again to make a valid move.";
+                throw new RequestException(message, RequestException.Code.BadRequestError);
+            }
+            return new GameData(gameData.gameID(), gameData.whiteUsername(), gameData.blackUsername(),
+                    gameData.gameName(), game, gameData.state());
+        });
+        if (newGameData == null) {
+            String message = "Sorry, for some reason your game could not be found. Try loading up a new game.";
+            throw new RequestException(message, RequestException.Code.BadRequestError);
         }
-        game.makeMove(command.getMove());
-        GameData newGameData = new GameData(gameData.gameID(), gameData.whiteUsername(), gameData.blackUsername(),
-                gameData.gameName(), game, gameData.state());
-        dataAccess.updateGame(command.getGameID(), newGameData);
-        LoadGame gameLoad = new LoadGame(game);
-        broadcast(null, gameLoad, command.getGameID());
-        String startPos = formatPosition(command.getMove().getStartPosition());
-        String endPos = formatPosition(command.getMove().getEndPosition());
-        String message = String.format("%s has made a move %s to %s!", auth.username(), startPos, endPos);
+        dataAccess.appendMoves(List.of(new MoveRecord(newGameData.gameID(), newGameData.game().getMoveCount(),
+                move)));
+        broadcastMove(newGameData.game(), move, gameID);
+        String startPos = formatPosition(move.getStartPosition());
+        String endPos = formatPosition(move.getEndPosition());
+        String message = String.format("%s has made a move %s to %s!", username, startPos, endPos);
         Notification notification = new Notification(message);
-        broadcast(session, notification, command.getGameID());
+        broadcast(session, notification, gameID);
         checkGameConditions(newGameData);
+        botMoveIfTurn(newGameData);
+    }
+
+    private void botMoveIfTurn(GameData gameData) {
+        if (botService != null) {
+            botService.gameUpdated(gameData);
+        }
     }
 
     private String formatPosition(ChessPosition pos) {
@@ -156,33 +328,28 @@ public class WebsocketHandler implements WsConnectHandler, WsMessageHandler, WsC
     }
 
     private void leaveGame(UserGameCommand command, Session session) throws RequestException {
-        AuthData auth = dataAccess.getAuth(command.getAuthToken());
-        GameData gd = dataAccess.getGame(command.getGameID());
-        ChessGame.TeamColor team = getTeam(command);
-        if (gd != null) {
+        SessionContext context = getSessionContext(command, session, "Sorry, you are not authorized to leave.");
+        ChessGame.TeamColor team = context.team();
+        dataAccess.updateGame(command.getGameID(), gd -> {
             GameData.GameState state = gd.state();
             if (state == GameData.GameState.IN_PROGRESS) {
                 state = GameData.GameState.UNFINISHED;
             }
-            GameData newGameData = (team == ChessGame.TeamColor.WHITE) ?
+            return (team == ChessGame.TeamColor.WHITE) ?
                     new GameData(gd.gameID(), null, gd.blackUsername(), gd.gameName(), gd.game(), state) :
                     (team == ChessGame.TeamColor.BLACK) ?
                             new GameData(gd.gameID(), gd.whiteUsername(), null, gd.gameName(), gd.game(), state) :
                             gd;
-            dataAccess.updateGame(newGameData.gameID(), newGameData);
-        }
-        String message = String.format("%s (%s) has left the game.", auth.username(), teamToString(team));
+        });
+        String message = String.format("%s (%s) has left the game.", context.auth().username(), teamToString(team));
         Notification notification = new Notification(message);
         broadcast(session, notification, command.getGameID());
         remove(session, command.getGameID());
+        sessions.remove(session);
     }
 
     private void resignFromGame(UserGameCommand command, Session session) throws RequestException {
-        AuthData auth = dataAccess.getAuth(command.getAuthToken());
-        if (auth == null) {
-            String message = "Sorry, you are not authorized to resign.";
-            throw new RequestException(message, RequestException.Code.UnauthorizedError);
-        }
+        SessionContext context = getSessionContext(command, session, "Sorry, you are not authorized to resign.");
         GameData gameData = dataAccess.getGame(command.getGameID());
         if (gameData == null) {
             String message = "Sorry, for some reason your game could not be found. Try loading up a new game.";
@@ -197,7 +364,7 @@ public class WebsocketHandler implements WsConnectHandler, WsMessageHandler, WsC
             directMessage(session, serverError);
             return;
         }
-        ChessGame.TeamColor team = getTeam(command);
+        ChessGame.TeamColor team = context.team();
         if (team == null) {
             String message = """ 
                     Sorry, you cannot resign as an observer!
@@ -209,7 +376,7 @@ public class WebsocketHandler implements WsConnectHandler, WsMessageHandler, WsC
         }
         ChessGame.TeamColor otherTeam = team == ChessGame.TeamColor.WHITE? ChessGame.TeamColor.BLACK:
                 ChessGame.TeamColor.WHITE;
-        String message = String.format("%s (%s) has resigned!", auth.username(), teamToString(team));
+        String message = String.format("%s (%s) has resigned!", context.auth().username(), teamToString(team));
         message += gameEnd(gameData, otherTeam);
         Notification notification = new Notification(message);
         broadcast(null, notification, command.getGameID());
@@ -257,9 +424,15 @@ public class WebsocketHandler implements WsConnectHandler, WsMessageHandler, WsC
         } else {
             message += "STALEMATE!";
         }
-        GameData newGameData = new GameData(gameData.gameID(), gameData.whiteUsername(), gameData.blackUsername(),
-                gameData.gameName(), gameData.game(), GameData.GameState.COMPLETE);
-        dataAccess.updateGame(newGameData.gameID(), newGameData);
+        //Only one ending can win if, say, a resignation and a checkmate land at the same time
+        dataAccess.updateGame(gameData.gameID(), current -> {
+            if (current.state() == GameData.GameState.COMPLETE) {
+                String alreadyOver = "This game has already been completed!";
+                throw new RequestException(alreadyOver, RequestException.Code.BadRequestError);
+            }
+            return new GameData(current.gameID(), current.whiteUsername(), current.blackUsername(),
+                    current.gameName(), current.game(), GameData.GameState.COMPLETE);
+        });
         return message;
     }
 
@@ -278,11 +451,30 @@ public class WebsocketHandler implements WsConnectHandler, WsMessageHandler, WsC
         }
     }
 
-    private ChessGame.TeamColor getTeam(UserGameCommand command) throws RequestException {
-        AuthData auth = dataAccess.getAuth(command.getAuthToken());
+    private AuthData authenticate(UserGameCommand command, String unauthorizedMessage) throws RequestException {
+        AuthData auth = authService.authenticate(command.getAuthToken());
+        if (auth == null) {
+            throw new RequestException(unauthorizedMessage, RequestException.Code.UnauthorizedError);
+        }
+        return auth;
+    }
+
+    //Uses what the session authenticated as on CONNECT, only going to storage if the command doesn't match it
+    private SessionContext getSessionContext(UserGameCommand command, Session session, String unauthorizedMessage)
+            throws RequestException {
+        SessionContext context = sessions.get(session);
+        if (context != null && command.getGameID() != null && context.gameID() == command.getGameID() &&
+                context.auth().authToken().equals(command.getAuthToken())) {
+            return context;
+        }
+        AuthData auth = authenticate(command, unauthorizedMessage);
         GameData gameData = dataAccess.getGame(command.getGameID());
+        return new SessionContext(auth, command.getGameID(), getTeam(command, auth, gameData), false);
+    }
+
+    private ChessGame.TeamColor getTeam(UserGameCommand command, AuthData auth, GameData gameData) {
         ChessGame.TeamColor team = command.getTeam();
-        if (team == null && auth != null && gameData != null) {
+        if (team == null && gameData != null) {
             if (auth.username().equals(gameData.whiteUsername())) {
                 team = ChessGame.TeamColor.WHITE;
             } else if (auth.username().equals(gameData.blackUsername())) {
@@ -291,52 +483,105 @@ public class WebsocketHandler implements WsConnectHandler, WsMessageHandler, WsC
         }
         return team;
     }
-    
-    public void add(Session session, Integer gameID) {
-        ConcurrentHashMap<Session, Session> connectionGroup = connections.get(gameID);
-        if (connectionGroup == null) {
-            ConcurrentHashMap<Session, Session> newGroup = new ConcurrentHashMap<>();
-            newGroup.put(session, session);
-            connections.put(gameID, newGroup);
-        } else {
-            connectionGroup.put(session, session);
+
+    /**
+     * Forgets every connection that authenticated with a token that has been logged out,
+     * and closes them.
+     */
+    public void invalidateAuth(AuthData authData) {
+        for (var entry : sessions.entrySet()) {
+            if (entry.getValue().auth().authToken().equals(authData.authToken())) {
+                Session session = entry.getKey();
+                sessions.remove(session);
+                remove(session, entry.getValue().gameID());
+                session.close(StatusCode.POLICY_VIOLATION, "Logged out");
+            }
         }
     }
 
+    public void add(Session session, Integer gameID) {
+        connections.computeIfAbsent(gameID, id -> new ConcurrentHashMap<>()).put(session, session);
+    }
+
     public void remove(Session session, Integer gameID) {
         ConcurrentHashMap<Session, Session> connectionGroup = connections.get(gameID);
         if (connectionGroup != null) {
             connectionGroup.remove(session);
             if (connectionGroup.isEmpty()) {
                 connections.remove(gameID);
+                replayBuffers.remove(gameID);
             }
         }
     }
 
     public void broadcast(Session excludeSession, ServerMessage serverMessage, Integer gameID) {
-        try {
-            String msg = serverMessage.toString();
-            for (Integer id : connections.keySet()) {
-                ConcurrentHashMap<Session, Session> group = connections.get(id);
-                for (Session c : group.values()) {
-                    if (c.isOpen() && !c.equals(excludeSession) && gameID.equals(id)) {
-                        c.getRemote().sendString(msg);
-                    }
+        ReplayBuffer buffer = getReplayBuffer(gameID);
+        synchronized (buffer) {
+            serverMessage.setSequence(buffer.nextSequence());
+            OutgoingMessage msg = new OutgoingMessage(serverMessage);
+            SessionContext excluded = (excludeSession == null ? null : sessions.get(excludeSession));
+            String excludedUsername = (excluded == null ? null : excluded.auth().username());
+            buffer.add(new ReplayBuffer.Entry(serverMessage.getSequence(), excludedUsername, msg, msg));
+            ConcurrentHashMap<Session, Session> group = connections.get(gameID);
+            if (group == null) {
+                //Nobody to replay it to
+                replayBuffers.remove(gameID, buffer);
+                return;
+            }
+            for (Session c : group.values()) {
+                if (!c.equals(excludeSession)) {
+                    send(c, msg);
                 }
             }
-        } catch (IOException ex) {
-            System.out.println("Sorry, something went wrong and was unable to process the request.");
         }
     }
 
-    public void directMessage(Session session, ServerMessage serverMessage) {
+    public void broadcastMove(ChessGame game, ChessMove move, Integer gameID) {
+        ReplayBuffer buffer = getReplayBuffer(gameID);
+        synchronized (buffer) {
+            long sequence = buffer.nextSequence();
+            LoadGame gameLoad = new LoadGame(game);
+            gameLoad.setSequence(sequence);
+            MoveApplied moveApplied = new MoveApplied(move, game.getMoveCount(), game.positionHash());
+            moveApplied.setSequence(sequence);
+            OutgoingMessage fullMsg = new OutgoingMessage(gameLoad);
+            OutgoingMessage deltaMsg = new OutgoingMessage(moveApplied);
+            buffer.add(new ReplayBuffer.Entry(sequence, null, fullMsg, deltaMsg));
+            ConcurrentHashMap<Session, Session> group = connections.get(gameID);
+            if (group == null) {
+                //Nobody to replay it to
+                replayBuffers.remove(gameID, buffer);
+                return;
+            }
+            for (Session c : group.values()) {
+                SessionContext context = sessions.get(c);
+                send(c, context != null && context.deltaUpdates() ? deltaMsg : fullMsg);
+            }
+        }
+    }
+
+    private ReplayBuffer getReplayBuffer(Integer gameID) {
+        //Each buffer numbers from its own range, so a client resuming with a number from a
+        //dropped buffer gets the whole game instead of the wrong messages
+        return replayBuffers.computeIfAbsent(gameID, id -> new ReplayBuffer(ReplayBuffer.DEFAULT_CAPACITY,
+                replayBuffersCreated.getAndIncrement() << 32));
+    }
+
+    private void send(Session session, OutgoingMessage msg) {
         try {
-            String msg = serverMessage.toString();
             if (session.isOpen()) {
-                session.getRemote().sendString(msg);
+                if (binarySessions.contains(session)) {
+                    session.getRemote().sendBytes(msg.binary());
+                } else {
+                    session.getRemote().sendString(msg.json());
+                }
             }
         } catch (IOException ex) {
             System.out.println("Sorry, something went wrong and was unable to process the request.");
         }
     }
+
+    public void directMessage(Session session, ServerMessage serverMessage) {
+        send(session, new OutgoingMessage(serverMessage));
+    }
 }
@@ -0,0 +1,288 @@
+package service;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import dataaccess.DataAccess;
+import datamodel.GameData;
+import datamodel.MoveAnalysis;
+import datamodel.MoveRecord;
+import engine.OpeningBook;
+import engine.Position;
+import engine.Search;
+import engine.SearchLimits;
+import engine.SearchResult;
+import engine.Tablebase;
+import engine.TranspositionTable;
+import exception.RequestException;
+import request.AnalysisRequest;
+import response.AnalysisResponse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs the engine over finished games, move by move, on its own fixed-size pool so
+ * analysis can only use so much CPU. Each position gets one search with the same
+ * limits, and the results are cached by position hash, so positions that come up in
+ * many games (openings especially) are only searched once. When the queue is full, new
+ * requests get a ServiceUnavailableError (503).
+ * <p>
+ * Positions in the opening book only get a shallow search for their score, with the
+ * book's most played move as the best move, and a book move is never a blunder. With a
+ * {@link Tablebase}, small endgames get exact mate scores.
+ */
+public class AnalysisService {
+
+    //How many centipawns worse than the best move a move has to be to count as a blunder
+    public static final int BLUNDER_CENTIPAWNS = 200;
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    public static final int DEFAULT_CACHED_POSITIONS = 100_000;
+    //How many games' results are kept for polling
+    private static final int MAX_JOBS = 1000;
+    private static final int TABLE_MEGABYTES = 16;
+    private static final SearchLimits BOOK_LIMITS = SearchLimits.depth(2);
+
+    //A searched position: the score for the team to move and the move the engine would play
+    private record PositionEval(int score, ChessMove bestMove) {}
+
+    //Told when a game's analysis starts, every interval moves, and when it finishes
+    private record ProgressListener(Consumer<AnalysisResponse> listener, int interval) {}
+
+    private static class Job {
+        final int gameID;
+        final int totalMoves;
+        final List<MoveAnalysis> moves = Collections.synchronizedList(new ArrayList<>());
+        volatile AnalysisResponse.State state = AnalysisResponse.State.QUEUED;
+
+        Job(int gameID, int totalMoves) {
+            this.gameID = gameID;
+            this.totalMoves = totalMoves;
+        }
+
+        AnalysisResponse snapshot() {
+            ArrayList<MoveAnalysis> analysed;
+            synchronized (moves) {
+                analysed = new ArrayList<>(moves);
+            }
+            return new AnalysisResponse(gameID, state, analysed.size(), totalMoves, analysed);
+        }
+    }
+
+    private final DataAccess dataAccess;
+    private final AuthService authService;
+    private final SearchLimits limits;
+    private final OpeningBook book;
+    private volatile Tablebase tablebase;
+    private final ThreadPoolExecutor executor;
+    //Each worker thread keeps its own search and table between games
+    private final ThreadLocal<Search> searches =
+            ThreadLocal.withInitial(() -> new Search(new TranspositionTable(TABLE_MEGABYTES)));
+    private final Map<Long, PositionEval> cache;
+    private final Map<Integer, Job> jobs = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Job> eldest) {
+            return size() > MAX_JOBS;
+        }
+    });
+    private final List<ProgressListener> progressListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param threads         how many games can be analysed at once
+     * @param limits          how long to search each position
+     * @param queueCapacity   how many games can wait for a thread before new requests are rejected
+     * @param cachedPositions how many searched positions to remember
+     */
+    public AnalysisService(DataAccess dataAccess, AuthService authService, int threads, SearchLimits limits,
+                           int queueCapacity, int cachedPositions) {
+        this(dataAccess, authService, threads, limits, queueCapacity, cachedPositions, null);
+    }
+
+    /**
+     * @param book the opening book, or null to search every position fully
+     */
+    public AnalysisService(DataAccess dataAccess, AuthService authService, int threads, SearchLimits limits,
+                           int queueCapacity, int cachedPositions, OpeningBook book) {
+        this.dataAccess = dataAccess;
+        this.authService = authService;
+        this.limits = limits;
+        this.book = book;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "analysis-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, PositionEval> eldest) {
+                return size() > cachedPositions;
+            }
+        });
+    }
+
+    /**
+     * Queues a finished game for analysis, unless it has been already.
+     *
+     * @return the analysis so far
+     */
+    public AnalysisResponse requestAnalysis(AnalysisRequest request) throws RequestException {
+        checkAuth(request);
+        GameData game = dataAccess.getGame(request.gameID());
+        if (game == null) {
+            throw new RequestException("Error: bad request", RequestException.Code.BadRequestError);
+        }
+        if (game.state() != GameData.GameState.COMPLETE) {
+            throw new RequestException("Error: game isn't finished", RequestException.Code.BadRequestError);
+        }
+        Job existing = jobs.get(request.gameID());
+        if (existing != null && existing.state != AnalysisResponse.State.FAILED) {
+            return existing.snapshot();
+        }
+
+        ArrayList<MoveRecord> moves = dataAccess.getMoves(request.gameID());
+        //Finished before the server recorded moves, so there's nothing to go through
+        if (moves.isEmpty()) {
+            throw new RequestException("Error: game has no recorded moves", RequestException.Code.BadRequestError);
+        }
+        Job job = new Job(request.gameID(), moves.size());
+        synchronized (jobs) {
+            existing = jobs.get(request.gameID());
+            if (existing != null && existing.state != AnalysisResponse.State.FAILED) {
+                return existing.snapshot();
+            }
+            jobs.put(request.gameID(), job);
+        }
+        try {
+            executor.execute(() -> analyse(job, moves));
+        } catch (RejectedExecutionException ex) {
+            jobs.remove(request.gameID(), job);
+            throw new RequestException("Error: server is busy, try again later",
+                    RequestException.Code.ServiceUnavailableError);
+        }
+        return job.snapshot();
+    }
+
+    /**
+     * @return the analysis so far of a game that has been queued
+     */
+    public AnalysisResponse getAnalysis(AnalysisRequest request) throws RequestException {
+        checkAuth(request);
+        Job job = jobs.get(request.gameID());
+        if (job == null) {
+            throw new RequestException("Error: game hasn't been analysed", RequestException.Code.BadRequestError);
+        }
+        return job.snapshot();
+    }
+
+    /**
+     * @param listener called from the analysis thread when a game's analysis starts, after
+     *                 every move, and when it finishes
+     */
+    public void addProgressListener(Consumer<AnalysisResponse> listener) {
+        addProgressListener(listener, 1);
+    }
+
+    /**
+     * @param listener called from the analysis thread when a game's analysis starts, after
+     *                 every {@code interval} moves, and when it finishes
+     */
+    public void addProgressListener(Consumer<AnalysisResponse> listener, int interval) {
+        progressListeners.add(new ProgressListener(listener, interval));
+    }
+
+    /**
+     * @param tablebase endgame tables to score small endgames from, or null to search them
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void checkAuth(AnalysisRequest request) throws RequestException {
+        if (authService.authenticate(request.authToken()) == null) {
+            throw new RequestException("Error: unauthorized", RequestException.Code.UnauthorizedError);
+        }
+    }
+
+    private void analyse(Job job, List<MoveRecord> moves) {
+        job.state = AnalysisResponse.State.RUNNING;
+        progress(job, 0);
+        try {
+            Position position = Position.fromGame(new ChessGame());
+            PositionEval before = evaluate(position);
+            for (MoveRecord record : moves) {
+                if (Thread.currentThread().isInterrupted()) {
+                    job.state = AnalysisResponse.State.FAILED;
+                    progress(job, -1);
+                    return;
+                }
+                int mover = position.sideToMove();
+                boolean bookMove = (book != null && book.contains(position, record.move()));
+                //A fresh copy each move, so the history of a long game doesn't fill up
+                position = position.copy();
+                position.make(Position.fromChessMove(record.move()));
+                PositionEval after = evaluate(position);
+                int scoreBefore = (mover == Position.WHITE ? before.score() : -before.score());
+                int scoreAfter = (mover == Position.WHITE ? -after.score() : after.score());
+                int lost = (mover == Position.WHITE ? scoreBefore - scoreAfter : scoreAfter - scoreBefore);
+                boolean agrees = bookMove || record.move().equals(before.bestMove());
+                job.moves.add(new MoveAnalysis(record.moveNumber(), record.move(), agrees ? null : before.bestMove(),
+                        scoreBefore, scoreAfter, !agrees && lost >= BLUNDER_CENTIPAWNS));
+                progress(job, job.moves.size());
+                before = after;
+            }
+            job.state = AnalysisResponse.State.DONE;
+        } catch (RuntimeException ex) {
+            System.out.println("Analysis of game " + job.gameID + " failed: " + ex.getMessage());
+            job.state = AnalysisResponse.State.FAILED;
+        }
+        progress(job, -1);
+    }
+
+    private PositionEval evaluate(Position position) {
+        PositionEval cached = cache.get(position.hash());
+        if (cached != null) {
+            return cached;
+        }
+        ChessMove bookMove = (book == null ? null : book.bestMove(position));
+        Search search = searches.get();
+        search.setTablebase(tablebase);
+        SearchResult result = search.search(position, bookMove == null ? limits : BOOK_LIMITS);
+        //A position with no moves is scored by the search as mate or stalemate
+        PositionEval eval = new PositionEval(result.score(), bookMove == null ? result.bestMove() : bookMove);
+        cache.put(position.hash(), eval);
+        return eval;
+    }
+
+    /**
+     * @param analysedMoves how many moves are done, or -1 once the analysis has ended, when
+     *                      every listener is told
+     */
+    private void progress(Job job, int analysedMoves) {
+        //The snapshot copies every move so far, so it's only built if someone is due one
+        AnalysisResponse response = null;
+        for (ProgressListener progressListener : progressListeners) {
+            if (analysedMoves < 0 || analysedMoves % progressListener.interval() == 0) {
+                if (response == null) {
+                    response = job.snapshot();
+                }
+                progressListener.listener().accept(response);
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package service;
+
+import dataaccess.AuthSession;
+import dataaccess.DataAccess;
+import datamodel.AuthData;
+import exception.RequestException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Issues and checks auth tokens. A token expires once it has gone unused for the
+ * session TTL, and using it pushes the expiry back (it is only written back to storage
+ * every so often, not on every request). Expired tokens are deleted by
+ * {@link #reapExpiredSessions()}, which the server runs in the background.
+ * <p>
+ * With a {@link TokenSigner}, new tokens are signed instead of random, and are checked
+ * in memory without going to storage. They are still stored, so a user's sessions can
+ * be listed and ended, but they expire a fixed TTL after login instead of sliding.
+ * Ended signed tokens go on a revocation list until they would have expired. The list is
+ * kept in storage, so it survives a restart, and checked from a copy in memory.
+ */
+public class AuthService {
+
+    public static final Duration DEFAULT_SESSION_TTL = Duration.ofHours(24);
+    public static final int REAP_BATCH_SIZE = 500;
+
+    private static final Duration MAX_TOUCH_INTERVAL = Duration.ofMinutes(1);
+
+    private final DataAccess dataAccess;
+    private final Duration sessionTtl;
+    private final int maxSessionsPerUser;
+    //How stale lastSeen can get before a use writes it back
+    private final Duration touchInterval;
+    private final List<Consumer<AuthData>> sessionEndListeners = new CopyOnWriteArrayList<>();
+    private final TokenSigner signer;
+    //Signed tokens that have ended, until they expire anyway, as stored
+    private final ConcurrentHashMap<String, Instant> revokedTokens = new ConcurrentHashMap<>();
+
+    public AuthService(DataAccess dataAccess) {
+        this(dataAccess, DEFAULT_SESSION_TTL, 0);
+    }
+
+    /**
+     * @param sessionTtl         how long a token can go unused before it expires
+     * @param maxSessionsPerUser the most tokens a user can have at once, or 0 for no limit. Logging
+     *                           in past the limit ends the user's least recently used sessions.
+     */
+    public AuthService(DataAccess dataAccess, Duration sessionTtl, int maxSessionsPerUser) {
+        this(dataAccess, sessionTtl, maxSessionsPerUser, null);
+    }
+
+    /**
+     * @param signer signs new tokens, or null to issue random tokens that are checked against storage
+     */
+    public AuthService(DataAccess dataAccess, Duration sessionTtl, int maxSessionsPerUser, TokenSigner signer) {
+        this.dataAccess = dataAccess;
+        this.signer = signer;
+        this.sessionTtl = sessionTtl;
+        this.maxSessionsPerUser = maxSessionsPerUser;
+        Duration quarterTtl = sessionTtl.dividedBy(4);
+        this.touchInterval = quarterTtl.compareTo(MAX_TOUCH_INTERVAL) < 0 ? quarterTtl : MAX_TOUCH_INTERVAL;
+        if (signer != null) {
+            try {
+                revokedTokens.putAll(dataAccess.listRevokedTokens());
+            } catch (RequestException ex) {
+                //Carrying on would let every logged out token back in
+                throw new IllegalStateException("unable to load revoked tokens", ex);
+            }
+        }
+    }
+
+    public AuthData createSession(String username) throws RequestException {
+        Instant now = Instant.now();
+        String authToken = (signer != null ? signer.sign(username, now.plus(sessionTtl)) : generateToken());
+        AuthData authData = new AuthData(username, authToken);
+        dataAccess.createAuth(new AuthSession(authData, now, now));
+        if (maxSessionsPerUser > 0) {
+            ArrayList<AuthSession> sessions = dataAccess.listAuthsForUser(username);
+            if (sessions.size() > maxSessionsPerUser) {
+                sessions.sort(Comparator.comparing(AuthSession::lastSeen).thenComparing(AuthSession::issuedAt));
+                for (AuthSession session : sessions.subList(0, sessions.size() - maxSessionsPerUser)) {
+                    if (!session.authData().equals(authData)) {
+                        endSession(session.authData());
+                    }
+                }
+            }
+        }
+        return authData;
+    }
+
+    /**
+     * @return the token's auth data, or null if the token doesn't exist or has expired
+     */
+    public AuthData authenticate(String authToken) throws RequestException {
+        if (authToken == null) {
+            return null;
+        }
+        if (signer != null && TokenSigner.isSigned(authToken)) {
+            TokenSigner.Claims claims = signer.verify(authToken, Instant.now());
+            if (claims == null || revokedTokens.containsKey(authToken)) {
+                return null;
+            }
+            return new AuthData(claims.username(), authToken);
+        }
+        AuthSession session = dataAccess.getAuthSession(authToken);
+        if (session == null) {
+            return null;
+        }
+        Instant now = Instant.now();
+        if (session.lastSeen().plus(sessionTtl).isBefore(now)) {
+            return null;
+        }
+        if (session.lastSeen().plus(touchInterval).isBefore(now)) {
+            dataAccess.touchAuth(authToken, now);
+        }
+        return session.authData();
+    }
+
+    public void endSession(AuthData authData) throws RequestException {
+        revoke(authData.authToken());
+        dataAccess.deleteAuth(authData);
+        sessionEnded(authData);
+    }
+
+    /**
+     * Clears the store. Signed tokens are checked without it, so any that were still live
+     * or revoked are revoked again afterwards, or they'd keep working for users that no
+     * longer exist.
+     */
+    public void clear() throws RequestException {
+        Map<String, Instant> revoked = new HashMap<>(revokedTokens);
+        ArrayList<AuthData> live = new ArrayList<>();
+        if (signer != null) {
+            //Every session was last seen before this
+            Instant cutoff = Instant.now().plusSeconds(1);
+            ArrayList<AuthData> batch;
+            do {
+                batch = dataAccess.deleteExpiredAuths(cutoff, REAP_BATCH_SIZE);
+                live.addAll(batch);
+            } while (batch.size() == REAP_BATCH_SIZE);
+        }
+        dataAccess.clear();
+        revokedTokens.clear();
+        for (Map.Entry<String, Instant> entry : revoked.entrySet()) {
+            revokedTokens.put(entry.getKey(), entry.getValue());
+            dataAccess.revokeToken(entry.getKey(), entry.getValue());
+        }
+        for (AuthData authData : live) {
+            revoke(authData.authToken());
+        }
+    }
+
+    private void revoke(String authToken) throws RequestException {
+        if (signer == null) {
+            return;
+        }
+        TokenSigner.Claims claims = signer.verify(authToken, Instant.now());
+        if (claims != null) {
+            revokedTokens.put(authToken, claims.expiresAt());
+            dataAccess.revokeToken(authToken, claims.expiresAt());
+        }
+    }
+
+    /**
+     * @return the sessions that were ended
+     */
+    public ArrayList<AuthData> endAllSessions(String username) throws RequestException {
+        ArrayList<AuthData> ended = new ArrayList<>();
+        for (AuthSession session : dataAccess.listAuthsForUser(username)) {
+            endSession(session.authData());
+            ended.add(session.authData());
+        }
+        return ended;
+    }
+
+    /**
+     * Deletes every expired token, a batch at a time, and forgets revoked signed tokens
+     * that have expired.
+     *
+     * @return how many tokens were deleted
+     */
+    public int reapExpiredSessions() throws RequestException {
+        Instant cutoff = Instant.now().minus(sessionTtl);
+        int reaped = 0;
+        ArrayList<AuthData> batch;
+        do {
+            batch = dataAccess.deleteExpiredAuths(cutoff, REAP_BATCH_SIZE);
+            for (AuthData authData : batch) {
+                sessionEnded(authData);
+            }
+            reaped += batch.size();
+        } while (batch.size() == REAP_BATCH_SIZE);
+        Instant now = Instant.now();
+        if (signer != null) {
+            dataAccess.deleteExpiredRevocations(now);
+            revokedTokens.values().removeIf(expiresAt -> !now.isBefore(expiresAt));
+        }
+        return reaped;
+    }
+
+    /**
+     * @param listener called with the auth data of every session that ends (logout, expiry or
+     *                 being pushed out by the session limit), after its token has been deleted
+     */
+    public void addSessionEndListener(Consumer<AuthData> listener) {
+        sessionEndListeners.add(listener);
+    }
+
+    private void sessionEnded(AuthData authData) {
+        for (Consumer<AuthData> listener : sessionEndListeners) {
+            listener.accept(authData);
+        }
+    }
+
+    public static String generateToken() {
+        return UUID.randomUUID().toString();
+    }
+}
@@ -0,0 +1,161 @@
+package service;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import datamodel.BotLevel;
+import datamodel.GameData;
+import engine.OpeningBook;
+import engine.Position;
+import engine.Search;
+import engine.SearchLimits;
+import engine.SearchResult;
+import engine.Tablebase;
+import engine.TranspositionTable;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thinks for the server's bots. Searches run on a fixed number of threads, so however many
+ * bot games are going they only use so much CPU, and never on a websocket thread. Each
+ * game has at most one search queued or running. The move found is handed to the
+ * {@link MoveSink}, which plays it the same way as a move sent by a player, and the game
+ * counts as thinking until the sink reports back with {@link #moveFinished}. While the
+ * game is still in the opening book, bots play a book move without searching, and with a
+ * {@link Tablebase} they play small endgames perfectly.
+ */
+public class BotService {
+
+    private static final int TABLE_MEGABYTES = 16;
+
+    public interface MoveSink {
+        /**
+         * @param moveCount how many moves had been made when the bot started thinking, so the
+         *                  move can be dropped if the game has changed since
+         */
+        void play(int gameID, ChessGame.TeamColor team, String username, ChessMove move, int moveCount);
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final OpeningBook book;
+    //Each thread keeps its own search and table between moves
+    private final ThreadLocal<Search> searches =
+            ThreadLocal.withInitial(() -> new Search(new TranspositionTable(TABLE_MEGABYTES)));
+    private final Set<Integer> thinking = ConcurrentHashMap.newKeySet();
+    private volatile MoveSink moveSink;
+    private volatile Tablebase tablebase;
+
+    /**
+     * @param threads how many bot moves can be searched at once
+     */
+    public BotService(int threads) {
+        this(threads, null);
+    }
+
+    /**
+     * @param threads how many bot moves can be searched at once
+     * @param book    the opening book, or null to search every move
+     */
+    public BotService(int threads, OpeningBook book) {
+        this.book = book;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "bot-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public static SearchLimits limits(BotLevel level) {
+        return switch (level) {
+            case EASY -> SearchLimits.depth(1);
+            case MEDIUM -> SearchLimits.depth(4);
+            case HARD -> SearchLimits.millis(1000);
+        };
+    }
+
+    public void setMoveSink(MoveSink moveSink) {
+        this.moveSink = moveSink;
+    }
+
+    /**
+     * @param tablebase endgame tables for the bots to play from, or null to search endgames
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Starts a bot thinking if it's a bot's turn in a game that's being played, unless it
+     * already is.
+     */
+    public void gameUpdated(GameData gameData) {
+        if (gameData == null || gameData.state() != GameData.GameState.IN_PROGRESS) {
+            return;
+        }
+        ChessGame.TeamColor team = gameData.game().getTeamTurn();
+        String username = (team == ChessGame.TeamColor.WHITE ? gameData.whiteUsername() : gameData.blackUsername());
+        BotLevel level = BotLevel.fromUsername(username);
+        if (level == null || !thinking.add(gameData.gameID())) {
+            return;
+        }
+        ChessGame game = gameData.game().copy();
+        try {
+            executor.execute(() -> think(gameData.gameID(), game, team, username, level));
+        } catch (RejectedExecutionException ex) {
+            thinking.remove(gameData.gameID());
+        }
+    }
+
+    /**
+     * Called by the {@link MoveSink} once a bot's move has been played or dropped, so the
+     * game can have another search, which starts straight away if it's a bot's turn.
+     *
+     * @param gameData the game as it is now, or null if it's gone
+     */
+    public void moveFinished(int gameID, GameData gameData) {
+        thinking.remove(gameID);
+        gameUpdated(gameData);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void think(int gameID, ChessGame game, ChessGame.TeamColor team, String username, BotLevel level) {
+        int moveCount = game.getMoveCount();
+        ChessMove move;
+        try {
+            move = (book == null ? null : book.pickMove(Position.fromGame(game), ThreadLocalRandom.current()));
+            if (move == null) {
+                Search search = searches.get();
+                search.setTablebase(tablebase);
+                SearchResult result = search.search(game, limits(level));
+                move = result.bestMove();
+            }
+        } catch (RuntimeException ex) {
+            System.out.println("Bot in game " + gameID + " failed: " + ex.getMessage());
+            thinking.remove(gameID);
+            return;
+        }
+        MoveSink sink = moveSink;
+        //No move means the game is already over
+        if (move == null || sink == null) {
+            thinking.remove(gameID);
+            return;
+        }
+        try {
+            sink.play(gameID, team, username, move, moveCount);
+        } catch (RuntimeException ex) {
+            System.out.println("Bot move in game " + gameID + " not handed over: " + ex.getMessage());
+            thinking.remove(gameID);
+        }
+    }
+}
@@ -7,25 +7,32 @@ import exception.RequestException;
 import response.*;
 import request.*;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 
 public class GameService {
 
     private final DataAccess dataAccess;
-    private Integer gameCounter = 1000;
+    private final AuthService authService;
     private final RequestException gameBadRequestEx;
     private final RequestException gameUnauthorizedEx;
     private final RequestException gameAlreadyTakenEx;
 
     public GameService(DataAccess dataAccess) {
+        this(dataAccess, new AuthService(dataAccess));
+    }
+
+    public GameService(DataAccess dataAccess, AuthService authService) {
         this.dataAccess = dataAccess;
+        this.authService = authService;
         gameBadRequestEx = new RequestException("Error: bad request", RequestException.Code.BadRequestError);
         gameUnauthorizedEx = new RequestException("Error: unauthorized", RequestException.Code.UnauthorizedError);
         gameAlreadyTakenEx = new RequestException("Error: already taken", RequestException.Code.AlreadyTakenError);
     }
 
     public ListGamesResponse listGames(ListGamesRequest request) throws RequestException {
-        if (request.authToken() == null || dataAccess.getAuth(request.authToken()) == null) {
+        if (authService.authenticate(request.authToken()) == null) {
             throw gameUnauthorizedEx;
         }
         ArrayList<GameData> games = dataAccess.listGames();
@@ -37,52 +44,81 @@ public class GameService {
         if (createGameRequest.authToken() == null || createGameRequest.gameName() == null) {
             throw gameBadRequestEx;
         }
-        AuthData authData = dataAccess.getAuth(createGameRequest.authToken());
+        AuthData authData = authService.authenticate(createGameRequest.authToken());
         if (authData == null) {
             throw gameUnauthorizedEx;
         }
-        int gameID = gameCounter++;
-        while (dataAccess.getGame(gameID) != null) {
-            gameID = gameCounter++;
-        }
+        int gameID = dataAccess.nextGameID();
         GameData newGame = new GameData(gameID, null, null,
                 createGameRequest.gameName(), new ChessGame(), GameData.GameState.READY);
         dataAccess.createGame(newGame);
         return new CreateGameResponse(gameID);
     }
 
-    public void joinGame(JoinGameRequest request) throws RequestException {
-        if (request.playerColor() == null || request.authToken() == null) {
+    /**
+     * Creates a game with a server-side bot already sitting in one seat, ready for the user
+     * to join the other.
+     */
+    public CreateGameResponse createBotGame(CreateBotGameRequest request) throws RequestException {
+        if (request.authToken() == null || request.gameName() == null || request.botLevel() == null ||
+                request.botColor() == null) {
             throw gameBadRequestEx;
         }
-        AuthData authData = dataAccess.getAuth(request.authToken());
+        AuthData authData = authService.authenticate(request.authToken());
         if (authData == null) {
             throw gameUnauthorizedEx;
         }
-        GameData game = dataAccess.getGame(request.gameID());
-        if (game == null) {
+        int gameID = dataAccess.nextGameID();
+        String bot = request.botLevel().username();
+        GameData newGame = new GameData(gameID, request.botColor() == ChessGame.TeamColor.WHITE ? bot : null,
+                request.botColor() == ChessGame.TeamColor.BLACK ? bot : null, request.gameName(), new ChessGame(),
+                GameData.GameState.READY);
+        dataAccess.createGame(newGame);
+        return new CreateGameResponse(gameID);
+    }
+
+    public void joinGame(JoinGameRequest request) throws RequestException {
+        if (request.playerColor() == null || request.authToken() == null) {
             throw gameBadRequestEx;
         }
-        String whiteUser = game.whiteUsername();
-        String blackUser = game.blackUsername();
-        if (request.playerColor() == ChessGame.TeamColor.WHITE) {
-            if (whiteUser != null) {
-                throw gameAlreadyTakenEx;
+        AuthData authData = authService.authenticate(request.authToken());
+        if (authData == null) {
+            throw gameUnauthorizedEx;
+        }
+        GameData joined = dataAccess.updateGame(request.gameID(), game -> {
+            String whiteUser = game.whiteUsername();
+            String blackUser = game.blackUsername();
+            if (request.playerColor() == ChessGame.TeamColor.WHITE) {
+                if (whiteUser != null) {
+                    throw gameAlreadyTakenEx;
+                } else {
+                    whiteUser = authData.username();
+                }
             } else {
-                whiteUser = authData.username();
+                if (blackUser != null) {
+                    throw gameAlreadyTakenEx;
+                } else {
+                    blackUser = authData.username();
+                }
             }
-        } else {
-            if (blackUser != null) {
-                throw gameAlreadyTakenEx;
-            } else {
-                blackUser = authData.username();
+            GameData.GameState state = game.state();
+            if (!(whiteUser == null || blackUser == null) && state == GameData.GameState.READY) {
+                state = GameData.GameState.IN_PROGRESS;
             }
+            return new GameData(game.gameID(), whiteUser, blackUser, game.gameName(), game.game(), state);
+        });
+        if (joined == null) {
+            throw gameBadRequestEx;
         }
-        GameData.GameState state = game.state();
-        if (!(whiteUser == null || blackUser == null) && state == GameData.GameState.READY) {
-            state = GameData.GameState.IN_PROGRESS;
-        }
-        GameData updatedGame = new GameData(game.gameID(), whiteUser, blackUser, game.gameName(), game.game(), state);
-        dataAccess.updateGame(request.gameID(), updatedGame);
+    }
+
+    /**
+     * Moves completed games nobody has touched for a while into the compressed archive.
+     * They can still be looked up by id, but no longer show up in the game list.
+     *
+     * @return the ids of the games archived
+     */
+    public ArrayList<Integer> archiveCompletedGames(Duration olderThan) throws RequestException {
+        return dataAccess.archiveCompletedGames(Instant.now().minus(olderThan));
     }
 }
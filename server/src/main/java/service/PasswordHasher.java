@@ -0,0 +1,122 @@
+package service;
+
+import exception.RequestException;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs BCrypt hashing on its own fixed-size pool so a burst of logins can't take every
+ * request thread. When the pool's queue is full, or a hash waits too long, the caller
+ * gets a ServiceUnavailableError (503) instead of waiting.
+ */
+public class PasswordHasher {
+
+    public static final int DEFAULT_LOG_ROUNDS = 10;
+
+    /**
+     * @param hashes        how many hashes or checks have finished
+     * @param averageMillis the average time from submitting a hash to getting its result
+     * @param maxMillis     the longest time from submitting a hash to getting its result
+     * @param queueDepth    how many hashes are waiting for a thread right now
+     * @param rejected      how many hashes were turned away because the queue was full or they timed out
+     */
+    public record Stats(long hashes, double averageMillis, double maxMillis, int queueDepth, long rejected) {}
+
+    private final ThreadPoolExecutor executor;
+    private final int logRounds;
+    private final long timeoutMillis;
+
+    private final AtomicLong hashes = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public PasswordHasher() {
+        this(Runtime.getRuntime().availableProcessors(), 256, DEFAULT_LOG_ROUNDS, 10_000);
+    }
+
+    /**
+     * @param threads       how many hashes can run at once
+     * @param queueCapacity how many hashes can wait for a thread before new ones are rejected
+     * @param logRounds     the BCrypt work factor for new hashes
+     * @param timeoutMillis how long a caller will wait for its hash, queueing included
+     */
+    public PasswordHasher(int threads, int queueCapacity, int logRounds, long timeoutMillis) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hasher-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.logRounds = logRounds;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public String hash(String password) throws RequestException {
+        return submit(() -> BCrypt.hashpw(password, BCrypt.gensalt(logRounds)));
+    }
+
+    public boolean check(String password, String hashedPassword) throws RequestException {
+        return submit(() -> BCrypt.checkpw(password, hashedPassword));
+    }
+
+    public Stats stats() {
+        long count = hashes.get();
+        double average = (count == 0 ? 0 : totalNanos.get() / (double) count / 1_000_000);
+        return new Stats(count, average, maxNanos.get() / 1_000_000.0, executor.getQueue().size(), rejected.get());
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> T submit(Callable<T> hashing) throws RequestException {
+        long start = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(hashing);
+        } catch (RejectedExecutionException ex) {
+            throw busy();
+        }
+        try {
+            T result = future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            record(System.nanoTime() - start);
+            return result;
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            throw busy();
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RequestException("Error: interrupted", RequestException.Code.ServerError);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RequestException("Error: " + ex.getCause().getMessage(), RequestException.Code.ServerError);
+        }
+    }
+
+    private RequestException busy() {
+        rejected.incrementAndGet();
+        return new RequestException("Error: server is busy, try again later",
+                RequestException.Code.ServiceUnavailableError);
+    }
+
+    private void record(long nanos) {
+        hashes.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+}
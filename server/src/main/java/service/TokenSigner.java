@@ -0,0 +1,163 @@
+package service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Issues and checks self-describing auth tokens signed with HMAC-SHA256, so a token
+ * can be checked without looking it up in storage.
+ * <p>
+ * A token looks like {@code v1.<key id>.<username>.<expiry>.<nonce>.<signature>}, with
+ * the username, nonce and signature base64url encoded and the expiry in epoch millis.
+ * Several keys can be known at once so keys can be rotated: new tokens are signed with
+ * the current key, and tokens signed with any known key are accepted until that key
+ * is removed.
+ */
+public class TokenSigner {
+
+    private static final String PREFIX = "v1.";
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int NONCE_BYTES = 9;
+    private static final int RANDOM_KEY_BYTES = 32;
+
+    /**
+     * What a valid token says about itself.
+     */
+    public record Claims(String username, Instant expiresAt, String keyId) {}
+
+    private final ConcurrentHashMap<String, SecretKeySpec> keys = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private volatile String currentKeyId;
+
+    public TokenSigner(String keyId, byte[] secret) {
+        addKey(keyId, secret);
+        useKey(keyId);
+    }
+
+    /**
+     * @return a signer with a random key, so its tokens stop working when the server restarts
+     */
+    public static TokenSigner withRandomKey() {
+        byte[] secret = new byte[RANDOM_KEY_BYTES];
+        new SecureRandom().nextBytes(secret);
+        return new TokenSigner("k0", secret);
+    }
+
+    /**
+     * @param spec comma separated {@code keyId:base64Secret} pairs. The first key is used for
+     *             new tokens.
+     */
+    public static TokenSigner fromSpec(String spec) {
+        TokenSigner signer = null;
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.trim().split(":", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("expected keyId:base64Secret, got " + entry);
+            }
+            byte[] secret = Base64.getDecoder().decode(parts[1]);
+            if (signer == null) {
+                signer = new TokenSigner(parts[0], secret);
+            } else {
+                signer.addKey(parts[0], secret);
+            }
+        }
+        if (signer == null) {
+            throw new IllegalArgumentException("no token keys given");
+        }
+        return signer;
+    }
+
+    public void addKey(String keyId, byte[] secret) {
+        if (keyId.isEmpty() || keyId.contains(".")) {
+            throw new IllegalArgumentException("key ids can't be empty or contain '.'");
+        }
+        keys.put(keyId, new SecretKeySpec(secret, ALGORITHM));
+    }
+
+    /**
+     * Signs new tokens with the key from now on. Tokens signed with the old key still work.
+     */
+    public void useKey(String keyId) {
+        if (!keys.containsKey(keyId)) {
+            throw new IllegalArgumentException("unknown key " + keyId);
+        }
+        currentKeyId = keyId;
+    }
+
+    /**
+     * Stops accepting tokens signed with the key.
+     */
+    public void removeKey(String keyId) {
+        if (keyId.equals(currentKeyId)) {
+            throw new IllegalArgumentException("can't remove the key in use");
+        }
+        keys.remove(keyId);
+    }
+
+    public String sign(String username, Instant expiresAt) {
+        String keyId = currentKeyId;
+        byte[] nonce = new byte[NONCE_BYTES];
+        random.nextBytes(nonce);
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String body = PREFIX + keyId + "." + encoder.encodeToString(username.getBytes(StandardCharsets.UTF_8)) +
+                "." + expiresAt.toEpochMilli() + "." + encoder.encodeToString(nonce);
+        return body + "." + encoder.encodeToString(mac(keys.get(keyId), body));
+    }
+
+    /**
+     * @return the token's claims, or null if it isn't a token signed by a known key or it
+     * has expired
+     */
+    public Claims verify(String token, Instant now) {
+        if (!isSigned(token)) {
+            return null;
+        }
+        try {
+            String[] parts = token.split("\\.");
+            if (parts.length != 6) {
+                return null;
+            }
+            SecretKeySpec key = keys.get(parts[1]);
+            if (key == null) {
+                return null;
+            }
+            String body = token.substring(0, token.lastIndexOf('.'));
+            byte[] signature = Base64.getUrlDecoder().decode(parts[5]);
+            if (!MessageDigest.isEqual(signature, mac(key, body))) {
+                return null;
+            }
+            Instant expiresAt = Instant.ofEpochMilli(Long.parseLong(parts[3]));
+            if (!now.isBefore(expiresAt)) {
+                return null;
+            }
+            String username = new String(Base64.getUrlDecoder().decode(parts[2]), StandardCharsets.UTF_8);
+            return new Claims(username, expiresAt, parts[1]);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return whether the token is in the signed format (not whether it is valid)
+     */
+    public static boolean isSigned(String token) {
+        return token != null && token.startsWith(PREFIX);
+    }
+
+    private static byte[] mac(SecretKeySpec key, String body) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(body.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
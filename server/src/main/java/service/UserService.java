@@ -3,38 +3,50 @@ package service;
 import dataaccess.DataAccess;
 import datamodel.*;
 import exception.RequestException;
-import org.mindrot.jbcrypt.BCrypt;
 import response.*;
 import request.*;
 
-import java.util.UUID;
+import java.util.function.Consumer;
 
 public class UserService {
 
     private final DataAccess dataAccess;
+    private final PasswordHasher passwordHasher;
+    private final AuthService authService;
     private final RequestException userBadRequestEx;
     private final RequestException userUnauthorizedEx;
     private final RequestException userAlreadyTakenEx;
 
     public UserService(DataAccess dataAccess) {
+        this(dataAccess, new PasswordHasher());
+    }
+
+    public UserService(DataAccess dataAccess, PasswordHasher passwordHasher) {
+        this(dataAccess, passwordHasher, new AuthService(dataAccess));
+    }
+
+    public UserService(DataAccess dataAccess, PasswordHasher passwordHasher, AuthService authService) {
         this.dataAccess = dataAccess;
+        this.passwordHasher = passwordHasher;
+        this.authService = authService;
         userBadRequestEx = new RequestException("Error: bad request", RequestException.Code.BadRequestError);
         userUnauthorizedEx = new RequestException("Error: unauthorized", RequestException.Code.UnauthorizedError);
         userAlreadyTakenEx = new RequestException("Error: already taken", RequestException.Code.AlreadyTakenError);
     }
 
     public void clear() throws RequestException {
-        dataAccess.clear();
+        authService.clear();
     }
 
     public LoginResponse register(UserData user) throws RequestException {
         if (user.username() == null || user.password() == null || user.email() == null) {
             throw userBadRequestEx;
         }
-        if (dataAccess.getUser(user.username()) != null) {
+        //Bot names belong to the server's bots
+        if (user.username().startsWith(BotLevel.USERNAME_PREFIX) || dataAccess.getUser(user.username()) != null) {
             throw userAlreadyTakenEx;
         }
-        String hashedPassword = BCrypt.hashpw(user.password(), BCrypt.gensalt());
+        String hashedPassword = passwordHasher.hash(user.password());
         dataAccess.createUser(new UserData(user.username(), hashedPassword, user.email()));
         LoginRequest loginRequest = new LoginRequest(user.username(), user.password());
 
@@ -46,25 +58,36 @@ public class UserService {
         if (loginRequest.username() == null || loginRequest.password() == null) {
             throw userBadRequestEx;
         }
-        if (user == null || !BCrypt.checkpw(loginRequest.password(), user.password())) {
+        if (user == null || !passwordHasher.check(loginRequest.password(), user.password())) {
             throw userUnauthorizedEx;
         }
-        String authToken = generateToken();
-        AuthData authData = new AuthData(user.username(), authToken);
-        dataAccess.createAuth(authData);
+        AuthData authData = authService.createSession(user.username());
         return new LoginResponse(authData.username(), authData.authToken());
     }
 
     public void logout(LogoutRequest logoutRequest) throws RequestException {
-        AuthData authData = dataAccess.getAuth(logoutRequest.authToken());
+        AuthData authData = authService.authenticate(logoutRequest.authToken());
         if (authData == null) {
             throw userUnauthorizedEx;
         }
-        dataAccess.deleteAuth(authData);
+        authService.endSession(authData);
     }
 
+    /**
+     * Logs the user out of every session, not just the one making the request.
+     */
+    public void logoutAll(LogoutRequest logoutRequest) throws RequestException {
+        AuthData authData = authService.authenticate(logoutRequest.authToken());
+        if (authData == null) {
+            throw userUnauthorizedEx;
+        }
+        authService.endAllSessions(authData.username());
+    }
 
-    public static String generateToken() {
-        return UUID.randomUUID().toString();
+    /**
+     * @param listener called with the auth data of every session that ends, after it has been deleted
+     */
+    public void addLogoutListener(Consumer<AuthData> listener) {
+        authService.addSessionEndListener(listener);
     }
 }
@@ -1,15 +1,22 @@
 package dataaccess;
 
 import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
 import datamodel.AuthData;
 import datamodel.GameData;
+import datamodel.MoveRecord;
 import datamodel.UserData;
 import exception.RequestException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -71,6 +78,15 @@ class DataAccessTest {
         assertThrows(RequestException.class, () -> db.createUser(badUser));
     }
 
+    @ParameterizedTest
+    @ValueSource(classes = {SQLDataAccess.class, MemoryDataAccess.class})
+    void createUserTwice(Class<? extends DataAccess> dbClass) throws RequestException {
+        DataAccess db = getDataAccess(dbClass);
+
+        db.createUser(userExample);
+        assertThrows(RequestException.class, () -> db.createUser(userExample));
+    }
+
     @ParameterizedTest
     @ValueSource(classes = {SQLDataAccess.class, MemoryDataAccess.class})
     void getUser(Class<? extends DataAccess> dbClass) throws RequestException {
@@ -92,6 +108,17 @@ class DataAccessTest {
         assertNull(db.getUser(null));
     }
 
+    @ParameterizedTest
+    @ValueSource(classes = {SQLDataAccess.class, MemoryDataAccess.class})
+    void nextGameID(Class<? extends DataAccess> dbClass) throws RequestException {
+        DataAccess db = getDataAccess(dbClass);
+
+        int first = db.nextGameID();
+        int second = db.nextGameID();
+        assertTrue(first >= 1000);
+        assertTrue(second > first);
+    }
+
     @ParameterizedTest
     @ValueSource(classes = {SQLDataAccess.class, MemoryDataAccess.class})
     void createGame(Class<? extends DataAccess> dbClass) throws RequestException {
@@ -170,6 +197,152 @@ class DataAccessTest {
         assertNotEquals(otherGameExample, db.getGame(gameExample.gameID()));
     }
 
+    @ParameterizedTest
+    @ValueSource(classes = {SQLDataAccess.class, MemoryDataAccess.class})
+    void listGamesByState(Class<? extends DataAccess> dbClass) throws RequestException {
+        DataAccess db = getDataAccess(dbClass);
+
+        db.createGame(gameExample);
+        db.createGame(otherGameExample);
+        GameData started = new GameData(1, "bib", "bob", "game", new ChessGame(), GameData.GameState.IN_PROGRESS);
+        db.updateGame(1, started);
+        assertEquals(new ArrayList<>(List.of(started)), db.listGamesByState(GameData.GameState.IN_PROGRESS));
+        assertEquals(new ArrayList<>(List.of(otherGameExample)), db.listGamesByState(GameData.GameState.READY));
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {SQLDataAccess.class, MemoryDataAccess.class})
+    void listGamesForPlayer(Class<? extends DataAccess> dbClass) throws RequestException {
+        DataAccess db = getDataAccess(dbClass);
+
+        db.createGame(gameExample);
+        db.createGame(otherGameExample);
+        assertEquals(new ArrayList<>(List.of(otherGameExample)), db.listGamesForPlayer("bib"));
+        assertEquals(new ArrayList<>(), db.listGamesForPlayer("joe"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {SQLDataAccess.class, MemoryDataAccess.class})
+    void compareAndUpdateGame(Class<? extends DataAccess> dbClass) throws RequestException {
+        DataAccess db = getDataAccess(dbClass);
+
+        db.createGame(gameExample);
+        VersionedGame read = db.getVersionedGame(gameExample.gameID());
+        GameData joined = new GameData(1, "joe", null, "game", new ChessGame(), GameData.GameState.READY);
+        assertTrue(db.compareAndUpdateGame(read.version(), joined));
+        assertEquals(new VersionedGame(joined, read.version() + 1), db.getVersionedGame(1));
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {SQLDataAccess.class, MemoryDataAccess.class})
+    void compareAndUpdateGameFail(Class<? extends DataAccess> dbClass) throws RequestException {
+        DataAccess db = getDataAccess(dbClass);
+
+        db.createGame(gameExample);
+        VersionedGame read = db.getVersionedGame(gameExample.gameID());
+        GameData joinedWhite = new GameData(1, "joe", null, "game", new ChessGame(), GameData.GameState.READY);
+        GameData joinedBlack = new GameData(1, null, "bib", "game", new ChessGame(), GameData.GameState.READY);
+        assertTrue(db.compareAndUpdateGame(read.version(), joinedWhite));
+        assertFalse(db.compareAndUpdateGame(read.version(), joinedBlack));
+        assertEquals(joinedWhite, db.getGame(1));
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {SQLDataAccess.class, MemoryDataAccess.class})
+    void updateGameWithRetry(Class<? extends DataAccess> dbClass) throws RequestException {
+        DataAccess db = getDataAccess(dbClass);
+
+        db.createGame(gameExample);
+        GameData sneakyWrite = new GameData(1, "bib", null, "game", new ChessGame(), GameData.GameState.READY);
+        int[] attempts = {0};
+        GameData written = db.updateGame(1, current -> {
+            if (attempts[0]++ == 0) {
+                db.updateGame(1, sneakyWrite);
+            }
+            return new GameData(1, current.whiteUsername(), "joe", "game", current.game(), current.state());
+        });
+        assertEquals(2, attempts[0]);
+        assertEquals("bib", written.whiteUsername());
+        assertEquals(written, db.getGame(1));
+        assertNull(db.updateGame(-1, current -> current));
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {SQLDataAccess.class, MemoryDataAccess.class})
+    void createAndUpdateGames(Class<? extends DataAccess> dbClass) throws RequestException {
+        DataAccess db = getDataAccess(dbClass);
+
+        db.createGames(List.of(gameExample, otherGameExample));
+        assertEquals(2, db.listGames().size());
+        GameData joined = new GameData(1, "joe", null, "game", new ChessGame(), GameData.GameState.READY);
+        GameData renamed = new GameData(2, "bib", null, "yesyes", new ChessGame(), GameData.GameState.READY);
+        db.updateGames(List.of(joined, renamed));
+        assertEquals(joined, db.getGame(1));
+        assertEquals(renamed, db.getGame(2));
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {SQLDataAccess.class, MemoryDataAccess.class})
+    void appendMoves(Class<? extends DataAccess> dbClass) throws RequestException {
+        DataAccess db = getDataAccess(dbClass);
+
+        db.createGame(gameExample);
+        MoveRecord first = new MoveRecord(1, 1, new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        MoveRecord second = new MoveRecord(1, 2, new ChessMove(new ChessPosition(7, 5), new ChessPosition(5, 5), null));
+        db.appendMoves(List.of(first));
+        db.appendMoves(List.of(second));
+        assertEquals(List.of(first, second), db.getMoves(1));
+        assertEquals(List.of(), db.getMoves(2));
+    }
+
+    private GameData completeGame(DataAccess db, int gameID) throws Exception {
+        ChessGame game = new ChessGame();
+        List<MoveRecord> moves = List.of(
+                new MoveRecord(gameID, 1, new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null)),
+                new MoveRecord(gameID, 2, new ChessMove(new ChessPosition(7, 5), new ChessPosition(5, 5), null)));
+        for (MoveRecord move : moves) {
+            game.makeMove(move.move());
+        }
+        GameData complete = new GameData(gameID, "joe", "bib", "done", game, GameData.GameState.COMPLETE);
+        db.createGame(complete);
+        db.appendMoves(moves);
+        return complete;
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {SQLDataAccess.class, MemoryDataAccess.class})
+    void archiveCompletedGames(Class<? extends DataAccess> dbClass) throws Exception {
+        DataAccess db = getDataAccess(dbClass);
+
+        db.createGame(gameExample);
+        GameData complete = completeGame(db, 2);
+        List<MoveRecord> moves = db.getMoves(2);
+        assertEquals(List.of(), db.archiveCompletedGames(Instant.now().minusSeconds(60)));
+
+        assertEquals(List.of(2), db.archiveCompletedGames(Instant.now().plusSeconds(60)));
+        assertEquals(List.of(gameExample), db.listGames());
+        assertEquals(complete, db.getGame(2));
+        assertEquals(complete.game().getMoveCount(), db.getGame(2).game().getMoveCount());
+        assertEquals(moves, db.getMoves(2));
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {SQLDataAccess.class, MemoryDataAccess.class})
+    void updateArchivedGame(Class<? extends DataAccess> dbClass) throws Exception {
+        DataAccess db = getDataAccess(dbClass);
+
+        GameData complete = completeGame(db, 1);
+        db.archiveCompletedGames(Instant.now().plusSeconds(60));
+        VersionedGame archived = db.getVersionedGame(1);
+        assertEquals(DataAccess.ARCHIVED_VERSION, archived.version());
+
+        GameData left = new GameData(1, null, "bib", "done", complete.game(), GameData.GameState.COMPLETE);
+        assertTrue(db.compareAndUpdateGame(archived.version(), left));
+        assertFalse(db.compareAndUpdateGame(archived.version(), left));
+        assertEquals(List.of(left), db.listGames());
+        assertEquals(2, db.getMoves(1).size());
+    }
+
     @ParameterizedTest
     @ValueSource(classes = {SQLDataAccess.class, MemoryDataAccess.class})
     void createAuth(Class<? extends DataAccess> dbClass) throws RequestException {
@@ -207,6 +380,49 @@ class DataAccessTest {
         assertNull(db.getAuth("random-authtoken"));
     }
 
+    @ParameterizedTest
+    @ValueSource(classes = {SQLDataAccess.class, MemoryDataAccess.class})
+    void touchAndListAuths(Class<? extends DataAccess> dbClass) throws RequestException {
+        DataAccess db = getDataAccess(dbClass);
+
+        Instant issued = Instant.parse("2024-01-01T00:00:00Z");
+        Instant seen = issued.plusSeconds(30);
+        db.createAuth(new AuthSession(authExample, issued, issued));
+        db.createAuth(new AuthData("bib", "other-token"));
+        db.touchAuth(authExample.authToken(), seen);
+        assertEquals(List.of(new AuthSession(authExample, issued, seen)), db.listAuthsForUser("joe"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {SQLDataAccess.class, MemoryDataAccess.class})
+    void deleteExpiredAuths(Class<? extends DataAccess> dbClass) throws RequestException {
+        DataAccess db = getDataAccess(dbClass);
+
+        Instant old = Instant.now().minusSeconds(3600);
+        db.createAuth(new AuthSession(authExample, old, old));
+        db.createAuth(new AuthSession(new AuthData("joe", "old-token"), old, old));
+        db.createAuth(new AuthData("bib", "fresh-token"));
+        assertEquals(1, db.deleteExpiredAuths(Instant.now().minusSeconds(60), 1).size());
+        assertEquals(1, db.deleteExpiredAuths(Instant.now().minusSeconds(60), 10).size());
+        assertEquals(List.of(), db.listAuthsForUser("joe"));
+        assertNotNull(db.getAuth("fresh-token"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {SQLDataAccess.class, MemoryDataAccess.class})
+    void revokeToken(Class<? extends DataAccess> dbClass) throws RequestException {
+        DataAccess db = getDataAccess(dbClass);
+
+        Instant expired = Instant.now().minusSeconds(60);
+        Instant later = Instant.now().plusSeconds(3600).truncatedTo(ChronoUnit.MILLIS);
+        db.revokeToken("old-token", expired);
+        db.revokeToken("live-token", later);
+        db.deleteExpiredRevocations(Instant.now());
+        assertEquals(Map.of("live-token", later), db.listRevokedTokens());
+        db.clear();
+        assertEquals(Map.of(), db.listRevokedTokens());
+    }
+
     @ParameterizedTest
     @ValueSource(classes = {SQLDataAccess.class, MemoryDataAccess.class})
     void deleteAuth(Class<? extends DataAccess> dbClass) throws RequestException {
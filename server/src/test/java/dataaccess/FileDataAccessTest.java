@@ -0,0 +1,187 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import datamodel.*;
+import exception.RequestException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileDataAccessTest {
+
+    @TempDir
+    Path directory;
+
+    private final UserData userExample = new UserData("joe", "toomanysecrets", "j@j.com");
+    private final AuthData authExample = new AuthData("joe", "my-authtoken");
+    private final MoveRecord moveExample = new MoveRecord(1000, 1,
+            new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+
+    private GameData fillDatabase(FileDataAccess db) throws Exception {
+        db.createUser(userExample);
+        db.createAuth(authExample);
+        db.createAuth(new AuthData("joe", "gone"));
+        db.deleteAuth(new AuthData("joe", "gone"));
+        int gameID = db.nextGameID();
+        db.createGame(new GameData(gameID, null, null, "game", new ChessGame(), GameData.GameState.READY));
+        ChessGame game = new ChessGame();
+        game.makeMove(moveExample.move());
+        GameData played = new GameData(gameID, "joe", null, "game", game, GameData.GameState.READY);
+        db.updateGame(gameID, played);
+        db.appendMoves(List.of(moveExample));
+        return played;
+    }
+
+    private void assertRecovered(FileDataAccess db, GameData played) throws RequestException {
+        assertEquals(userExample, db.getUser("joe"));
+        assertEquals(authExample, db.getAuth("my-authtoken"));
+        assertNull(db.getAuth("gone"));
+        assertEquals(new VersionedGame(played, 1), db.getVersionedGame(played.gameID()));
+        assertEquals(List.of(moveExample), db.getMoves(played.gameID()));
+        assertTrue(db.nextGameID() > played.gameID());
+    }
+
+    @Test
+    void recoversFromLog() throws Exception {
+        GameData played;
+        try (FileDataAccess db = new FileDataAccess(directory)) {
+            played = fillDatabase(db);
+        }
+        try (FileDataAccess db = new FileDataAccess(directory)) {
+            assertRecovered(db, played);
+        }
+    }
+
+    @Test
+    void appliesNoneOfAFailedBatch() throws Exception {
+        GameData first = new GameData(1, null, null, "first", new ChessGame(), GameData.GameState.READY);
+        GameData second = new GameData(2, null, null, "second", new ChessGame(), GameData.GameState.READY);
+        try (FileDataAccess db = new FileDataAccess(directory)) {
+            //The second game's id is already taken by the first
+            assertThrows(RequestException.class, () -> db.createGames(List.of(first, second,
+                    new GameData(1, null, null, "again", new ChessGame(), GameData.GameState.READY))));
+            assertEquals(List.of(), db.listGames());
+        }
+        try (FileDataAccess db = new FileDataAccess(directory)) {
+            assertEquals(List.of(), db.listGames());
+        }
+    }
+
+    @Test
+    void refusesCallsOnceTheLogFails() throws Exception {
+        FileDataAccess db = new FileDataAccess(directory);
+        db.createUser(userExample);
+        //A closed log fails every append
+        db.close();
+        assertThrows(RequestException.class, () -> db.createUser(new UserData("bib", "pass", "b@b.com")));
+        assertThrows(RequestException.class, () -> db.getUser("bib"));
+        assertThrows(RequestException.class, () -> db.getUser("joe"));
+    }
+
+    @Test
+    void recoversFromSnapshotAndLog() throws Exception {
+        GameData played;
+        try (FileDataAccess db = new FileDataAccess(directory)) {
+            played = fillDatabase(db);
+            db.snapshot();
+            db.createUser(new UserData("bib", "pass", "b@b.com"));
+        }
+        try (FileDataAccess db = new FileDataAccess(directory)) {
+            assertRecovered(db, played);
+            assertNotNull(db.getUser("bib"));
+        }
+    }
+
+    @Test
+    void skipsLogAlreadyInSnapshot() throws Exception {
+        GameData played;
+        byte[] oldLog;
+        try (FileDataAccess db = new FileDataAccess(directory)) {
+            db.snapshot();
+            played = fillDatabase(db);
+            oldLog = Files.readAllBytes(directory.resolve("wal.log"));
+            db.snapshot();
+        }
+        //As if the server died after writing the snapshot but before emptying the log
+        Files.write(directory.resolve("wal.log"), oldLog);
+        try (FileDataAccess db = new FileDataAccess(directory)) {
+            assertRecovered(db, played);
+            db.createUser(new UserData("bib", "pass", "b@b.com"));
+        }
+        try (FileDataAccess db = new FileDataAccess(directory)) {
+            assertRecovered(db, played);
+            assertNotNull(db.getUser("bib"));
+        }
+    }
+
+    @Test
+    void ignoresTornRecord() throws Exception {
+        try (FileDataAccess db = new FileDataAccess(directory)) {
+            db.createUser(userExample);
+        }
+        Files.write(directory.resolve("wal.log"), new byte[]{0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+        try (FileDataAccess db = new FileDataAccess(directory)) {
+            assertEquals(userExample, db.getUser("joe"));
+            db.createUser(new UserData("bib", "pass", "b@b.com"));
+        }
+        try (FileDataAccess db = new FileDataAccess(directory)) {
+            assertNotNull(db.getUser("bib"));
+        }
+    }
+
+    @Test
+    void clearIsDurable() throws IOException, RequestException {
+        try (FileDataAccess db = new FileDataAccess(directory, 64)) {
+            db.createUser(userExample);
+            db.clear();
+        }
+        try (FileDataAccess db = new FileDataAccess(directory)) {
+            assertNull(db.getUser("joe"));
+        }
+    }
+
+    @Test
+    void revocationsAreDurable() throws Exception {
+        Instant expiresAt = Instant.ofEpochMilli(Instant.now().plusSeconds(3600).toEpochMilli());
+        try (FileDataAccess db = new FileDataAccess(directory)) {
+            db.revokeToken("logged-out", expiresAt);
+            db.snapshot();
+            db.revokeToken("expired", Instant.now().minusSeconds(60));
+            db.deleteExpiredRevocations(Instant.now());
+        }
+        try (FileDataAccess db = new FileDataAccess(directory)) {
+            assertEquals(Map.of("logged-out", expiresAt), db.listRevokedTokens());
+        }
+    }
+
+    @Test
+    void archiveIsDurable() throws Exception {
+        GameData complete;
+        try (FileDataAccess db = new FileDataAccess(directory)) {
+            GameData played = fillDatabase(db);
+            complete = new GameData(played.gameID(), "joe", null, "game", played.game(), GameData.GameState.COMPLETE);
+            db.updateGame(played.gameID(), complete);
+            assertEquals(List.of(played.gameID()), db.archiveCompletedGames(Instant.now().plusSeconds(60)));
+        }
+        try (FileDataAccess db = new FileDataAccess(directory)) {
+            assertEquals(List.of(), db.listGames());
+            assertEquals(complete, db.getGame(complete.gameID()));
+            db.snapshot();
+        }
+        try (FileDataAccess db = new FileDataAccess(directory)) {
+            assertEquals(complete, db.getGame(complete.gameID()));
+            assertEquals(List.of(moveExample), db.getMoves(complete.gameID()));
+        }
+    }
+}
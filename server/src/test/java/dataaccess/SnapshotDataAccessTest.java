@@ -0,0 +1,104 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import datamodel.GameData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotDataAccessTest {
+
+    @TempDir
+    Path directory;
+
+    private final MemoryDataAccess memory = new MemoryDataAccess();
+    private final GameData gameExample = new GameData(1, null, null, "game",
+            new ChessGame(), GameData.GameState.READY);
+    private final GameData longNameExample = new GameData(2, "bib", null, "n".repeat(100),
+            new ChessGame(), GameData.GameState.READY);
+
+    private List<GameData> sorted(List<GameData> games) {
+        return games.stream().sorted(Comparator.comparingInt(GameData::gameID)).toList();
+    }
+
+    @Test
+    void servesGamesFromSnapshot() throws Exception {
+        AtomicInteger listed = new AtomicInteger();
+        MemoryDataAccess counting = new MemoryDataAccess() {
+            @Override
+            public ArrayList<GameData> listGames() {
+                listed.incrementAndGet();
+                return super.listGames();
+            }
+        };
+        counting.createGames(List.of(gameExample, longNameExample));
+        Path file = directory.resolve("games.snapshot");
+        try (SnapshotDataAccess db = new SnapshotDataAccess(counting, file)) {
+            assertEquals(List.of(gameExample, longNameExample), sorted(db.listGames()));
+        }
+        listed.set(0);
+        try (SnapshotDataAccess db = new SnapshotDataAccess(counting, file)) {
+            assertEquals(gameExample, db.getGame(1));
+            assertEquals(List.of(gameExample, longNameExample), sorted(db.listGames()));
+        }
+        //Nothing changed, so the games came from the snapshot rather than the database
+        assertEquals(0, listed.get());
+    }
+
+    @Test
+    void rebuildsAfterWritesBehindItsBack() throws Exception {
+        memory.createGames(List.of(gameExample, longNameExample));
+        Path file = directory.resolve("games.snapshot");
+        try (SnapshotDataAccess db = new SnapshotDataAccess(memory, file)) {
+            assertEquals(List.of(gameExample, longNameExample), sorted(db.listGames()));
+        }
+        //As if a server without the snapshot had written the game
+        GameData joined = new GameData(1, "joe", null, "game", new ChessGame(), GameData.GameState.READY);
+        memory.updateGame(1, joined);
+        try (SnapshotDataAccess db = new SnapshotDataAccess(memory, file)) {
+            assertEquals(joined, db.getGame(1));
+            assertEquals(List.of(joined, longNameExample), sorted(db.listGames()));
+        }
+    }
+
+    @Test
+    void seesWritesAfterSnapshot() throws Exception {
+        memory.createGame(gameExample);
+        Path file = directory.resolve("games.snapshot");
+        ChessGame played = new ChessGame();
+        played.makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        GameData update = new GameData(1, "joe", null, "game", played, GameData.GameState.READY);
+        try (SnapshotDataAccess db = new SnapshotDataAccess(memory, file)) {
+            db.updateGame(1, update);
+            db.createGame(longNameExample);
+            assertEquals(update, db.getGame(1));
+            assertEquals(List.of(update, longNameExample), sorted(db.listGames()));
+        }
+        try (SnapshotDataAccess db = new SnapshotDataAccess(memory, file)) {
+            assertEquals(update, db.getGame(1));
+            assertEquals(played.getTeamTurn(), db.getGame(1).game().getTeamTurn());
+            assertEquals(longNameExample, db.getGame(2));
+        }
+    }
+
+    @Test
+    void rebuildsAfterUncleanShutdown() throws Exception {
+        memory.createGame(gameExample);
+        Path file = directory.resolve("games.snapshot");
+        SnapshotDataAccess crashed = new SnapshotDataAccess(memory, file);
+        crashed.createGame(longNameExample);
+        //Never closed, so the file is still marked as in use
+        try (SnapshotDataAccess db = new SnapshotDataAccess(memory, file)) {
+            assertEquals(List.of(gameExample, longNameExample), sorted(db.listGames()));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package server;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandDispatcherTest {
+
+    private final CommandDispatcher dispatcher = new CommandDispatcher(true);
+    private final Session session = (Session) Proxy.newProxyInstance(Session.class.getClassLoader(),
+            new Class<?>[]{Session.class}, (proxy, method, args) -> switch (method.getName()) {
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                default -> null;
+            });
+
+    @AfterEach
+    void shutdown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void reportsFailedCommands() throws Exception {
+        LinkedBlockingQueue<RuntimeException> failures = new LinkedBlockingQueue<>();
+        dispatcher.setErrorHandler((failedSession, ex) -> {
+            assertSame(session, failedSession);
+            failures.add(ex);
+        });
+        CountDownLatch ranAfter = new CountDownLatch(1);
+        dispatcher.dispatch(session, () -> {
+            throw new IllegalStateException("broken");
+        });
+        dispatcher.dispatch(session, ranAfter::countDown);
+
+        RuntimeException failure = failures.poll(5, TimeUnit.SECONDS);
+        assertNotNull(failure);
+        assertEquals("broken", failure.getMessage());
+        //The session's later commands still run
+        assertTrue(ranAfter.await(5, TimeUnit.SECONDS));
+    }
+}
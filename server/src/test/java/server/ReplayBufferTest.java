@@ -0,0 +1,64 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+import websocket.messages.Notification;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplayBufferTest {
+
+    private void addMessages(ReplayBuffer buffer, int count) {
+        for (int i = 0; i < count; i++) {
+            long sequence = buffer.nextSequence();
+            OutgoingMessage message = new OutgoingMessage(new Notification("message " + sequence));
+            buffer.add(new ReplayBuffer.Entry(sequence, null, message, message));
+        }
+    }
+
+    @Test
+    void sinceReturnsMissedMessages() {
+        ReplayBuffer buffer = new ReplayBuffer(8);
+        addMessages(buffer, 5);
+        List<ReplayBuffer.Entry> missed = buffer.since(2);
+        assertNotNull(missed);
+        assertEquals(3, missed.size());
+        assertEquals(3, missed.getFirst().sequence());
+        assertEquals(5, missed.getLast().sequence());
+    }
+
+    @Test
+    void sinceUpToDate() {
+        ReplayBuffer buffer = new ReplayBuffer(8);
+        addMessages(buffer, 5);
+        assertEquals(List.of(), buffer.since(5));
+    }
+
+    @Test
+    void sinceTooOld() {
+        ReplayBuffer buffer = new ReplayBuffer(8);
+        addMessages(buffer, 20);
+        assertNull(buffer.since(3));
+        assertEquals(8, buffer.since(12).size());
+    }
+
+    @Test
+    void carriesOnFromLastSequence() {
+        ReplayBuffer buffer = new ReplayBuffer(8, 1L << 32);
+        addMessages(buffer, 2);
+        assertEquals((1L << 32) + 2, buffer.lastSequence());
+        assertEquals(1, buffer.since((1L << 32) + 1).size());
+        assertNull(buffer.since(3));
+        //Just below where the buffer started, from the buffer it replaced
+        assertNull(buffer.since((1L << 32) - 1));
+        assertEquals(2, buffer.since(1L << 32).size());
+    }
+
+    @Test
+    void sinceFromTheFuture() {
+        ReplayBuffer buffer = new ReplayBuffer(8);
+        addMessages(buffer, 2);
+        assertNull(buffer.since(10));
+    }
+}
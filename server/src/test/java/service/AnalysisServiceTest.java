@@ -0,0 +1,188 @@
+package service;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import dataaccess.DataAccess;
+import dataaccess.MemoryDataAccess;
+import datamodel.AuthData;
+import datamodel.GameData;
+import datamodel.MoveAnalysis;
+import datamodel.MoveRecord;
+import engine.SearchLimits;
+import exception.RequestException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import request.AnalysisRequest;
+import response.AnalysisResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnalysisServiceTest {
+
+    private final DataAccess db = new MemoryDataAccess();
+    private final AuthService authService = new AuthService(db);
+    private AnalysisService analysisService = new AnalysisService(db, authService, 1, SearchLimits.depth(3), 4, 1000);
+    private final AuthData auth = new AuthData("joe", "token");
+
+    //Fool's mate: 1. f3 e5 2. g4 Qh4#
+    private final List<ChessMove> foolsMate = List.of(move(2, 6, 3, 6), move(7, 5, 5, 5), move(2, 7, 4, 7),
+            move(8, 4, 4, 8));
+
+    private static ChessMove move(int fromRow, int fromCol, int toRow, int toCol) {
+        return new ChessMove(new ChessPosition(fromRow, fromCol), new ChessPosition(toRow, toCol), null);
+    }
+
+    private int createGame(GameData.GameState state, List<ChessMove> moves) throws Exception {
+        int gameID = db.nextGameID();
+        ChessGame game = new ChessGame();
+        ArrayList<MoveRecord> records = new ArrayList<>();
+        for (ChessMove move : moves) {
+            game.makeMove(move);
+            records.add(new MoveRecord(gameID, records.size() + 1, move));
+        }
+        db.createGame(new GameData(gameID, "joe", "sue", "game", game, state));
+        db.appendMoves(records);
+        return gameID;
+    }
+
+    private AnalysisResponse waitForAnalysis(int gameID) throws Exception {
+        for (int i = 0; i < 500; i++) {
+            AnalysisResponse response = analysisService.getAnalysis(new AnalysisRequest(gameID, auth.authToken()));
+            if (response.state() == AnalysisResponse.State.DONE || response.state() == AnalysisResponse.State.FAILED) {
+                return response;
+            }
+            Thread.sleep(20);
+        }
+        fail("analysis didn't finish");
+        return null;
+    }
+
+    @AfterEach
+    void shutdown() {
+        analysisService.shutdown();
+    }
+
+    @Test
+    void analysesLongGames() throws Exception {
+        db.createAuth(auth);
+        int gameID = db.nextGameID();
+        //Knights out and back, longer than a position's move history
+        List<ChessMove> shuffle = List.of(move(1, 7, 3, 6), move(8, 7, 6, 6), move(3, 6, 1, 7), move(6, 6, 8, 7));
+        ArrayList<MoveRecord> records = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            records.add(new MoveRecord(gameID, i + 1, shuffle.get(i % shuffle.size())));
+        }
+        db.createGame(new GameData(gameID, "joe", "sue", "game", new ChessGame(), GameData.GameState.COMPLETE));
+        db.appendMoves(records);
+
+        analysisService.requestAnalysis(new AnalysisRequest(gameID, auth.authToken()));
+        AnalysisResponse done = waitForAnalysis(gameID);
+        assertEquals(AnalysisResponse.State.DONE, done.state());
+        assertEquals(1200, done.moves().size());
+    }
+
+    @Test
+    void findsBlunder() throws Exception {
+        db.createAuth(auth);
+        int gameID = createGame(GameData.GameState.COMPLETE, foolsMate);
+        List<AnalysisResponse> progress = new ArrayList<>();
+        analysisService.addProgressListener(response -> {
+            synchronized (progress) {
+                progress.add(response);
+            }
+        });
+        List<Integer> everyOther = new ArrayList<>();
+        analysisService.addProgressListener(response -> {
+            synchronized (everyOther) {
+                everyOther.add(response.analysedMoves());
+            }
+        }, 2);
+        AnalysisResponse queued = analysisService.requestAnalysis(new AnalysisRequest(gameID, auth.authToken()));
+        assertEquals(4, queued.totalMoves());
+
+        AnalysisResponse done = waitForAnalysis(gameID);
+        assertEquals(AnalysisResponse.State.DONE, done.state());
+        assertEquals(4, done.analysedMoves());
+        MoveAnalysis blunder = done.moves().get(2);
+        assertEquals(3, blunder.moveNumber());
+        assertTrue(blunder.blunder());
+        assertNotNull(blunder.bestMove());
+        //Black is mating after 2. g4
+        assertTrue(blunder.scoreAfter() < -20000);
+        //The mating move is what the engine would play
+        assertNull(done.moves().get(3).bestMove());
+        assertFalse(done.moves().get(3).blunder());
+        //The listeners hear about the end just after the state changes
+        for (int i = 0; i < 50; i++) {
+            synchronized (everyOther) {
+                if (everyOther.size() == 4) {
+                    break;
+                }
+            }
+            Thread.sleep(20);
+        }
+        synchronized (progress) {
+            assertEquals(AnalysisResponse.State.DONE, progress.getLast().state());
+            //Started, after every move, finished
+            assertEquals(6, progress.size());
+        }
+        synchronized (everyOther) {
+            assertEquals(List.of(0, 2, 4, 4), everyOther);
+        }
+
+        //Requesting it again doesn't start over
+        assertEquals(done, analysisService.requestAnalysis(new AnalysisRequest(gameID, auth.authToken())));
+    }
+
+    @Test
+    void reusesPositionsFromOtherGames() throws Exception {
+        db.createAuth(auth);
+        int first = createGame(GameData.GameState.COMPLETE, foolsMate);
+        int second = createGame(GameData.GameState.COMPLETE, foolsMate);
+        analysisService.requestAnalysis(new AnalysisRequest(first, auth.authToken()));
+        AnalysisResponse firstDone = waitForAnalysis(first);
+        analysisService.requestAnalysis(new AnalysisRequest(second, auth.authToken()));
+        assertEquals(firstDone.moves(), waitForAnalysis(second).moves());
+    }
+
+    @Test
+    void rejectsBadRequests() throws Exception {
+        db.createAuth(auth);
+        int unfinished = createGame(GameData.GameState.IN_PROGRESS, foolsMate.subList(0, 2));
+        RequestException ex = assertThrows(RequestException.class,
+                () -> analysisService.requestAnalysis(new AnalysisRequest(unfinished, auth.authToken())));
+        assertEquals(400, ex.toHttpStatusCode());
+        ex = assertThrows(RequestException.class,
+                () -> analysisService.requestAnalysis(new AnalysisRequest(unfinished, "bad token")));
+        assertEquals(401, ex.toHttpStatusCode());
+        ex = assertThrows(RequestException.class,
+                () -> analysisService.getAnalysis(new AnalysisRequest(unfinished, auth.authToken())));
+        assertEquals(400, ex.toHttpStatusCode());
+        //Finished before moves were recorded
+        int unrecorded = createGame(GameData.GameState.COMPLETE, List.of());
+        ex = assertThrows(RequestException.class,
+                () -> analysisService.requestAnalysis(new AnalysisRequest(unrecorded, auth.authToken())));
+        assertEquals(400, ex.toHttpStatusCode());
+    }
+
+    @Test
+    void fullQueueIsBusy() throws Exception {
+        analysisService.shutdown();
+        analysisService = new AnalysisService(db, authService, 1, SearchLimits.millis(500), 1, 1000);
+        db.createAuth(auth);
+        int[] games = new int[3];
+        for (int i = 0; i < games.length; i++) {
+            games[i] = createGame(GameData.GameState.COMPLETE, foolsMate.subList(0, 3));
+        }
+        RequestException ex = assertThrows(RequestException.class, () -> {
+            for (int gameID : games) {
+                analysisService.requestAnalysis(new AnalysisRequest(gameID, auth.authToken()));
+            }
+        });
+        assertEquals(503, ex.toHttpStatusCode());
+    }
+}
@@ -0,0 +1,100 @@
+package service;
+
+import dataaccess.AuthSession;
+import dataaccess.DataAccess;
+import dataaccess.MemoryDataAccess;
+import datamodel.AuthData;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuthServiceTest {
+
+    private final DataAccess db = new MemoryDataAccess();
+    private final AuthService authService = new AuthService(db, Duration.ofHours(1), 2);
+
+    private AuthData createSessionLastSeen(String authToken, Duration ago) throws Exception {
+        AuthData authData = new AuthData("joe", authToken);
+        Instant lastSeen = Instant.now().minus(ago);
+        db.createAuth(new AuthSession(authData, lastSeen, lastSeen));
+        return authData;
+    }
+
+    @Test
+    void expiredSessionIsRejected() throws Exception {
+        AuthData expired = createSessionLastSeen("expired", Duration.ofHours(2));
+        AuthData idle = createSessionLastSeen("idle", Duration.ofMinutes(50));
+        assertNull(authService.authenticate(expired.authToken()));
+        assertEquals(idle, authService.authenticate(idle.authToken()));
+        assertNull(authService.authenticate(null));
+    }
+
+    @Test
+    void useSlidesExpiry() throws Exception {
+        AuthData idle = createSessionLastSeen("idle", Duration.ofMinutes(50));
+        Instant before = db.getAuthSession(idle.authToken()).lastSeen();
+        authService.authenticate(idle.authToken());
+        assertTrue(db.getAuthSession(idle.authToken()).lastSeen().isAfter(before));
+    }
+
+    @Test
+    void reaperDeletesExpiredSessions() throws Exception {
+        List<AuthData> ended = new ArrayList<>();
+        authService.addSessionEndListener(ended::add);
+        for (int i = 0; i < AuthService.REAP_BATCH_SIZE + 1; i++) {
+            createSessionLastSeen("expired" + i, Duration.ofHours(2));
+        }
+        AuthData active = createSessionLastSeen("active", Duration.ZERO);
+        assertEquals(AuthService.REAP_BATCH_SIZE + 1, authService.reapExpiredSessions());
+        assertEquals(AuthService.REAP_BATCH_SIZE + 1, ended.size());
+        assertEquals(List.of(active), db.listAuthsForUser("joe").stream().map(AuthSession::authData).toList());
+    }
+
+    @Test
+    void sessionCapEndsLeastRecentlyUsed() throws Exception {
+        AuthData oldest = createSessionLastSeen("oldest", Duration.ofMinutes(30));
+        AuthData recent = createSessionLastSeen("recent", Duration.ofMinutes(1));
+        AuthData newest = authService.createSession("joe");
+        assertNull(db.getAuth(oldest.authToken()));
+        assertEquals(recent, db.getAuth(recent.authToken()));
+        assertEquals(newest, db.getAuth(newest.authToken()));
+    }
+
+    @Test
+    void signedTokensSkipStorage() throws Exception {
+        AuthService signed = new AuthService(db, Duration.ofHours(1), 0, TokenSigner.withRandomKey());
+        AuthData authData = signed.createSession("joe");
+        assertTrue(TokenSigner.isSigned(authData.authToken()));
+        assertEquals(authData, db.getAuth(authData.authToken()));
+
+        //Still valid with the row gone, since it's checked in memory
+        db.deleteAuth(authData);
+        assertEquals(authData, signed.authenticate(authData.authToken()));
+        signed.endSession(authData);
+        assertNull(signed.authenticate(authData.authToken()));
+    }
+
+    @Test
+    void revokedSignedTokensStayRevoked() throws Exception {
+        TokenSigner signer = TokenSigner.withRandomKey();
+        AuthService signed = new AuthService(db, Duration.ofHours(1), 0, signer);
+        AuthData loggedOut = signed.createSession("joe");
+        AuthData cleared = signed.createSession("bib");
+        signed.endSession(loggedOut);
+
+        //As after a restart with the same key
+        AuthService restarted = new AuthService(db, Duration.ofHours(1), 0, signer);
+        assertNull(restarted.authenticate(loggedOut.authToken()));
+        assertEquals(cleared, restarted.authenticate(cleared.authToken()));
+
+        restarted.clear();
+        assertNull(restarted.authenticate(cleared.authToken()));
+        assertNull(restarted.authenticate(loggedOut.authToken()));
+        assertNull(new AuthService(db, Duration.ofHours(1), 0, signer).authenticate(cleared.authToken()));
+    }
+}
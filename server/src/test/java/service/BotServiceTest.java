@@ -0,0 +1,106 @@
+package service;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import datamodel.BotLevel;
+import datamodel.GameData;
+import engine.OpeningBook;
+import engine.OpeningBookBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BotServiceTest {
+
+    private record PlayedMove(int gameID, ChessGame.TeamColor team, String username, ChessMove move,
+                              int moveCount) {}
+
+    private final BotService botService = new BotService(2);
+    private final LinkedBlockingQueue<PlayedMove> played = new LinkedBlockingQueue<>();
+
+    @BeforeEach
+    void setup() {
+        botService.setMoveSink((gameID, team, username, move, moveCount) ->
+                played.add(new PlayedMove(gameID, team, username, move, moveCount)));
+    }
+
+    @AfterEach
+    void shutdown() {
+        botService.shutdown();
+    }
+
+    @Test
+    void playsOnItsTurn() throws Exception {
+        ChessGame game = new ChessGame();
+        GameData gameData = new GameData(1, BotLevel.EASY.username(), "joe", "game", game,
+                GameData.GameState.IN_PROGRESS);
+        botService.gameUpdated(gameData);
+        //Asking again while it thinks doesn't queue a second search
+        botService.gameUpdated(gameData);
+
+        PlayedMove move = played.poll(10, TimeUnit.SECONDS);
+        assertNotNull(move);
+        assertEquals(1, move.gameID());
+        assertEquals(ChessGame.TeamColor.WHITE, move.team());
+        assertEquals("bot:easy", move.username());
+        assertEquals(0, move.moveCount());
+        assertTrue(game.validMoves(move.move().getStartPosition()).contains(move.move()));
+        assertNull(played.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void thinksAgainOnceTheMoveIsFinished() throws Exception {
+        GameData gameData = new GameData(1, BotLevel.EASY.username(), "joe", "game", new ChessGame(),
+                GameData.GameState.IN_PROGRESS);
+        botService.gameUpdated(gameData);
+        assertNotNull(played.poll(10, TimeUnit.SECONDS));
+
+        //Until the move has been played or dropped, the game still counts as thinking
+        botService.gameUpdated(gameData);
+        assertNull(played.poll(200, TimeUnit.MILLISECONDS));
+
+        //Dropped, so it's still the bot's turn
+        botService.moveFinished(1, gameData);
+        assertNotNull(played.poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void waitsForItsTurn() throws Exception {
+        //The human's turn
+        botService.gameUpdated(new GameData(1, "joe", BotLevel.MEDIUM.username(), "game", new ChessGame(),
+                GameData.GameState.IN_PROGRESS));
+        //Nobody has joined yet
+        botService.gameUpdated(new GameData(2, BotLevel.MEDIUM.username(), null, "game", new ChessGame(),
+                GameData.GameState.READY));
+        assertNull(played.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void playsFromTheBook(@TempDir Path directory) throws Exception {
+        OpeningBookBuilder builder = new OpeningBookBuilder(2);
+        builder.addPgn(new StringReader("1. a3 a6 *"));
+        Path path = directory.resolve("test.book");
+        builder.write(path, 1);
+        try (OpeningBook book = OpeningBook.open(path)) {
+            BotService bookBot = new BotService(1, book);
+            bookBot.setMoveSink((gameID, team, username, move, moveCount) ->
+                    played.add(new PlayedMove(gameID, team, username, move, moveCount)));
+            bookBot.gameUpdated(new GameData(1, BotLevel.HARD.username(), "joe", "game", new ChessGame(),
+                    GameData.GameState.IN_PROGRESS));
+            PlayedMove move = played.poll(10, TimeUnit.SECONDS);
+            bookBot.shutdown();
+            assertNotNull(move);
+            //Nothing would choose this without the book
+            assertEquals(new ChessMove(new ChessPosition(2, 1), new ChessPosition(3, 1), null), move.move());
+        }
+    }
+}
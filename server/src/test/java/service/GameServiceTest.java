@@ -59,6 +59,21 @@ class GameServiceTest {
         assertThrows(RequestException.class, () -> gameService.createGame(createGameRequest));
     }
 
+    @Test
+    void createBotGameSuccessful() throws RequestException {
+        LoginResponse authData = userService.register(goodUser);
+        CreateBotGameRequest request = new CreateBotGameRequest("bot_game", BotLevel.EASY,
+                ChessGame.TeamColor.BLACK, authData.authToken());
+        CreateGameResponse response = gameService.createBotGame(request);
+        gameService.joinGame(new JoinGameRequest(ChessGame.TeamColor.WHITE, response.gameID(), authData.authToken()));
+        var newGame = db.getGame(response.gameID());
+        assertEquals("bot:easy", newGame.blackUsername());
+        assertEquals(goodUser.username(), newGame.whiteUsername());
+        assertEquals(GameData.GameState.IN_PROGRESS, newGame.state());
+        assertThrows(RequestException.class, () -> gameService.joinGame(
+                new JoinGameRequest(ChessGame.TeamColor.BLACK, response.gameID(), authData.authToken())));
+    }
+
     @Test
     void joinGameSuccess() throws RequestException {
         LoginResponse authData = userService.register(goodUser);
@@ -0,0 +1,38 @@
+package service;
+
+import exception.RequestException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHasherTest {
+
+    private final PasswordHasher hasher = new PasswordHasher(1, 4, 4, 10_000);
+
+    @AfterEach
+    void shutdown() {
+        hasher.shutdown();
+    }
+
+    @Test
+    void hashAndCheck() throws RequestException {
+        String hashed = hasher.hash("toomanysecrets");
+        assertNotEquals("toomanysecrets", hashed);
+        assertTrue(hasher.check("toomanysecrets", hashed));
+        assertFalse(hasher.check("toofewsecrets", hashed));
+        assertEquals(3, hasher.stats().hashes());
+    }
+
+    @Test
+    void timeoutIsServiceUnavailable() {
+        PasswordHasher slowHasher = new PasswordHasher(1, 4, 14, 1);
+        try {
+            RequestException ex = assertThrows(RequestException.class, () -> slowHasher.hash("toomanysecrets"));
+            assertEquals(503, ex.toHttpStatusCode());
+            assertEquals(1, slowHasher.stats().rejected());
+        } finally {
+            slowHasher.shutdown();
+        }
+    }
+}
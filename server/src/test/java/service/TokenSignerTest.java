@@ -0,0 +1,54 @@
+package service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenSignerTest {
+
+    private final Instant now = Instant.now();
+    private final Instant later = now.plus(Duration.ofHours(1));
+
+    @Test
+    void signAndVerify() {
+        TokenSigner signer = TokenSigner.withRandomKey();
+        String token = signer.sign("joe.bib", later);
+        assertTrue(TokenSigner.isSigned(token));
+        assertEquals(new TokenSigner.Claims("joe.bib", Instant.ofEpochMilli(later.toEpochMilli()), "k0"),
+                signer.verify(token, now));
+        assertNotEquals(token, signer.sign("joe.bib", later));
+        assertNull(signer.verify(token, later));
+    }
+
+    @Test
+    void rejectsTamperedTokens() {
+        TokenSigner signer = TokenSigner.withRandomKey();
+        String token = signer.sign("joe", later);
+        String[] parts = token.split("\\.");
+        String otherUser = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("bib".getBytes(StandardCharsets.UTF_8));
+        assertNull(signer.verify(token.replace(parts[2], otherUser), now));
+        assertNull(signer.verify(token.substring(0, token.length() - 2), now));
+        assertNull(TokenSigner.withRandomKey().verify(token, now));
+        assertNull(signer.verify("not-a-token", now));
+    }
+
+    @Test
+    void rotatesKeys() {
+        TokenSigner signer = new TokenSigner("old", "old-secret".getBytes(StandardCharsets.UTF_8));
+        String oldToken = signer.sign("joe", later);
+        signer.addKey("new", "new-secret".getBytes(StandardCharsets.UTF_8));
+        signer.useKey("new");
+        String newToken = signer.sign("joe", later);
+        assertEquals("new", signer.verify(newToken, now).keyId());
+        assertNotNull(signer.verify(oldToken, now));
+        signer.removeKey("old");
+        assertNull(signer.verify(oldToken, now));
+        assertNotNull(signer.verify(newToken, now));
+    }
+}
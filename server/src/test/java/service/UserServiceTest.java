@@ -7,6 +7,9 @@ import org.junit.jupiter.api.Test;
 import response.*;
 import request.*;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class UserServiceTest {
@@ -55,6 +58,12 @@ class UserServiceTest {
         assertThrows(RequestException.class, () -> userService.register(goodUser));
     }
 
+    @Test
+    void registerBotName() {
+        var botUser = new UserData(BotLevel.HARD.username(), "toomanysecrets", "j@j.com");
+        assertThrows(RequestException.class, () -> userService.register(botUser));
+    }
+
     @Test
     void loginSuccess() throws RequestException {
         LoginResponse authData = userService.register(goodUser);
@@ -90,6 +99,24 @@ class UserServiceTest {
         assertThrows(RequestException.class, () -> userService.logout(logoutRequest));
     }
 
+    @Test
+    void logoutNotifiesListeners() throws RequestException {
+        LoginResponse loginResult = userService.register(goodUser);
+        List<AuthData> loggedOut = new ArrayList<>();
+        userService.addLogoutListener(loggedOut::add);
+        userService.logout(new LogoutRequest(loginResult.authToken()));
+        assertEquals(List.of(new AuthData(goodUser.username(), loginResult.authToken())), loggedOut);
+    }
+
+    @Test
+    void logoutAll() throws RequestException {
+        LoginResponse first = userService.register(goodUser);
+        LoginResponse second = userService.login(new LoginRequest(goodUser.username(), goodUser.password()));
+        userService.logoutAll(new LogoutRequest(second.authToken()));
+        assertNull(db.getAuth(first.authToken()));
+        assertNull(db.getAuth(second.authToken()));
+    }
+
     @Test
     void logoutWrongToken() throws RequestException {
         LoginResponse loginResult = userService.register(goodUser);
@@ -25,6 +25,10 @@ public class ChessGame {
     private boolean canEnPassant = false;
     private ChessPosition movedTwice; //Holds the position of a pawn that just moved twice
 
+    private int moveCount = 0;
+
+    public static final int PACKED_SIZE = 38;
+
     public ChessGame() {
         currentTurn = TeamColor.WHITE;
         board = new ChessBoard();
@@ -210,6 +214,126 @@ public class ChessGame {
         }
 
         setTeamTurn((currentTurn == TeamColor.WHITE ? TeamColor.BLACK : TeamColor.WHITE));
+        moveCount++;
+    }
+
+    /**
+     * @return How many moves have been made in this game so far
+     */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Determines if a team still has the right to castle on a side. The right is only
+     * held while the king and that rook have never moved and are both still on their
+     * starting squares.
+     *
+     * @param team which team to check
+     * @param side which side to check
+     * @return True if the team may still castle on that side at some point
+     */
+    public boolean hasCastlingRight(TeamColor team, CastleSide side) {
+        boolean flag = (team == TeamColor.WHITE ?
+                (side == CastleSide.KINGSIDE ? whiteKingsideCastle : whiteQueensideCastle) :
+                (side == CastleSide.KINGSIDE ? blackKingsideCastle : blackQueensideCastle));
+        if (!flag) {
+            return false;
+        }
+        int row = (team == TeamColor.WHITE ? 1 : 8);
+        ChessPiece king = board.getPiece(new ChessPosition(row, 5));
+        ChessPiece rook = board.getPiece(new ChessPosition(row, (side == CastleSide.KINGSIDE ? 8 : 1)));
+        return king != null && king.getPieceType() == ChessPiece.PieceType.KING && king.getTeamColor() == team &&
+                rook != null && rook.getPieceType() == ChessPiece.PieceType.ROOK && rook.getTeamColor() == team;
+    }
+
+    /**
+     * @return The position of a pawn that just moved two squares and can be captured
+     * en passant, or null if there is no such pawn
+     */
+    public ChessPosition getEnPassantPosition() {
+        return canEnPassant ? movedTwice : null;
+    }
+
+    /**
+     * Packs this game into {@link #PACKED_SIZE} bytes: one nibble per square (0 for
+     * empty, otherwise piece type ordinal + 1, plus 8 for black pieces), a flags byte
+     * (team to move, castling flags, en passant), the en passant square and the move
+     * count.
+     *
+     * @return The packed game
+     */
+    public byte[] pack() {
+        byte[] packed = new byte[PACKED_SIZE];
+        for (int square = 0; square < 64; square++) {
+            ChessPiece piece = board.getPiece(new ChessPosition(square / 8 + 1, square % 8 + 1));
+            if (piece != null) {
+                int nibble = piece.getPieceType().ordinal() + 1 + (piece.getTeamColor() == TeamColor.BLACK ? 8 : 0);
+                packed[square / 2] |= (byte) (square % 2 == 0 ? nibble : nibble << 4);
+            }
+        }
+        int flags = (currentTurn == TeamColor.BLACK ? 1 : 0)
+                | (whiteKingsideCastle ? 2 : 0) | (whiteQueensideCastle ? 4 : 0)
+                | (blackKingsideCastle ? 8 : 0) | (blackQueensideCastle ? 16 : 0)
+                | (canEnPassant ? 32 : 0);
+        packed[32] = (byte) flags;
+        if (movedTwice != null) {
+            packed[33] = (byte) ((movedTwice.getRow() - 1) * 8 + (movedTwice.getColumn() - 1));
+        }
+        packed[34] = (byte) (moveCount >>> 24);
+        packed[35] = (byte) (moveCount >>> 16);
+        packed[36] = (byte) (moveCount >>> 8);
+        packed[37] = (byte) moveCount;
+        return packed;
+    }
+
+    /**
+     * @param packed a game packed by {@link #pack()}
+     * @return The unpacked game
+     */
+    public static ChessGame unpack(byte[] packed) {
+        ChessGame game = new ChessGame();
+        ChessBoard newBoard = new ChessBoard();
+        for (int square = 0; square < 64; square++) {
+            int nibble = (square % 2 == 0 ? packed[square / 2] : packed[square / 2] >> 4) & 15;
+            if (nibble != 0) {
+                TeamColor team = (nibble > 8 ? TeamColor.BLACK : TeamColor.WHITE);
+                ChessPiece.PieceType type = ChessPiece.PieceType.values()[(nibble & 7) - 1];
+                newBoard.addPiece(new ChessPosition(square / 8 + 1, square % 8 + 1), new ChessPiece(team, type));
+            }
+        }
+        game.board = newBoard;
+        int flags = packed[32];
+        game.currentTurn = ((flags & 1) != 0 ? TeamColor.BLACK : TeamColor.WHITE);
+        game.whiteKingsideCastle = (flags & 2) != 0;
+        game.whiteQueensideCastle = (flags & 4) != 0;
+        game.blackKingsideCastle = (flags & 8) != 0;
+        game.blackQueensideCastle = (flags & 16) != 0;
+        game.canEnPassant = (flags & 32) != 0;
+        if (game.canEnPassant) {
+            int square = packed[33];
+            game.movedTwice = new ChessPosition(square / 8 + 1, square % 8 + 1);
+        }
+        game.moveCount = ((packed[34] & 0xFF) << 24) | ((packed[35] & 0xFF) << 16)
+                | ((packed[36] & 0xFF) << 8) | (packed[37] & 0xFF);
+        return game;
+    }
+
+    /**
+     * @return A copy of this game that can be changed without changing this one
+     */
+    public ChessGame copy() {
+        ChessGame copy = unpack(pack());
+        copy.movedTwice = movedTwice;
+        return copy;
+    }
+
+    /**
+     * @return A Zobrist hash of the current position (board, team to move, castling
+     * rights and en passant)
+     */
+    public long positionHash() {
+        return ZobristHash.hash(this);
     }
 
     /**
@@ -45,6 +45,33 @@ public class ChessMove {
         return promotionPiece;
     }
 
+    /**
+     * Packs this move into 16 bits: the start square in bits 0-5, the end square in
+     * bits 6-11 and the promotion piece (ordinal + 1, or 0 for none) in bits 12-14.
+     * Squares are numbered (row - 1) * 8 + (column - 1).
+     *
+     * @return The packed move
+     */
+    public int encode() {
+        int start = (startPosition.getRow() - 1) * 8 + (startPosition.getColumn() - 1);
+        int end = (endPosition.getRow() - 1) * 8 + (endPosition.getColumn() - 1);
+        int promotion = (promotionPiece == null ? 0 : promotionPiece.ordinal() + 1);
+        return start | (end << 6) | (promotion << 12);
+    }
+
+    /**
+     * @param encoded a move packed by {@link #encode()}
+     * @return The unpacked move
+     */
+    public static ChessMove decode(int encoded) {
+        int start = encoded & 63;
+        int end = (encoded >>> 6) & 63;
+        int promotion = (encoded >>> 12) & 7;
+        return new ChessMove(new ChessPosition(start / 8 + 1, start % 8 + 1),
+                new ChessPosition(end / 8 + 1, end % 8 + 1),
+                (promotion == 0 ? null : ChessPiece.PieceType.values()[promotion - 1]));
+    }
+
     @Override
     public String toString() {
         return String.format("[%s:%s, %s]", startPosition, endPosition, promotionPiece);
@@ -0,0 +1,118 @@
+package chess;
+
+/**
+ * Computes 64-bit Zobrist hashes of chess positions.
+ * <p>
+ * The keys are generated from a fixed seed, so the client and the server (and
+ * anything written to disk) always agree on the hash of a position.
+ */
+public final class ZobristHash {
+
+    private static final long SEED = 0x2400C4E55L;
+
+    private static final long[][] PIECE_KEYS = new long[12][64];
+    private static final long[] CASTLE_KEYS = new long[4];
+    private static final long[] EN_PASSANT_KEYS = new long[8];
+    private static final long BLACK_TO_MOVE_KEY;
+
+    static {
+        long state = SEED;
+        for (int piece = 0; piece < 12; piece++) {
+            for (int square = 0; square < 64; square++) {
+                state += 0x9E3779B97F4A7C15L;
+                PIECE_KEYS[piece][square] = mix(state);
+            }
+        }
+        for (int i = 0; i < CASTLE_KEYS.length; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            CASTLE_KEYS[i] = mix(state);
+        }
+        for (int i = 0; i < EN_PASSANT_KEYS.length; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            EN_PASSANT_KEYS[i] = mix(state);
+        }
+        state += 0x9E3779B97F4A7C15L;
+        BLACK_TO_MOVE_KEY = mix(state);
+    }
+
+    private ZobristHash() {
+    }
+
+    /**
+     * @param pieceIndex team * 6 + piece type ordinal (white is team 0)
+     * @param square     (row - 1) * 8 + (column - 1)
+     * @return the key for that piece standing on that square
+     */
+    public static long pieceKey(int pieceIndex, int square) {
+        return PIECE_KEYS[pieceIndex][square];
+    }
+
+    /**
+     * @param right 0 = white kingside, 1 = white queenside, 2 = black kingside, 3 = black queenside
+     * @return the key for that castling right
+     */
+    public static long castleKey(int right) {
+        return CASTLE_KEYS[right];
+    }
+
+    /**
+     * @param column the column (0-7) of a pawn that just moved two squares
+     * @return the key for en passant being possible on that column
+     */
+    public static long enPassantKey(int column) {
+        return EN_PASSANT_KEYS[column];
+    }
+
+    public static long blackToMoveKey() {
+        return BLACK_TO_MOVE_KEY;
+    }
+
+    public static int pieceIndex(ChessPiece piece) {
+        int team = piece.getTeamColor() == ChessGame.TeamColor.WHITE ? 0 : 6;
+        return team + piece.getPieceType().ordinal();
+    }
+
+    /**
+     * Hashes the board, the team to move, the castling rights and any en passant
+     * opportunity of a game.
+     *
+     * @param game the game to hash
+     * @return the Zobrist hash of the game's current position
+     */
+    public static long hash(ChessGame game) {
+        long hash = 0;
+        ChessBoard board = game.getBoard();
+        for (int row = 1; row <= 8; row++) {
+            for (int col = 1; col <= 8; col++) {
+                ChessPiece piece = board.getPiece(new ChessPosition(row, col));
+                if (piece != null) {
+                    hash ^= PIECE_KEYS[pieceIndex(piece)][(row - 1) * 8 + (col - 1)];
+                }
+            }
+        }
+        int right = 0;
+        for (ChessGame.TeamColor team : ChessGame.TeamColor.values()) {
+            if (game.hasCastlingRight(team, ChessGame.CastleSide.KINGSIDE)) {
+                hash ^= CASTLE_KEYS[right];
+            }
+            if (game.hasCastlingRight(team, ChessGame.CastleSide.QUEENSIDE)) {
+                hash ^= CASTLE_KEYS[right + 1];
+            }
+            right += 2;
+        }
+        ChessPosition enPassant = game.getEnPassantPosition();
+        if (enPassant != null) {
+            hash ^= EN_PASSANT_KEYS[enPassant.getColumn() - 1];
+        }
+        if (game.getTeamTurn() == ChessGame.TeamColor.BLACK) {
+            hash ^= BLACK_TO_MOVE_KEY;
+        }
+        return hash;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,34 @@
+package datamodel;
+
+import java.util.Locale;
+
+/**
+ * How strong a server-side bot plays. A bot sits in a game under a username made from its
+ * level, like {@code bot:medium}, which no user can register.
+ */
+public enum BotLevel {
+    EASY,
+    MEDIUM,
+    HARD;
+
+    public static final String USERNAME_PREFIX = "bot:";
+
+    public String username() {
+        return USERNAME_PREFIX + name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the level of the bot with the username, or null if it isn't a bot
+     */
+    public static BotLevel fromUsername(String username) {
+        if (username == null || !username.startsWith(USERNAME_PREFIX)) {
+            return null;
+        }
+        for (BotLevel level : values()) {
+            if (level.username().equals(username)) {
+                return level;
+            }
+        }
+        return null;
+    }
+}
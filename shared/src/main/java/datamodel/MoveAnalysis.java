@@ -0,0 +1,16 @@
+package datamodel;
+
+import chess.ChessMove;
+
+/**
+ * The engine's verdict on one move of a game. Scores are in centipawns from white's
+ * point of view.
+ *
+ * @param moveNumber  the game's move count after this move (the first move is 1)
+ * @param bestMove    the move the engine would have played instead, or null if it agrees
+ * @param scoreBefore the score of the position the move was played in
+ * @param scoreAfter  the score of the position after the move
+ * @param blunder     whether the move threw away a lot more than the best move would have
+ */
+public record MoveAnalysis(int moveNumber, ChessMove move, ChessMove bestMove, int scoreBefore, int scoreAfter,
+                           boolean blunder) {}
@@ -0,0 +1,10 @@
+package datamodel;
+
+import chess.ChessMove;
+
+/**
+ * One move of a game's history.
+ *
+ * @param moveNumber the game's move count after this move (the first move is 1)
+ */
+public record MoveRecord(int gameID, int moveNumber, ChessMove move) {}
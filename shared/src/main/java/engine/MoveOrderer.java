@@ -0,0 +1,209 @@
+package engine;
+
+/**
+ * Puts the moves at each node of a search in the order most likely to cause an early
+ * cutoff:
+ * <ol>
+ *     <li>the principal variation move and the transposition table's move</li>
+ *     <li>captures that don't lose material by static exchange evaluation, most valuable
+ *     victim first and then least valuable attacker (MVV-LVA), and queen promotions</li>
+ *     <li>the two killer moves of the ply, quiet moves that recently caused cutoffs at
+ *     the same depth elsewhere in the tree</li>
+ *     <li>other quiet moves, by how often they caused cutoffs (the history heuristic)</li>
+ *     <li>captures that lose material</li>
+ * </ol>
+ * It also counts how often a cutoff comes on the first move tried, the usual measure of
+ * how well moves are ordered. One orderer belongs to one search thread.
+ */
+public class MoveOrderer {
+
+    private static final int HASH_SCORE = 1 << 30;
+    private static final int GOOD_CAPTURE_SCORE = 1 << 28;
+    private static final int KILLER_SCORE = 1 << 27;
+    private static final int MAX_HISTORY = 1 << 26;
+    private static final int BAD_CAPTURE_SCORE = -(1 << 28);
+
+    //Indexed by piece type, with the king worth more than everything it could win
+    private static final int[] EXCHANGE_VALUES = {20000, 900, 330, 320, 500, 100};
+    //Indexed by piece type, highest for the least valuable attacker
+    private static final int[] ATTACKER_RANK = {1, 2, 4, 5, 3, 6};
+
+    private final int[][] moveScores = new int[Search.MAX_PLY][Position.MAX_MOVES];
+    private final int[][] killers = new int[Search.MAX_PLY][2];
+    //history[team][from][to]
+    private final int[][][] history = new int[2][64][64];
+
+    private long cutoffs;
+    private long firstMoveCutoffs;
+
+    /**
+     * Gets ready for a new search: forgets the killers, fades the history so it favours
+     * what happened recently, and resets the counts.
+     */
+    public void newSearch() {
+        for (int[] plyKillers : killers) {
+            plyKillers[0] = 0;
+            plyKillers[1] = 0;
+        }
+        for (int[][] teamHistory : history) {
+            for (int[] fromHistory : teamHistory) {
+                for (int to = 0; to < 64; to++) {
+                    fromHistory[to] >>= 1;
+                }
+            }
+        }
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+    }
+
+    /**
+     * Scores the moves of a ply for {@link #next}.
+     *
+     * @param bestMove the principal variation or hash move, or 0
+     */
+    void score(Position position, int[] moves, int count, int ply, int bestMove) {
+        int[] scores = moveScores[ply];
+        int team = position.sideToMove();
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            if (move == bestMove) {
+                scores[i] = HASH_SCORE;
+            } else if (position.isCapture(move)) {
+                int captureScore = mvvLva(position, move);
+                scores[i] = (isLosingCapture(position, move) ? BAD_CAPTURE_SCORE : GOOD_CAPTURE_SCORE) + captureScore;
+            } else if (Position.promotion(move) == Position.QUEEN) {
+                scores[i] = GOOD_CAPTURE_SCORE;
+            } else if (move == killers[ply][0]) {
+                scores[i] = KILLER_SCORE + 1;
+            } else if (move == killers[ply][1]) {
+                scores[i] = KILLER_SCORE;
+            } else {
+                scores[i] = history[team][Position.from(move)][Position.to(move)];
+            }
+        }
+    }
+
+    /**
+     * Picks the best scored move left, one at a time, since a cutoff often comes before
+     * the list is used up.
+     *
+     * @param index how many moves have been picked already
+     */
+    int next(int[] moves, int count, int index, int ply) {
+        int[] scores = moveScores[ply];
+        int best = index;
+        for (int i = index + 1; i < count; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        int move = moves[best];
+        moves[best] = moves[index];
+        moves[index] = move;
+        int score = scores[best];
+        scores[best] = scores[index];
+        scores[index] = score;
+        return move;
+    }
+
+    /**
+     * @return whether the move {@link #next} picked at the index is a capture that loses
+     * material
+     */
+    boolean isLosingCapture(int ply, int index) {
+        return moveScores[ply][index] < 0;
+    }
+
+    /**
+     * Records a move that caused a beta cutoff.
+     *
+     * @param moveNumber how many legal moves were tried before it
+     */
+    void cutoff(Position position, int move, int depth, int ply, int moveNumber) {
+        cutoffs++;
+        if (moveNumber == 0) {
+            firstMoveCutoffs++;
+        }
+        if (position.isCapture(move) || Position.promotion(move) >= 0) {
+            return;
+        }
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int[] fromHistory = history[position.sideToMove()][Position.from(move)];
+        fromHistory[Position.to(move)] += depth * depth;
+        if (fromHistory[Position.to(move)] >= MAX_HISTORY) {
+            for (int[][] teamHistory : history) {
+                for (int[] row : teamHistory) {
+                    for (int to = 0; to < 64; to++) {
+                        row[to] >>= 1;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int mvvLva(Position position, int move) {
+        int victim = position.pieceAt(Position.to(move));
+        int victimValue = EXCHANGE_VALUES[victim == Position.EMPTY ? Position.PAWN : victim % 6];
+        return victimValue * 8 + ATTACKER_RANK[position.pieceAt(Position.from(move)) % 6];
+    }
+
+    /**
+     * @return whether the capture loses material, judged by static exchange evaluation
+     */
+    static boolean isLosingCapture(Position position, int move) {
+        int attacker = position.pieceAt(Position.from(move)) % 6;
+        int victim = position.pieceAt(Position.to(move));
+        //Taking something worth at least as much can't lose
+        if (victim != Position.EMPTY && EXCHANGE_VALUES[victim % 6] >= EXCHANGE_VALUES[attacker]) {
+            return false;
+        }
+        return staticExchange(position, move) < 0;
+    }
+
+    /**
+     * Works out what a capture wins or loses if both sides keep recapturing on the square
+     * with their least valuable piece, each stopping when recapturing would lose more.
+     *
+     * @return the material won by the move, in centipawns
+     */
+    static int staticExchange(Position position, int move) {
+        int from = Position.from(move);
+        int to = Position.to(move);
+        int victim = position.pieceAt(to);
+        int[] gain = new int[32];
+        gain[0] = EXCHANGE_VALUES[victim == Position.EMPTY ? Position.PAWN : victim % 6];
+        int onSquare = EXCHANGE_VALUES[position.pieceAt(from) % 6];
+        long removed = 1L << from;
+        int team = position.sideToMove() ^ 1;
+        int depth = 0;
+        while (depth < gain.length - 1) {
+            int attacker = position.leastValuableAttacker(to, team, removed);
+            if (attacker < 0) {
+                break;
+            }
+            depth++;
+            gain[depth] = onSquare - gain[depth - 1];
+            onSquare = EXCHANGE_VALUES[position.pieceAt(attacker) % 6];
+            removed |= 1L << attacker;
+            team ^= 1;
+        }
+        for (; depth > 0; depth--) {
+            gain[depth - 1] = -Math.max(-gain[depth - 1], gain[depth]);
+        }
+        return gain[0];
+    }
+
+    public long cutoffs() {
+        return cutoffs;
+    }
+
+    /**
+     * @return the fraction of cutoffs that came on the first move tried
+     */
+    public double firstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+    }
+}
@@ -0,0 +1,168 @@
+package engine;
+
+import chess.ChessMove;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A memory-mapped file of opening moves, so well-known positions are answered instantly
+ * instead of searched. Each fixed-size record is a position hash, a move played there and
+ * how many games played it. The records are sorted by hash, so a position's moves sit
+ * together and are found by binary search without reading the file into memory.
+ * <p>
+ * Books are built from PGN files by {@link OpeningBookBuilder}. Moves are checked against
+ * the position before they are returned, so a hash collision can't suggest an illegal move.
+ */
+public class OpeningBook implements AutoCloseable {
+
+    static final int MAGIC = 0x43484f42;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int COUNT_OFFSET = 8;
+
+    static final int HASH_OFFSET = 0;
+    static final int MOVE_OFFSET = 8;
+    static final int WEIGHT_OFFSET = 10;
+    static final int RECORD_SIZE = 12;
+
+    /**
+     * @param weight how many games in the book played the move
+     */
+    public record BookMove(ChessMove move, int weight) {}
+
+    private final FileChannel channel;
+    private final MappedByteBuffer mapped;
+    private final int count;
+
+    private OpeningBook(FileChannel channel, MappedByteBuffer mapped) {
+        this.channel = channel;
+        this.mapped = mapped;
+        this.count = mapped.getInt(COUNT_OFFSET);
+    }
+
+    public static OpeningBook open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        if (channel.size() < HEADER_SIZE) {
+            channel.close();
+            throw new IOException(path + " is not an opening book");
+        }
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        int count = mapped.getInt(COUNT_OFFSET);
+        if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != FORMAT_VERSION || count < 0 ||
+                channel.size() != HEADER_SIZE + (long) count * RECORD_SIZE) {
+            channel.close();
+            throw new IOException(path + " is not an opening book");
+        }
+        return new OpeningBook(channel, mapped);
+    }
+
+    /**
+     * @return how many moves the book has, over all positions
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the book's legal moves in the position, most played first
+     */
+    public List<BookMove> moves(Position position) {
+        List<BookMove> moves = new ArrayList<>();
+        int[] legal = new int[Position.MAX_MOVES];
+        int legalCount = -1;
+        long hash = position.hash();
+        for (int index = firstIndex(hash); index < count && hash(index) == hash; index++) {
+            if (legalCount < 0) {
+                legalCount = position.legalMoves(legal);
+            }
+            int move = mapped.getShort(offset(index) + MOVE_OFFSET) & 0xffff;
+            for (int i = 0; i < legalCount; i++) {
+                if (legal[i] == move) {
+                    moves.add(new BookMove(Position.toChessMove(move),
+                            mapped.getShort(offset(index) + WEIGHT_OFFSET) & 0xffff));
+                    break;
+                }
+            }
+        }
+        moves.sort(Comparator.comparingInt(BookMove::weight).reversed());
+        return moves;
+    }
+
+    /**
+     * @return the most played move in the position, or null if it isn't in the book
+     */
+    public ChessMove bestMove(Position position) {
+        List<BookMove> moves = moves(position);
+        return moves.isEmpty() ? null : moves.getFirst().move();
+    }
+
+    /**
+     * Picks one of the book's moves at random, in proportion to how often each was played,
+     * so a bot doesn't play the same opening every game.
+     *
+     * @return the move, or null if the position isn't in the book
+     */
+    public ChessMove pickMove(Position position, Random random) {
+        List<BookMove> moves = moves(position);
+        int total = 0;
+        for (BookMove move : moves) {
+            total += move.weight();
+        }
+        if (total == 0) {
+            return null;
+        }
+        int pick = random.nextInt(total);
+        for (BookMove move : moves) {
+            pick -= move.weight();
+            if (pick < 0) {
+                return move.move();
+            }
+        }
+        return moves.getLast().move();
+    }
+
+    public boolean contains(Position position, ChessMove move) {
+        for (BookMove bookMove : moves(position)) {
+            if (bookMove.move().equals(move)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //The first record whose hash isn't less than the given one
+    private int firstIndex(long hash) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (hash(middle) < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private long hash(int index) {
+        return mapped.getLong(offset(index) + HASH_OFFSET);
+    }
+
+    private static int offset(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
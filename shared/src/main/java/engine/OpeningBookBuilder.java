@@ -0,0 +1,125 @@
+package engine;
+
+import chess.ChessGame;
+import chess.ChessMove;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds an {@link OpeningBook} by counting the moves played in the first plies of a set
+ * of games. Moves played in fewer than a minimum number of games are left out, so one
+ * odd game doesn't put its moves in the book.
+ * <p>
+ * Usage: {@code OpeningBookBuilder <book file> <pgn file>... [--plies N] [--min-games N]}
+ */
+public class OpeningBookBuilder {
+
+    public static final int DEFAULT_MAX_PLIES = 20;
+    public static final int DEFAULT_MIN_GAMES = 2;
+
+    private record Key(long hash, int move) {}
+
+    private final int maxPlies;
+    private final HashMap<Key, Integer> counts = new HashMap<>();
+    private int games;
+
+    /**
+     * @param maxPlies how many plies from the start of each game go in the book
+     */
+    public OpeningBookBuilder(int maxPlies) {
+        this.maxPlies = maxPlies;
+    }
+
+    public void addGame(List<ChessMove> moves) {
+        Position position = Position.fromGame(new ChessGame());
+        for (int ply = 0; ply < Math.min(maxPlies, moves.size()); ply++) {
+            int move = Position.fromChessMove(moves.get(ply));
+            counts.merge(new Key(position.hash(), move), 1, Integer::sum);
+            position.make(move);
+        }
+        games++;
+    }
+
+    public void addPgn(Reader reader) throws IOException {
+        Pgn.readGames(reader, this::addGame);
+    }
+
+    public int games() {
+        return games;
+    }
+
+    /**
+     * @param minGames how many games have to play a move for it to go in the book
+     * @return how many moves were written
+     */
+    public int write(Path path, int minGames) throws IOException {
+        List<Map.Entry<Key, Integer>> entries = new ArrayList<>();
+        for (Map.Entry<Key, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() >= minGames) {
+                entries.add(entry);
+            }
+        }
+        entries.sort(Comparator.comparingLong((Map.Entry<Key, Integer> entry) -> entry.getKey().hash())
+                .thenComparingInt(entry -> entry.getKey().move()));
+
+        ByteBuffer buffer = ByteBuffer.allocate(OpeningBook.HEADER_SIZE + entries.size() * OpeningBook.RECORD_SIZE);
+        buffer.putInt(0, OpeningBook.MAGIC).putInt(4, OpeningBook.FORMAT_VERSION)
+                .putInt(OpeningBook.COUNT_OFFSET, entries.size());
+        int offset = OpeningBook.HEADER_SIZE;
+        for (Map.Entry<Key, Integer> entry : entries) {
+            buffer.putLong(offset + OpeningBook.HASH_OFFSET, entry.getKey().hash());
+            buffer.putShort(offset + OpeningBook.MOVE_OFFSET, (short) entry.getKey().move());
+            buffer.putShort(offset + OpeningBook.WEIGHT_OFFSET, (short) Math.min(entry.getValue(), 0xffff));
+            offset += OpeningBook.RECORD_SIZE;
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return entries.size();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int maxPlies = DEFAULT_MAX_PLIES;
+        int minGames = DEFAULT_MIN_GAMES;
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--plies" -> maxPlies = Integer.parseInt(args[++i]);
+                case "--min-games" -> minGames = Integer.parseInt(args[++i]);
+                default -> files.add(Path.of(args[i]));
+            }
+        }
+        if (files.size() < 2) {
+            System.out.println("Usage: OpeningBookBuilder <book file> <pgn file>... [--plies N] [--min-games N]");
+            return;
+        }
+
+        OpeningBookBuilder builder = new OpeningBookBuilder(maxPlies);
+        for (Path pgn : files.subList(1, files.size())) {
+            //Moves are plain ASCII, and Latin-1 can't fail on the odd name in a tag
+            try (Reader reader = Files.newBufferedReader(pgn, StandardCharsets.ISO_8859_1)) {
+                builder.addPgn(reader);
+            }
+        }
+        int written = builder.write(files.getFirst(), minGames);
+        System.out.printf("%d games, %d book moves written to %s%n", builder.games(), written, files.getFirst());
+    }
+}
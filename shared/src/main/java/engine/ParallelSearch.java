@@ -0,0 +1,120 @@
+package engine;
+
+import chess.ChessGame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Searches on several threads at once ("lazy SMP"). Every thread runs an ordinary
+ * {@link Search} of the same root on its own copy of the position, and they share one
+ * {@link TranspositionTable}, so results found by one thread cut off work for the
+ * others. Half the helper threads search a ply deeper than the main thread so they fill
+ * the table ahead of it. The main thread's result is the one returned, and the helpers
+ * are stopped when it finishes.
+ * <p>
+ * The limits apply to the main thread, except that the node count in the result is the
+ * total for all threads.
+ */
+public class ParallelSearch implements AutoCloseable {
+
+    private final TranspositionTable table;
+    private final Search main;
+    private final List<Search> helpers = new ArrayList<>();
+    private final ExecutorService executor;
+
+    /**
+     * @param threads how many threads to search on, including the calling thread
+     */
+    public ParallelSearch(int threads, TranspositionTable table) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("need at least 1 search thread");
+        }
+        this.table = table;
+        this.main = new Search(table);
+        for (int i = 1; i < threads; i++) {
+            helpers.add(new Search(table));
+        }
+        this.executor = (helpers.isEmpty() ? null : Executors.newFixedThreadPool(helpers.size(), runnable -> {
+            Thread thread = new Thread(runnable, "search-helper");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    public static int defaultThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    public int getThreads() {
+        return helpers.size() + 1;
+    }
+
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    public void setTablebase(Tablebase tablebase) {
+        main.setTablebase(tablebase);
+        for (Search helper : helpers) {
+            helper.setTablebase(tablebase);
+        }
+    }
+
+    public SearchResult search(ChessGame game, SearchLimits limits) {
+        return search(Position.fromGame(game), limits);
+    }
+
+    public synchronized SearchResult search(Position root, SearchLimits limits) {
+        table.newSearch();
+        main.clearStop();
+        List<Future<SearchResult>> running = new ArrayList<>(helpers.size());
+        SearchLimits helperLimits = new SearchLimits(limits.maxDepth() > 0 ? limits.maxDepth() + 1 : 0, 0, 0);
+        for (int i = 0; i < helpers.size(); i++) {
+            Search helper = helpers.get(i);
+            helper.clearStop();
+            int depthOffset = (i % 2 == 0 ? 1 : 0);
+            running.add(executor.submit(() -> helper.run(root, helperLimits, depthOffset)));
+        }
+
+        SearchResult result;
+        try {
+            result = main.run(root, limits, 0);
+        } finally {
+            for (Search helper : helpers) {
+                helper.stop();
+            }
+        }
+
+        long nodes = result.nodes();
+        for (Future<SearchResult> helperResult : running) {
+            try {
+                nodes += helperResult.get().nodes();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException(ex.getCause());
+            }
+        }
+        return new SearchResult(result.bestMove(), result.score(), result.depth(), nodes, result.millis(),
+                result.principalVariation());
+    }
+
+    /**
+     * Stops a search running on another thread.
+     */
+    public void stop() {
+        main.stop();
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package engine;
+
+import chess.ChessGame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the positions reachable in a given number of moves ("perft"), which checks move
+ * generation against known counts and makes a reproducible benchmark.
+ * <p>
+ * The first plies are split into tasks on a {@link ForkJoinPool}, each with its own copy
+ * of the position, and the rest of each subtree is counted on one thread. Counts of
+ * subtrees are shared between threads in a hash table keyed by position hash and depth,
+ * stored lock-free the same way as the {@link TranspositionTable}.
+ */
+public class Perft implements AutoCloseable {
+
+    /**
+     * @param nodes  the number of positions counted
+     * @param millis how long counting took
+     */
+    public record Result(long nodes, long millis, int threads) {
+
+        public long nodesPerSecond() {
+            return nodes * 1000 / Math.max(1, millis);
+        }
+
+        public long nodesPerSecondPerThread() {
+            return nodesPerSecond() / threads;
+        }
+    }
+
+    private static final int BYTES_PER_ENTRY = 16;
+    private static final int DEPTH_BITS = 6;
+
+    private final ForkJoinPool pool;
+    private final int splitPlies;
+    //Pairs of (hash ^ data, data), where data is the count and the depth
+    private final long[] table;
+    private final int mask;
+
+    /**
+     * @param threads    how many threads to count on
+     * @param splitPlies how many plies to split into parallel tasks (1 splits root moves,
+     *                   2 splits their replies as well)
+     * @param megabytes  the size of the count table, or 0 for none
+     */
+    public Perft(int threads, int splitPlies, int megabytes) {
+        this.pool = new ForkJoinPool(threads);
+        this.splitPlies = splitPlies;
+        if (megabytes > 0) {
+            long entries = Math.min(Long.highestOneBit((long) megabytes * 1024 * 1024 / BYTES_PER_ENTRY), 1L << 30);
+            table = new long[(int) entries * 2];
+            mask = (int) entries - 1;
+        } else {
+            table = null;
+            mask = 0;
+        }
+    }
+
+    public Result count(ChessGame game, int depth) {
+        return count(Position.fromGame(game), depth);
+    }
+
+    public Result count(Position position, int depth) {
+        long start = System.nanoTime();
+        long nodes = (depth <= 0 ? 1 : pool.invoke(new Task(position.copy(), depth, splitPlies)));
+        return new Result(nodes, (System.nanoTime() - start) / 1_000_000, pool.getParallelism());
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private class Task extends RecursiveTask<Long> {
+
+        private final Position position;
+        private final int depth;
+        private final int splitPlies;
+
+        Task(Position position, int depth, int splitPlies) {
+            this.position = position;
+            this.depth = depth;
+            this.splitPlies = splitPlies;
+        }
+
+        @Override
+        protected Long compute() {
+            if (splitPlies <= 0 || depth <= 1) {
+                return perft(position, depth, new int[depth][Position.MAX_MOVES]);
+            }
+            long cached = probe(position.hash(), depth);
+            if (cached >= 0) {
+                return cached;
+            }
+            int[] moves = new int[Position.MAX_MOVES];
+            int count = position.legalMoves(moves);
+            List<Task> tasks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Position child = position.copy();
+                child.make(moves[i]);
+                tasks.add(new Task(child, depth - 1, splitPlies - 1));
+            }
+            long nodes = 0;
+            for (Task task : invokeAll(tasks)) {
+                nodes += task.join();
+            }
+            store(position.hash(), depth, nodes);
+            return nodes;
+        }
+    }
+
+    private long perft(Position position, int depth, int[][] moves) {
+        int[] plyMoves = moves[depth - 1];
+        //The last ply is counted, not made
+        if (depth == 1) {
+            return position.legalMoves(plyMoves);
+        }
+        long cached = probe(position.hash(), depth);
+        if (cached >= 0) {
+            return cached;
+        }
+        int count = position.generateMoves(plyMoves, false);
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            position.make(plyMoves[i]);
+            if (!position.leftKingInCheck()) {
+                nodes += perft(position, depth - 1, moves);
+            }
+            position.unmake(plyMoves[i]);
+        }
+        store(position.hash(), depth, nodes);
+        return nodes;
+    }
+
+    //The stored count, or -1 if there is none
+    private long probe(long hash, int depth) {
+        if (table == null) {
+            return -1;
+        }
+        int index = ((int) hash & mask) * 2;
+        long data = table[index + 1];
+        if ((table[index] ^ data) != hash || (data & ((1 << DEPTH_BITS) - 1)) != depth) {
+            return -1;
+        }
+        return data >>> DEPTH_BITS;
+    }
+
+    private void store(long hash, int depth, long nodes) {
+        if (table == null) {
+            return;
+        }
+        int index = ((int) hash & mask) * 2;
+        long data = (nodes << DEPTH_BITS) | depth;
+        table[index] = hash ^ data;
+        table[index + 1] = data;
+    }
+}
@@ -0,0 +1,31 @@
+package engine;
+
+/**
+ * Measures how move generation scales across cores: runs perft on a position with 1, 2,
+ * 4, ... threads up to the number of cores and prints nodes per second per thread. The
+ * count table is left out unless asked for, since it makes runs depend on what earlier
+ * threads happened to store.
+ * <p>
+ * Usage: {@code PerftBenchmark [depth] [max threads] [table MB] [fen]}
+ */
+public class PerftBenchmark {
+
+    private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+    public static void main(String[] args) {
+        int depth = (args.length > 0 ? Integer.parseInt(args[0]) : 4);
+        int maxThreads = (args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors());
+        int megabytes = (args.length > 2 ? Integer.parseInt(args[2]) : 0);
+        Position position = Position.fromFen(args.length > 3 ? args[3] : KIWIPETE);
+
+        System.out.printf("%-8s %14s %10s %14s %14s%n", "threads", "nodes", "millis", "nodes/s", "nodes/s/thread");
+        for (int threads = 1; threads <= maxThreads; threads = (threads * 2 > maxThreads && threads < maxThreads ?
+                maxThreads : threads * 2)) {
+            try (Perft perft = new Perft(threads, 2, megabytes)) {
+                Perft.Result result = perft.count(position, depth);
+                System.out.printf("%-8d %14d %10d %14d %14d%n", threads, result.nodes(), result.millis(),
+                        result.nodesPerSecond(), result.nodesPerSecondPerThread());
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package engine;
+
+import chess.ChessGame;
+import chess.ChessMove;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads the moves of games in PGN (portable game notation). Tags, comments, variations
+ * and annotations are skipped; only the main line of each game is kept. A game with a
+ * move that can't be read or isn't legal keeps the moves before it.
+ */
+public final class Pgn {
+
+    private static final String PIECE_LETTERS = "KQBNR";
+
+    private Pgn() {
+    }
+
+    /**
+     * Streams the games one at a time, so a large file never has to fit in memory.
+     *
+     * @param games called with the main line of each game, in order
+     */
+    public static void readGames(Reader reader, Consumer<List<ChessMove>> games) throws IOException {
+        GameReader gameReader = new GameReader(games);
+        StringBuilder token = new StringBuilder();
+        int variationDepth = 0;
+        int c = reader.read();
+        while (c != -1) {
+            if (c == '{') {
+                gameReader.token(token);
+                while (c != -1 && c != '}') {
+                    c = reader.read();
+                }
+            } else if (c == ';') {
+                gameReader.token(token);
+                while (c != -1 && c != '\n') {
+                    c = reader.read();
+                }
+            } else if (c == '(') {
+                gameReader.token(token);
+                variationDepth++;
+            } else if (c == ')') {
+                token.setLength(0);
+                variationDepth = Math.max(0, variationDepth - 1);
+            } else if (variationDepth > 0) {
+                //Inside a variation nothing but nesting matters
+                token.setLength(0);
+            } else if (c == '[') {
+                gameReader.token(token);
+                //A tag after moves means the last game ended without a result
+                gameReader.endGame();
+                while (c != -1 && c != ']') {
+                    c = reader.read();
+                }
+            } else if (Character.isWhitespace(c)) {
+                gameReader.token(token);
+            } else {
+                token.append((char) c);
+            }
+            c = reader.read();
+        }
+        gameReader.token(token);
+        gameReader.endGame();
+    }
+
+    /**
+     * Reads a move in standard algebraic notation, like {@code Nbd7}, {@code exd5},
+     * {@code e8=Q+} or {@code O-O}.
+     *
+     * @return the legal move it names, or -1 if it names no legal move or more than one
+     */
+    public static int parseMove(Position position, String san) {
+        int end = san.length();
+        while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        String move = san.substring(0, end).replace('0', 'O');
+        int[] moves = new int[Position.MAX_MOVES];
+        int count = position.legalMoves(moves);
+        if (move.equals("O-O") || move.equals("O-O-O")) {
+            int king = position.kingSquare(position.sideToMove());
+            int to = king + (move.equals("O-O") ? 2 : -2);
+            for (int i = 0; i < count; i++) {
+                if (Position.from(moves[i]) == king && Position.to(moves[i]) == to) {
+                    return moves[i];
+                }
+            }
+            return -1;
+        }
+
+        int promotion = -1;
+        int equals = move.indexOf('=');
+        if (equals >= 0 && equals + 1 < move.length()) {
+            promotion = PIECE_LETTERS.indexOf(move.charAt(equals + 1));
+            move = move.substring(0, equals);
+        } else if (move.length() > 2 && PIECE_LETTERS.indexOf(move.charAt(move.length() - 1)) > 0 &&
+                Character.isDigit(move.charAt(move.length() - 2))) {
+            promotion = PIECE_LETTERS.indexOf(move.charAt(move.length() - 1));
+            move = move.substring(0, move.length() - 1);
+        }
+        int type = Position.PAWN;
+        if (!move.isEmpty() && PIECE_LETTERS.indexOf(move.charAt(0)) >= 0) {
+            type = PIECE_LETTERS.indexOf(move.charAt(0));
+            move = move.substring(1);
+        }
+        move = move.replace("x", "").replace("-", "");
+        if (move.length() < 2 || move.length() > 4) {
+            return -1;
+        }
+        int to = square(move.substring(move.length() - 2));
+        if (to < 0) {
+            return -1;
+        }
+        String from = move.substring(0, move.length() - 2);
+        int fromFile = -1;
+        int fromRank = -1;
+        for (char c : from.toCharArray()) {
+            if (c >= 'a' && c <= 'h') {
+                fromFile = c - 'a';
+            } else if (c >= '1' && c <= '8') {
+                fromRank = c - '1';
+            } else {
+                return -1;
+            }
+        }
+
+        int found = -1;
+        for (int i = 0; i < count; i++) {
+            int candidate = moves[i];
+            int square = Position.from(candidate);
+            if (Position.to(candidate) == to && position.pieceAt(square) % 6 == type &&
+                    Position.promotion(candidate) == promotion &&
+                    (fromFile < 0 || square % 8 == fromFile) && (fromRank < 0 || square / 8 == fromRank)) {
+                if (found >= 0) {
+                    return -1;
+                }
+                found = candidate;
+            }
+        }
+        return found;
+    }
+
+    private static int square(String name) {
+        char file = name.charAt(0);
+        char rank = name.charAt(1);
+        if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+            return -1;
+        }
+        return (rank - '1') * 8 + (file - 'a');
+    }
+
+    //Plays the tokens of the current game's main line
+    private static class GameReader {
+        private final Consumer<List<ChessMove>> games;
+        private Position position = Position.fromGame(new ChessGame());
+        private List<ChessMove> moves = new ArrayList<>();
+        private boolean broken;
+
+        GameReader(Consumer<List<ChessMove>> games) {
+            this.games = games;
+        }
+
+        void token(StringBuilder builder) {
+            if (builder.isEmpty()) {
+                return;
+            }
+            String token = builder.toString();
+            builder.setLength(0);
+            if (token.equals("1-0") || token.equals("0-1") || token.equals("1/2-1/2") || token.equals("*")) {
+                endGame();
+                return;
+            }
+            if (token.startsWith("$") || broken) {
+                return;
+            }
+            //Move numbers may be attached to the move, like 1.e4 or 3...Nf6
+            int digits = 0;
+            while (digits < token.length() && Character.isDigit(token.charAt(digits))) {
+                digits++;
+            }
+            int start = digits;
+            while (start < token.length() && token.charAt(start) == '.') {
+                start++;
+            }
+            if (start == token.length()) {
+                return;
+            }
+            int move = parseMove(position, token.substring(start == digits ? 0 : start));
+            //The position only keeps so much history to unmake
+            if (move < 0 || moves.size() >= Position.MAX_HISTORY) {
+                broken = true;
+                return;
+            }
+            position.make(move);
+            moves.add(Position.toChessMove(move));
+        }
+
+        void endGame() {
+            if (!moves.isEmpty()) {
+                games.accept(moves);
+            }
+            position = Position.fromGame(new ChessGame());
+            moves = new ArrayList<>();
+            broken = false;
+        }
+    }
+}
@@ -0,0 +1,697 @@
+package engine;
+
+import chess.ChessBoard;
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPiece;
+import chess.ChessPosition;
+import chess.ZobristHash;
+
+/**
+ * A mutable chess position built for search: a 64-square mailbox of piece codes, moves
+ * made and unmade in place, and a Zobrist hash kept up to date on every move (it always
+ * equals {@link ZobristHash#hash(ChessGame)} of the same position).
+ * <p>
+ * It also keeps the sums {@link Evaluator} scores from (material and piece-square values
+ * for the middlegame and endgame, and the game phase) up to date the same way.
+ * <p>
+ * Squares are numbered (row - 1) * 8 + (column - 1), and pieces are coded team * 6 +
+ * piece type ordinal, the same as {@link ZobristHash}. Moves are ints in the
+ * {@link ChessMove#encode()} format, so they convert to and from {@link ChessMove}
+ * without a lookup.
+ */
+public final class Position {
+
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+
+    public static final int KING = 0;
+    public static final int QUEEN = 1;
+    public static final int BISHOP = 2;
+    public static final int KNIGHT = 3;
+    public static final int ROOK = 4;
+    public static final int PAWN = 5;
+
+    public static final int EMPTY = -1;
+    public static final int MAX_MOVES = 256;
+
+    //Castling rights, numbered like ZobristHash.castleKey
+    static final int WHITE_KINGSIDE = 1;
+    static final int WHITE_QUEENSIDE = 2;
+    static final int BLACK_KINGSIDE = 4;
+    static final int BLACK_QUEENSIDE = 8;
+
+    static final int MAX_HISTORY = 1024;
+
+    static final int[][] KNIGHT_TARGETS = new int[64][];
+    static final int[][] KING_TARGETS = new int[64][];
+    //PAWN_ATTACKS[team][square] are the squares a pawn of that team on that square attacks
+    private static final int[][][] PAWN_ATTACKS = new int[2][64][];
+    //RAYS[direction][square], orthogonal directions first and then diagonal ones
+    static final int[][][] RAYS = new int[8][64][];
+    private static final int[] ROW_STEPS = {1, -1, 0, 0, 1, 1, -1, -1};
+    private static final int[] COLUMN_STEPS = {0, 0, 1, -1, 1, -1, 1, -1};
+    //Rights kept when a piece moves from or to each square
+    private static final int[] CASTLE_MASK = new int[64];
+    private static final long[] CASTLE_HASH = new long[16];
+
+    static {
+        for (int square = 0; square < 64; square++) {
+            KNIGHT_TARGETS[square] = targets(square, new int[][]{{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2},
+                    {-2, -1}, {-2, 1}, {-1, 2}});
+            KING_TARGETS[square] = targets(square, new int[][]{{1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0},
+                    {-1, -1}, {0, -1}, {1, -1}});
+            PAWN_ATTACKS[WHITE][square] = targets(square, new int[][]{{1, -1}, {1, 1}});
+            PAWN_ATTACKS[BLACK][square] = targets(square, new int[][]{{-1, -1}, {-1, 1}});
+            for (int direction = 0; direction < 8; direction++) {
+                int[] ray = new int[8];
+                int length = 0;
+                int row = square / 8 + ROW_STEPS[direction];
+                int column = square % 8 + COLUMN_STEPS[direction];
+                while (row >= 0 && row < 8 && column >= 0 && column < 8) {
+                    ray[length++] = row * 8 + column;
+                    row += ROW_STEPS[direction];
+                    column += COLUMN_STEPS[direction];
+                }
+                RAYS[direction][square] = java.util.Arrays.copyOf(ray, length);
+            }
+            CASTLE_MASK[square] = 15;
+        }
+        CASTLE_MASK[4] = ~(WHITE_KINGSIDE | WHITE_QUEENSIDE) & 15;
+        CASTLE_MASK[7] = ~WHITE_KINGSIDE & 15;
+        CASTLE_MASK[0] = ~WHITE_QUEENSIDE & 15;
+        CASTLE_MASK[60] = ~(BLACK_KINGSIDE | BLACK_QUEENSIDE) & 15;
+        CASTLE_MASK[63] = ~BLACK_KINGSIDE & 15;
+        CASTLE_MASK[56] = ~BLACK_QUEENSIDE & 15;
+        for (int rights = 0; rights < 16; rights++) {
+            for (int right = 0; right < 4; right++) {
+                if ((rights & (1 << right)) != 0) {
+                    CASTLE_HASH[rights] ^= ZobristHash.castleKey(right);
+                }
+            }
+        }
+    }
+
+    private static int[] targets(int square, int[][] steps) {
+        int[] found = new int[steps.length];
+        int count = 0;
+        for (int[] step : steps) {
+            int row = square / 8 + step[0];
+            int column = square % 8 + step[1];
+            if (row >= 0 && row < 8 && column >= 0 && column < 8) {
+                found[count++] = row * 8 + column;
+            }
+        }
+        return java.util.Arrays.copyOf(found, count);
+    }
+
+    private final int[] board = new int[64];
+    private final int[] kingSquares = new int[2];
+    private int sideToMove;
+    private int castleRights;
+    //Column of a pawn that just moved two squares, or -1
+    private int enPassantColumn = -1;
+    private long hash;
+    //White's evaluation sums minus black's
+    private int midgameScore;
+    private int endgameScore;
+    private int phase;
+    private int pieceCount;
+
+    //What make() needs to put back in unmake()
+    private final int[] capturedHistory = new int[MAX_HISTORY];
+    private final int[] castleHistory = new int[MAX_HISTORY];
+    private final int[] enPassantHistory = new int[MAX_HISTORY];
+    private final long[] hashHistory = new long[MAX_HISTORY];
+    private final int[] midgameHistory = new int[MAX_HISTORY];
+    private final int[] endgameHistory = new int[MAX_HISTORY];
+    private final int[] phaseHistory = new int[MAX_HISTORY];
+    private int historyLength;
+
+    private Position() {
+        java.util.Arrays.fill(board, EMPTY);
+    }
+
+    public static Position fromGame(ChessGame game) {
+        Position position = new Position();
+        ChessBoard chessBoard = game.getBoard();
+        for (int square = 0; square < 64; square++) {
+            ChessPiece piece = chessBoard.getPiece(new ChessPosition(square / 8 + 1, square % 8 + 1));
+            if (piece != null) {
+                position.put(ZobristHash.pieceIndex(piece), square);
+            }
+        }
+        position.sideToMove = (game.getTeamTurn() == ChessGame.TeamColor.WHITE ? WHITE : BLACK);
+        int right = 1;
+        for (ChessGame.TeamColor team : ChessGame.TeamColor.values()) {
+            if (game.hasCastlingRight(team, ChessGame.CastleSide.KINGSIDE)) {
+                position.castleRights |= right;
+            }
+            if (game.hasCastlingRight(team, ChessGame.CastleSide.QUEENSIDE)) {
+                position.castleRights |= right << 1;
+            }
+            right <<= 2;
+        }
+        ChessPosition enPassant = game.getEnPassantPosition();
+        position.enPassantColumn = (enPassant == null ? -1 : enPassant.getColumn() - 1);
+        position.hash ^= position.stateHash();
+        return position;
+    }
+
+    /**
+     * @param fen a position in Forsyth-Edwards Notation. The move counters are optional and
+     *            ignored.
+     */
+    public static Position fromFen(String fen) {
+        Position position = new Position();
+        String[] fields = fen.trim().split("\\s+");
+        int row = 7;
+        int column = 0;
+        for (char c : fields[0].toCharArray()) {
+            if (c == '/') {
+                row--;
+                column = 0;
+            } else if (Character.isDigit(c)) {
+                column += c - '0';
+            } else {
+                int team = (Character.isUpperCase(c) ? WHITE : BLACK);
+                int type = "kqbnrp".indexOf(Character.toLowerCase(c));
+                if (type < 0) {
+                    throw new IllegalArgumentException("bad piece '" + c + "' in " + fen);
+                }
+                position.put(team * 6 + type, row * 8 + column);
+                column++;
+            }
+        }
+        position.sideToMove = (fields.length > 1 && fields[1].equals("b") ? BLACK : WHITE);
+        if (fields.length > 2) {
+            for (char c : fields[2].toCharArray()) {
+                position.castleRights |= switch (c) {
+                    case 'K' -> WHITE_KINGSIDE;
+                    case 'Q' -> WHITE_QUEENSIDE;
+                    case 'k' -> BLACK_KINGSIDE;
+                    case 'q' -> BLACK_QUEENSIDE;
+                    default -> 0;
+                };
+            }
+        }
+        if (fields.length > 3 && !fields[3].equals("-")) {
+            position.enPassantColumn = fields[3].charAt(0) - 'a';
+        }
+        position.hash ^= position.stateHash();
+        return position;
+    }
+
+    public Position copy() {
+        Position copy = new Position();
+        System.arraycopy(board, 0, copy.board, 0, 64);
+        copy.kingSquares[WHITE] = kingSquares[WHITE];
+        copy.kingSquares[BLACK] = kingSquares[BLACK];
+        copy.sideToMove = sideToMove;
+        copy.castleRights = castleRights;
+        copy.enPassantColumn = enPassantColumn;
+        copy.hash = hash;
+        copy.midgameScore = midgameScore;
+        copy.endgameScore = endgameScore;
+        copy.phase = phase;
+        copy.pieceCount = pieceCount;
+        return copy;
+    }
+
+    /**
+     * Replaces the position with just the given pieces, with no castling or en passant
+     * rights, reusing this object so walking every position of an endgame doesn't
+     * allocate.
+     */
+    void setPieces(int[] pieces, int[] squares, int count, int side) {
+        java.util.Arrays.fill(board, EMPTY);
+        hash = 0;
+        midgameScore = 0;
+        endgameScore = 0;
+        phase = 0;
+        pieceCount = 0;
+        historyLength = 0;
+        castleRights = 0;
+        enPassantColumn = -1;
+        for (int i = 0; i < count; i++) {
+            put(pieces[i], squares[i]);
+        }
+        sideToMove = side;
+        hash ^= stateHash();
+    }
+
+    private void put(int piece, int square) {
+        addPiece(piece, square);
+        if (piece % 6 == KING) {
+            kingSquares[piece / 6] = square;
+        }
+    }
+
+    //Puts a piece on an empty square, keeping the hash and evaluation sums up to date
+    private void addPiece(int piece, int square) {
+        board[square] = piece;
+        hash ^= ZobristHash.pieceKey(piece, square);
+        midgameScore += Evaluator.midgame(piece, square);
+        endgameScore += Evaluator.endgame(piece, square);
+        phase += Evaluator.phase(piece);
+        pieceCount++;
+    }
+
+    private void removePiece(int square) {
+        int piece = board[square];
+        board[square] = EMPTY;
+        hash ^= ZobristHash.pieceKey(piece, square);
+        midgameScore -= Evaluator.midgame(piece, square);
+        endgameScore -= Evaluator.endgame(piece, square);
+        phase -= Evaluator.phase(piece);
+        pieceCount--;
+    }
+
+    //The keys for everything but the pieces, which put() hashes as it goes
+    private long stateHash() {
+        long computed = CASTLE_HASH[castleRights];
+        if (enPassantColumn >= 0) {
+            computed ^= ZobristHash.enPassantKey(enPassantColumn);
+        }
+        if (sideToMove == BLACK) {
+            computed ^= ZobristHash.blackToMoveKey();
+        }
+        return computed;
+    }
+
+    public static int move(int from, int to, int promotionType) {
+        return from | (to << 6) | (promotionType < 0 ? 0 : (promotionType + 1) << 12);
+    }
+
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    /**
+     * @return the piece type a pawn promotes to, or -1
+     */
+    public static int promotion(int move) {
+        return ((move >>> 12) & 7) - 1;
+    }
+
+    public static ChessMove toChessMove(int move) {
+        return ChessMove.decode(move);
+    }
+
+    public static int fromChessMove(ChessMove move) {
+        return move.encode();
+    }
+
+    public int pieceAt(int square) {
+        return board[square];
+    }
+
+    public int sideToMove() {
+        return sideToMove;
+    }
+
+    public long hash() {
+        return hash;
+    }
+
+    public int midgameScore() {
+        return midgameScore;
+    }
+
+    public int endgameScore() {
+        return endgameScore;
+    }
+
+    /**
+     * @return how much material is left, from {@link Evaluator#MAX_PHASE} with every piece
+     * on the board (more after promotions) down to 0 with only kings and pawns
+     */
+    public int phase() {
+        return phase;
+    }
+
+    /**
+     * @return how many pieces are on the board, kings and pawns included
+     */
+    public int pieceCount() {
+        return pieceCount;
+    }
+
+    int castleRights() {
+        return castleRights;
+    }
+
+    int enPassantColumn() {
+        return enPassantColumn;
+    }
+
+    public int kingSquare(int team) {
+        return kingSquares[team];
+    }
+
+    public boolean isCapture(int move) {
+        return board[to(move)] != EMPTY || isEnPassant(move);
+    }
+
+    private boolean isEnPassant(int move) {
+        int from = from(move);
+        int to = to(move);
+        return board[from] % 6 == PAWN && (from & 7) != (to & 7) && board[to] == EMPTY;
+    }
+
+    public void make(int move) {
+        int from = from(move);
+        int to = to(move);
+        int piece = board[from];
+        int team = piece / 6;
+        int type = piece % 6;
+
+        capturedHistory[historyLength] = board[to];
+        castleHistory[historyLength] = castleRights;
+        enPassantHistory[historyLength] = enPassantColumn;
+        hashHistory[historyLength] = hash;
+        midgameHistory[historyLength] = midgameScore;
+        endgameHistory[historyLength] = endgameScore;
+        phaseHistory[historyLength] = phase;
+        historyLength++;
+
+        if (enPassantColumn >= 0) {
+            hash ^= ZobristHash.enPassantKey(enPassantColumn);
+            enPassantColumn = -1;
+        }
+        if (board[to] != EMPTY) {
+            removePiece(to);
+        } else if (type == PAWN && (from & 7) != (to & 7)) {
+            removePiece(to + (team == WHITE ? -8 : 8));
+        }
+
+        removePiece(from);
+        addPiece(promotion(move) >= 0 ? team * 6 + promotion(move) : piece, to);
+
+        if (type == KING) {
+            kingSquares[team] = to;
+            if (to - from == 2 || from - to == 2) {
+                int rookFrom = (to > from ? from + 3 : from - 4);
+                int rook = board[rookFrom];
+                removePiece(rookFrom);
+                addPiece(rook, to > from ? from + 1 : from - 1);
+            }
+        }
+
+        int newRights = castleRights & CASTLE_MASK[from] & CASTLE_MASK[to];
+        hash ^= CASTLE_HASH[castleRights] ^ CASTLE_HASH[newRights];
+        castleRights = newRights;
+
+        if (type == PAWN && (to - from == 16 || from - to == 16)) {
+            enPassantColumn = to & 7;
+            hash ^= ZobristHash.enPassantKey(enPassantColumn);
+        }
+
+        sideToMove ^= 1;
+        hash ^= ZobristHash.blackToMoveKey();
+    }
+
+    public void unmake(int move) {
+        historyLength--;
+        int from = from(move);
+        int to = to(move);
+        sideToMove ^= 1;
+        int team = sideToMove;
+        int placed = board[to];
+        int piece = (promotion(move) >= 0 ? team * 6 + PAWN : placed);
+        int captured = capturedHistory[historyLength];
+
+        board[from] = piece;
+        board[to] = captured;
+        if (captured != EMPTY) {
+            pieceCount++;
+        } else if (piece % 6 == PAWN && (from & 7) != (to & 7)) {
+            board[to + (team == WHITE ? -8 : 8)] = (team ^ 1) * 6 + PAWN;
+            pieceCount++;
+        }
+        if (piece % 6 == KING) {
+            kingSquares[team] = from;
+            if (to - from == 2 || from - to == 2) {
+                int rookFrom = (to > from ? from + 3 : from - 4);
+                int rookTo = (to > from ? from + 1 : from - 1);
+                board[rookFrom] = board[rookTo];
+                board[rookTo] = EMPTY;
+            }
+        }
+
+        castleRights = castleHistory[historyLength];
+        enPassantColumn = enPassantHistory[historyLength];
+        hash = hashHistory[historyLength];
+        midgameScore = midgameHistory[historyLength];
+        endgameScore = endgameHistory[historyLength];
+        phase = phaseHistory[historyLength];
+    }
+
+    public boolean inCheck() {
+        return isAttacked(kingSquares[sideToMove], sideToMove ^ 1);
+    }
+
+    /**
+     * @return whether the last move made left the mover's own king attacked
+     */
+    public boolean leftKingInCheck() {
+        return isAttacked(kingSquares[sideToMove ^ 1], sideToMove);
+    }
+
+    public boolean isAttacked(int square, int byTeam) {
+        for (int attacker : PAWN_ATTACKS[byTeam ^ 1][square]) {
+            if (board[attacker] == byTeam * 6 + PAWN) {
+                return true;
+            }
+        }
+        for (int attacker : KNIGHT_TARGETS[square]) {
+            if (board[attacker] == byTeam * 6 + KNIGHT) {
+                return true;
+            }
+        }
+        for (int attacker : KING_TARGETS[square]) {
+            if (board[attacker] == byTeam * 6 + KING) {
+                return true;
+            }
+        }
+        for (int direction = 0; direction < 8; direction++) {
+            int slider = byTeam * 6 + (direction < 4 ? ROOK : BISHOP);
+            int queen = byTeam * 6 + QUEEN;
+            for (int target : RAYS[direction][square]) {
+                int piece = board[target];
+                if (piece != EMPTY) {
+                    if (piece == slider || piece == queen) {
+                        return true;
+                    }
+                    break;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the least valuable piece of a team attacking a square, seeing through pieces
+     * already taken off in an exchange on that square.
+     *
+     * @param removed bits of squares to treat as empty
+     * @return the attacker's square, or -1 if there is none
+     */
+    int leastValuableAttacker(int square, int team, long removed) {
+        for (int attacker : PAWN_ATTACKS[team ^ 1][square]) {
+            if (board[attacker] == team * 6 + PAWN && (removed & (1L << attacker)) == 0) {
+                return attacker;
+            }
+        }
+        for (int attacker : KNIGHT_TARGETS[square]) {
+            if (board[attacker] == team * 6 + KNIGHT && (removed & (1L << attacker)) == 0) {
+                return attacker;
+            }
+        }
+        //Diagonal sliders are found first, which puts bishops ahead of rooks
+        int best = -1;
+        for (int direction = 7; direction >= 0; direction--) {
+            for (int target : RAYS[direction][square]) {
+                int piece = board[target];
+                if (piece == EMPTY || (removed & (1L << target)) != 0) {
+                    continue;
+                }
+                int slider = team * 6 + (direction < 4 ? ROOK : BISHOP);
+                if (piece == slider) {
+                    if (direction >= 4) {
+                        return target;
+                    }
+                    if (best < 0 || board[best] % 6 == QUEEN) {
+                        best = target;
+                    }
+                } else if (piece == team * 6 + QUEEN && best < 0) {
+                    best = target;
+                }
+                break;
+            }
+        }
+        if (best >= 0) {
+            return best;
+        }
+        for (int attacker : KING_TARGETS[square]) {
+            if (board[attacker] == team * 6 + KING && (removed & (1L << attacker)) == 0) {
+                return attacker;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Fills the array with moves that follow the piece rules but may leave the mover's king
+     * in check. Make each one and check {@link #leftKingInCheck()} to find the legal ones.
+     *
+     * @param capturesOnly only generate captures and queen promotions
+     * @return how many moves were generated
+     */
+    public int generateMoves(int[] moves, boolean capturesOnly) {
+        int count = 0;
+        int us = sideToMove;
+        for (int from = 0; from < 64; from++) {
+            int piece = board[from];
+            if (piece == EMPTY || piece / 6 != us) {
+                continue;
+            }
+            switch (piece % 6) {
+                case PAWN -> count = pawnMoves(moves, count, from, capturesOnly);
+                case KNIGHT -> count = stepMoves(moves, count, from, KNIGHT_TARGETS[from], capturesOnly);
+                case KING -> {
+                    count = stepMoves(moves, count, from, KING_TARGETS[from], capturesOnly);
+                    if (!capturesOnly) {
+                        count = castleMoves(moves, count, from);
+                    }
+                }
+                case BISHOP -> count = slideMoves(moves, count, from, 4, 8, capturesOnly);
+                case ROOK -> count = slideMoves(moves, count, from, 0, 4, capturesOnly);
+                case QUEEN -> count = slideMoves(moves, count, from, 0, 8, capturesOnly);
+                default -> {
+                }
+            }
+        }
+        return count;
+    }
+
+    private int stepMoves(int[] moves, int count, int from, int[] targets, boolean capturesOnly) {
+        for (int to : targets) {
+            int target = board[to];
+            if (target == EMPTY ? !capturesOnly : target / 6 != sideToMove) {
+                moves[count++] = move(from, to, -1);
+            }
+        }
+        return count;
+    }
+
+    private int slideMoves(int[] moves, int count, int from, int firstDirection, int lastDirection,
+                           boolean capturesOnly) {
+        for (int direction = firstDirection; direction < lastDirection; direction++) {
+            for (int to : RAYS[direction][from]) {
+                int target = board[to];
+                if (target == EMPTY) {
+                    if (!capturesOnly) {
+                        moves[count++] = move(from, to, -1);
+                    }
+                } else {
+                    if (target / 6 != sideToMove) {
+                        moves[count++] = move(from, to, -1);
+                    }
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    private int pawnMoves(int[] moves, int count, int from, boolean capturesOnly) {
+        int us = sideToMove;
+        int forward = (us == WHITE ? 8 : -8);
+        int promotionRow = (us == WHITE ? 7 : 0);
+        int startRow = (us == WHITE ? 1 : 6);
+        int to = from + forward;
+        if (board[to] == EMPTY) {
+            if (to / 8 == promotionRow) {
+                count = promotions(moves, count, from, to, capturesOnly);
+            } else if (!capturesOnly) {
+                moves[count++] = move(from, to, -1);
+                if (from / 8 == startRow && board[to + forward] == EMPTY) {
+                    moves[count++] = move(from, to + forward, -1);
+                }
+            }
+        }
+        int enPassantSquare = (enPassantColumn < 0 ? -1 : (us == WHITE ? 40 : 16) + enPassantColumn);
+        for (int target : PAWN_ATTACKS[us][from]) {
+            int captured = board[target];
+            if (captured != EMPTY && captured / 6 != us) {
+                if (target / 8 == promotionRow) {
+                    count = promotions(moves, count, from, target, capturesOnly);
+                } else {
+                    moves[count++] = move(from, target, -1);
+                }
+            } else if (target == enPassantSquare && captured == EMPTY) {
+                moves[count++] = move(from, target, -1);
+            }
+        }
+        return count;
+    }
+
+    private int promotions(int[] moves, int count, int from, int to, boolean capturesOnly) {
+        moves[count++] = move(from, to, QUEEN);
+        if (!capturesOnly) {
+            moves[count++] = move(from, to, ROOK);
+            moves[count++] = move(from, to, BISHOP);
+            moves[count++] = move(from, to, KNIGHT);
+        }
+        return count;
+    }
+
+    private int castleMoves(int[] moves, int count, int from) {
+        int us = sideToMove;
+        int home = (us == WHITE ? 4 : 60);
+        if (from != home) {
+            return count;
+        }
+        int kingside = (us == WHITE ? WHITE_KINGSIDE : BLACK_KINGSIDE);
+        int queenside = (us == WHITE ? WHITE_QUEENSIDE : BLACK_QUEENSIDE);
+        int them = us ^ 1;
+        if ((castleRights & (kingside | queenside)) == 0 || isAttacked(home, them)) {
+            return count;
+        }
+        if ((castleRights & kingside) != 0 && board[home + 1] == EMPTY && board[home + 2] == EMPTY &&
+                !isAttacked(home + 1, them) && !isAttacked(home + 2, them)) {
+            moves[count++] = move(home, home + 2, -1);
+        }
+        //ChessGame also won't castle queenside past an attacked b-file square, so neither do we
+        if ((castleRights & queenside) != 0 && board[home - 1] == EMPTY && board[home - 2] == EMPTY &&
+                board[home - 3] == EMPTY && !isAttacked(home - 1, them) && !isAttacked(home - 2, them) &&
+                !isAttacked(home - 3, them)) {
+            moves[count++] = move(home, home - 2, -1);
+        }
+        return count;
+    }
+
+    /**
+     * Generates into the array and filters it in place, so nothing is allocated.
+     *
+     * @return how many legal moves were put in the array
+     */
+    public int legalMoves(int[] moves) {
+        int count = generateMoves(moves, false);
+        int legal = 0;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            make(move);
+            if (!leftKingInCheck()) {
+                moves[legal++] = move;
+            }
+            unmake(move);
+        }
+        return legal;
+    }
+}
@@ -0,0 +1,285 @@
+package engine;
+
+import chess.ChessGame;
+import chess.ChessMove;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the best move in a position with an iterative deepening alpha-beta search. Each
+ * iteration searches one ply deeper than the last, trying the previous iteration's
+ * principal variation first, and ends in a quiescence search of captures so positions
+ * are only scored once they are quiet. Results are kept in a {@link TranspositionTable},
+ * which cuts off positions reached again and supplies a best move to try first, and the
+ * rest of the moves are ordered by a {@link MoveOrderer}. Given a {@link Tablebase},
+ * endgames it covers are scored from it instead of being searched.
+ * <p>
+ * A search object keeps its buffers between searches, so reuse one instead of making a
+ * new one per move, but only use it from one thread at a time.
+ */
+public class Search {
+
+    public static final int MAX_PLY = 128;
+    public static final int MATE = 32000;
+    //Scores at least this far from 0 mean a forced mate
+    public static final int MATE_BOUND = MATE - MAX_PLY;
+
+    private static final int INFINITY = MATE + 1;
+    //How many nodes to visit between checks of the clock
+    private static final int CLOCK_INTERVAL = 1024;
+
+    private final TranspositionTable table;
+    private final MoveOrderer orderer = new MoveOrderer();
+    private final int[][] moves = new int[MAX_PLY][Position.MAX_MOVES];
+    //Triangular table: pv[ply] is the best line found from that ply
+    private final int[][] pv = new int[MAX_PLY][MAX_PLY];
+    private final int[] pvLength = new int[MAX_PLY];
+    private int[] previousPv = new int[0];
+    private boolean followPv;
+
+    private volatile boolean stopped;
+    private boolean aborted;
+    private int completedDepth;
+    private long nodes;
+    private long maxNodes;
+    private long deadline;
+    private Tablebase tablebase;
+
+    public Search() {
+        this(new TranspositionTable());
+    }
+
+    public Search(TranspositionTable table) {
+        this.table = table;
+    }
+
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    public MoveOrderer getOrderer() {
+        return orderer;
+    }
+
+    /**
+     * @param tablebase exact results to use for endgames it covers, or null to search them
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    public SearchResult search(ChessGame game, SearchLimits limits) {
+        return search(Position.fromGame(game), limits);
+    }
+
+    /**
+     * Searches until a limit is reached or {@link #stop()} is called. At least one full
+     * iteration is always finished, so there is a move to play whenever one exists.
+     */
+    public SearchResult search(Position root, SearchLimits limits) {
+        stopped = false;
+        table.newSearch();
+        return run(root, limits, 0);
+    }
+
+    /**
+     * Runs a search without starting a new table generation or clearing a stop.
+     *
+     * @param depthOffset plies added to every iteration's depth, so helper threads of a
+     *                    parallel search work ahead of the main one
+     */
+    SearchResult run(Position root, SearchLimits limits, int depthOffset) {
+        Position position = root.copy();
+        long start = System.nanoTime();
+        aborted = false;
+        completedDepth = 0;
+        previousPv = new int[0];
+        orderer.newSearch();
+        nodes = 0;
+        maxNodes = limits.maxNodes();
+        deadline = (limits.maxMillis() > 0 ? start + limits.maxMillis() * 1_000_000 : 0);
+        int maxDepth = (limits.maxDepth() > 0 ? Math.min(limits.maxDepth(), MAX_PLY - 1) : MAX_PLY - 1);
+
+        int bestScore = 0;
+        for (int depth = Math.min(1 + depthOffset, maxDepth); depth <= maxDepth; depth++) {
+            followPv = true;
+            int score = alphaBeta(position, depth, -INFINITY, INFINITY, 0);
+            if (aborted) {
+                break;
+            }
+            completedDepth = depth;
+            bestScore = score;
+            previousPv = Arrays.copyOf(pv[0], pvLength[0]);
+            //Nothing more to learn once there are no moves or a mate is within reach
+            if (pvLength[0] == 0 || (Math.abs(score) >= MATE_BOUND && MATE - Math.abs(score) <= depth)) {
+                break;
+            }
+        }
+
+        List<ChessMove> line = new ArrayList<>(previousPv.length);
+        for (int move : previousPv) {
+            line.add(Position.toChessMove(move));
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        return new SearchResult(line.isEmpty() ? null : line.getFirst(), bestScore, completedDepth, nodes, millis,
+                line);
+    }
+
+    /**
+     * Stops a search running on another thread. It returns the result of its last finished
+     * iteration.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    void clearStop() {
+        stopped = false;
+    }
+
+    private int alphaBeta(Position position, int depth, int alpha, int beta, int ply) {
+        pvLength[ply] = 0;
+        if (depth <= 0 || ply >= MAX_PLY - 1) {
+            return quiescence(position, alpha, beta, ply);
+        }
+        if (outOfBudget()) {
+            return 0;
+        }
+        nodes++;
+
+        //The root still searches, so there is a move to play
+        if (tablebase != null && ply > 0 && position.pieceCount() <= tablebase.maxPieces()) {
+            Tablebase.Result result = tablebase.probe(position);
+            if (result != null) {
+                return result.score(ply);
+            }
+        }
+
+        long entry = table.probe(position.hash());
+        int hashMove = 0;
+        if (entry != 0) {
+            hashMove = TranspositionTable.move(entry);
+            //Not at the root, which has to come up with a principal variation
+            if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                int score = TranspositionTable.score(entry, ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT || (bound == TranspositionTable.LOWER && score >= beta) ||
+                        (bound == TranspositionTable.UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        int[] plyMoves = moves[ply];
+        int count = position.generateMoves(plyMoves, false);
+        orderer.score(position, plyMoves, count, ply, pvMove(ply, plyMoves, count, hashMove));
+        int originalAlpha = alpha;
+        int bestMove = 0;
+        int legal = 0;
+        for (int i = 0; i < count; i++) {
+            int move = orderer.next(plyMoves, count, i, ply);
+            position.make(move);
+            if (position.leftKingInCheck()) {
+                position.unmake(move);
+                continue;
+            }
+            legal++;
+            int score = -alphaBeta(position, depth - 1, -beta, -alpha, ply + 1);
+            position.unmake(move);
+            if (aborted) {
+                return 0;
+            }
+            if (score > alpha) {
+                alpha = score;
+                bestMove = move;
+                updatePv(ply, move);
+                if (score >= beta) {
+                    orderer.cutoff(position, move, depth, ply, legal - 1);
+                    table.store(position.hash(), move, score, depth, TranspositionTable.LOWER, ply);
+                    return score;
+                }
+            }
+        }
+        if (legal == 0) {
+            return position.inCheck() ? -MATE + ply : 0;
+        }
+        table.store(position.hash(), bestMove, alpha, depth,
+                alpha > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER, ply);
+        return alpha;
+    }
+
+    private int quiescence(Position position, int alpha, int beta, int ply) {
+        pvLength[ply] = 0;
+        if (outOfBudget()) {
+            return 0;
+        }
+        nodes++;
+
+        int standPat = Evaluator.evaluate(position);
+        if (standPat >= beta || ply >= MAX_PLY - 1) {
+            return standPat;
+        }
+        alpha = Math.max(alpha, standPat);
+
+        int[] plyMoves = moves[ply];
+        int count = position.generateMoves(plyMoves, true);
+        orderer.score(position, plyMoves, count, ply, 0);
+        for (int i = 0; i < count; i++) {
+            int move = orderer.next(plyMoves, count, i, ply);
+            //Captures that lose material won't raise alpha, and the rest are ordered after them
+            if (orderer.isLosingCapture(ply, i)) {
+                break;
+            }
+            position.make(move);
+            if (position.leftKingInCheck()) {
+                position.unmake(move);
+                continue;
+            }
+            int score = -quiescence(position, -beta, -alpha, ply + 1);
+            position.unmake(move);
+            if (aborted) {
+                return 0;
+            }
+            if (score > alpha) {
+                alpha = score;
+                updatePv(ply, move);
+                if (score >= beta) {
+                    return score;
+                }
+            }
+        }
+        return alpha;
+    }
+
+    private boolean outOfBudget() {
+        if (completedDepth == 0) {
+            return false;
+        }
+        if (!aborted) {
+            aborted = stopped || (maxNodes > 0 && nodes >= maxNodes) ||
+                    (deadline > 0 && nodes % CLOCK_INTERVAL == 0 && System.nanoTime() >= deadline);
+        }
+        return aborted;
+    }
+
+    private void updatePv(int ply, int move) {
+        pv[ply][ply] = move;
+        System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1, pvLength[ply + 1]);
+        pvLength[ply] = pvLength[ply + 1] + 1;
+    }
+
+    //The last iteration's principal variation move while still on it, otherwise the hash move
+    private int pvMove(int ply, int[] plyMoves, int count, int hashMove) {
+        int pvMove = (followPv && ply < previousPv.length ? previousPv[ply] : 0);
+        followPv = false;
+        for (int i = 0; i < count && pvMove != 0; i++) {
+            if (plyMoves[i] == pvMove) {
+                followPv = true;
+                return pvMove;
+            }
+        }
+        return hashMove;
+    }
+}
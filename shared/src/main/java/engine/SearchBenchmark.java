@@ -0,0 +1,49 @@
+package engine;
+
+/**
+ * Measures how parallel search scales: searches a few positions to a fixed depth with 1,
+ * 2, 4, ... threads up to the number of cores, and prints the time to depth, nodes per
+ * second and speedup over one thread.
+ * <p>
+ * Usage: {@code SearchBenchmark [depth] [max threads] [table MB]}
+ */
+public class SearchBenchmark {
+
+    private static final String[] POSITIONS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP3PPP/R2QKB1R w KQ - 0 8",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+    };
+
+    public static void main(String[] args) {
+        int depth = (args.length > 0 ? Integer.parseInt(args[0]) : 7);
+        int maxThreads = (args.length > 1 ? Integer.parseInt(args[1]) : ParallelSearch.defaultThreads());
+        int megabytes = (args.length > 2 ? Integer.parseInt(args[2]) : 64);
+
+        System.out.printf("%-8s %10s %14s %10s %8s%n", "threads", "millis", "nodes/s", "hit rate", "speedup");
+        long baseline = 0;
+        for (int threads = 1; threads <= maxThreads; threads = (threads * 2 > maxThreads && threads < maxThreads ?
+                maxThreads : threads * 2)) {
+            long millis = 0;
+            long nodes = 0;
+            long probes = 0;
+            long hits = 0;
+            for (String fen : POSITIONS) {
+                TranspositionTable table = new TranspositionTable(megabytes);
+                try (ParallelSearch search = new ParallelSearch(threads, table)) {
+                    SearchResult result = search.search(Position.fromFen(fen), SearchLimits.depth(depth));
+                    millis += result.millis();
+                    nodes += result.nodes();
+                    probes += table.probes();
+                    hits += table.hits();
+                }
+            }
+            if (threads == 1) {
+                baseline = millis;
+            }
+            System.out.printf("%-8d %10d %14d %9.1f%% %7.2fx%n", threads, millis, nodes * 1000 / Math.max(1, millis),
+                    100.0 * hits / Math.max(1, probes), (double) baseline / Math.max(1, millis));
+        }
+    }
+}
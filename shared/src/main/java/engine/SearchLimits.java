@@ -0,0 +1,24 @@
+package engine;
+
+/**
+ * When a search should stop. The search stops at whichever limit it reaches first, and
+ * a limit of 0 means no limit.
+ *
+ * @param maxDepth  the deepest iteration to search, in plies
+ * @param maxNodes  the most positions to visit
+ * @param maxMillis the most time to spend
+ */
+public record SearchLimits(int maxDepth, long maxNodes, long maxMillis) {
+
+    public static SearchLimits depth(int maxDepth) {
+        return new SearchLimits(maxDepth, 0, 0);
+    }
+
+    public static SearchLimits nodes(long maxNodes) {
+        return new SearchLimits(0, maxNodes, 0);
+    }
+
+    public static SearchLimits millis(long maxMillis) {
+        return new SearchLimits(0, 0, maxMillis);
+    }
+}
@@ -0,0 +1,28 @@
+package engine;
+
+import chess.ChessMove;
+
+import java.util.List;
+
+/**
+ * What a search found.
+ *
+ * @param bestMove            the move to play, or null if there are no legal moves
+ * @param score               centipawns from the point of view of the team to move. Mate scores
+ *                            are beyond {@link Search#MATE_BOUND}.
+ * @param depth               the deepest iteration that finished
+ * @param nodes               how many positions were visited
+ * @param millis              how long the search took
+ * @param principalVariation  the line the search expects, starting with the best move
+ */
+public record SearchResult(ChessMove bestMove, int score, int depth, long nodes, long millis,
+                           List<ChessMove> principalVariation) {
+
+    public long nodesPerSecond() {
+        return nodes * 1000 / Math.max(1, millis);
+    }
+
+    public boolean isMate() {
+        return Math.abs(score) >= Search.MATE_BOUND;
+    }
+}
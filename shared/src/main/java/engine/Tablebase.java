@@ -0,0 +1,309 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exact results for endgames with few pieces, read from the memory-mapped tables
+ * {@link TablebaseGenerator} writes: for every placement of an endgame's pieces and either
+ * side to move, whether the side to move wins, draws or loses, and in how many plies the
+ * mate comes.
+ * <p>
+ * A table is named by its material, white's pieces then black's, like {@code KQvK} or
+ * {@code KRvKP}, and holds one byte per position. Only one of each pair of mirror-image
+ * endgames is stored (KQvK, not KvKQ); the other is probed with the colors swapped and the
+ * board flipped. Positions with castling rights or a possible en passant capture aren't
+ * in the tables.
+ */
+public class Tablebase implements AutoCloseable {
+
+    public static final String EXTENSION = ".tb";
+    public static final int MAX_PIECES = 4;
+
+    static final int MAGIC = 0x43485442;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int COUNT_OFFSET = 8;
+    static final int PIECES_OFFSET = 12;
+
+    //Stored values: 0 is a draw, plies to mate + 1 otherwise
+    static final int DRAW = 0;
+    static final int ILLEGAL = 255;
+
+    //Piece letters in the order they're named, strongest first
+    static final String NAME_ORDER = "KQRBNP";
+    private static final String TYPE_LETTERS = "KQBNRP";
+    //Indexed by piece type, for deciding which side of an endgame is the stronger one
+    private static final int[] STRENGTH = {0, 9, 3, 3, 5, 1};
+
+    public enum Outcome {
+        WIN,
+        DRAW,
+        LOSS
+    }
+
+    /**
+     * @param outcome     for the team to move
+     * @param pliesToMate how many plies until mate with best play, or 0 for a draw
+     */
+    public record Result(Outcome outcome, int pliesToMate) {
+
+        /**
+         * @return the result as a search score at the ply, in the same scale as the
+         * search's mate scores
+         */
+        public int score(int ply) {
+            return switch (outcome) {
+                case WIN -> Search.MATE - ply - pliesToMate;
+                case LOSS -> -Search.MATE + ply + pliesToMate;
+                case DRAW -> 0;
+            };
+        }
+    }
+
+    private record Table(FileChannel channel, MappedByteBuffer mapped, int[] pieces) {}
+
+    private final Path directory;
+    private final int maxPieces;
+    private final ConcurrentHashMap<String, Optional<Table>> tables = new ConcurrentHashMap<>();
+
+    private Tablebase(Path directory, int maxPieces) {
+        this.directory = directory;
+        this.maxPieces = maxPieces;
+    }
+
+    /**
+     * Opens the tables in a directory. Each table is only mapped the first time a position
+     * from it is probed.
+     */
+    public static Tablebase open(Path directory) throws IOException {
+        int maxPieces = 2;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                maxPieces = Math.max(maxPieces, name.length() - EXTENSION.length() - 1);
+            }
+        }
+        return new Tablebase(directory, Math.min(maxPieces, MAX_PIECES));
+    }
+
+    /**
+     * @return the most pieces of any table in the directory
+     */
+    public int maxPieces() {
+        return maxPieces;
+    }
+
+    /**
+     * @return the exact result of the position, or null if no table covers it
+     */
+    public Result probe(Position position) {
+        int count = position.pieceCount();
+        if (count > maxPieces || position.castleRights() != 0 || enPassantPossible(position)) {
+            return null;
+        }
+        if (count == 2) {
+            return new Result(Outcome.DRAW, 0);
+        }
+        String signature = signature(position);
+        boolean mirrored = !isCanonical(signature);
+        Table table = table(mirrored ? mirror(signature) : signature);
+        if (table == null) {
+            return null;
+        }
+        int value = table.mapped().get(HEADER_SIZE + index(table.pieces(), position, mirrored)) & 0xff;
+        if (value == ILLEGAL) {
+            return null;
+        }
+        return decode(value);
+    }
+
+    static Result decode(int value) {
+        if (value == DRAW) {
+            return new Result(Outcome.DRAW, 0);
+        }
+        int plies = value - 1;
+        return new Result(plies % 2 == 1 ? Outcome.WIN : Outcome.LOSS, plies);
+    }
+
+    private Table table(String signature) {
+        return tables.computeIfAbsent(signature, name -> {
+            Path path = directory.resolve(name + EXTENSION);
+            if (!Files.exists(path)) {
+                return Optional.empty();
+            }
+            try {
+                FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int[] pieces = readHeader(mapped, channel.size());
+                if (pieces == null || !signature(pieces).equals(name)) {
+                    channel.close();
+                    System.out.println(path + " is not a tablebase table");
+                    return Optional.empty();
+                }
+                return Optional.of(new Table(channel, mapped, pieces));
+            } catch (IOException ex) {
+                System.out.println(ex.getMessage());
+                return Optional.empty();
+            }
+        }).orElse(null);
+    }
+
+    /**
+     * @return the table's pieces, or null if the header doesn't match the format
+     */
+    static int[] readHeader(ByteBuffer buffer, long size) {
+        if (size < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            return null;
+        }
+        int count = buffer.getInt(COUNT_OFFSET);
+        if (count < 3 || count > MAX_PIECES || size != HEADER_SIZE + tableSize(count)) {
+            return null;
+        }
+        int[] pieces = new int[count];
+        for (int i = 0; i < count; i++) {
+            pieces[i] = buffer.get(PIECES_OFFSET + i);
+        }
+        return pieces;
+    }
+
+    //Both sides to move, and every square for every piece
+    static int tableSize(int pieces) {
+        return 2 << (6 * pieces);
+    }
+
+    /**
+     * Works out where a position is in a table. Pieces of the same kind fill the table's
+     * slots in square order.
+     *
+     * @param mirrored whether to look the position up with the colors swapped and the
+     *                 board flipped
+     */
+    static int index(int[] pieces, Position position, boolean mirrored) {
+        int flip = (mirrored ? 1 : 0);
+        int index = position.sideToMove() ^ flip;
+        long used = 0;
+        for (int piece : pieces) {
+            int wanted = (mirrored ? (piece + 6) % 12 : piece);
+            int square = 0;
+            while (position.pieceAt(square) != wanted || (used & (1L << square)) != 0) {
+                square++;
+            }
+            used |= 1L << square;
+            index = (index << 6) | (mirrored ? square ^ 56 : square);
+        }
+        return index;
+    }
+
+    /**
+     * @return the material of the position, like {@code KRvKP}
+     */
+    static String signature(Position position) {
+        List<Integer> pieces = new ArrayList<>();
+        for (int square = 0; square < 64; square++) {
+            if (position.pieceAt(square) != Position.EMPTY) {
+                pieces.add(position.pieceAt(square));
+            }
+        }
+        return signature(pieces.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    static String signature(int[] pieces) {
+        StringBuilder white = new StringBuilder();
+        StringBuilder black = new StringBuilder();
+        for (int piece : pieces) {
+            (piece / 6 == Position.WHITE ? white : black).append(TYPE_LETTERS.charAt(piece % 6));
+        }
+        return sorted(white) + "v" + sorted(black);
+    }
+
+    private static String sorted(CharSequence letters) {
+        StringBuilder sorted = new StringBuilder();
+        for (char letter : NAME_ORDER.toCharArray()) {
+            for (int i = 0; i < letters.length(); i++) {
+                if (letters.charAt(i) == letter) {
+                    sorted.append(letter);
+                }
+            }
+        }
+        return sorted.toString();
+    }
+
+    /**
+     * @return the table's pieces, white's then black's, in name order
+     */
+    static int[] pieces(String signature) {
+        int split = signature.indexOf('v');
+        int[] pieces = new int[signature.length() - 1];
+        for (int i = 0, slot = 0; i < signature.length(); i++) {
+            if (i != split) {
+                int team = (i < split ? Position.WHITE : Position.BLACK);
+                pieces[slot++] = team * 6 + TYPE_LETTERS.indexOf(signature.charAt(i));
+            }
+        }
+        return pieces;
+    }
+
+    static String mirror(String signature) {
+        int split = signature.indexOf('v');
+        return signature.substring(split + 1) + "v" + signature.substring(0, split);
+    }
+
+    /**
+     * @return whether the endgame is stored as named rather than mirrored: white has the
+     * stronger side, or the sides are equal
+     */
+    static boolean isCanonical(String signature) {
+        int split = signature.indexOf('v');
+        String white = signature.substring(0, split);
+        String black = signature.substring(split + 1);
+        int compare = Integer.compare(strength(white), strength(black));
+        if (compare == 0) {
+            compare = Integer.compare(white.length(), black.length());
+        }
+        for (int i = 0; compare == 0 && i < white.length(); i++) {
+            compare = Integer.compare(NAME_ORDER.indexOf(black.charAt(i)), NAME_ORDER.indexOf(white.charAt(i)));
+        }
+        return compare >= 0;
+    }
+
+    private static int strength(String side) {
+        int strength = 0;
+        for (char letter : side.toCharArray()) {
+            strength += STRENGTH[TYPE_LETTERS.indexOf(letter)];
+        }
+        return strength;
+    }
+
+    //Whether the team to move has a pawn that could take en passant
+    private static boolean enPassantPossible(Position position) {
+        int column = position.enPassantColumn();
+        if (column < 0) {
+            return false;
+        }
+        int team = position.sideToMove();
+        int row = (team == Position.WHITE ? 4 : 3);
+        int pawn = team * 6 + Position.PAWN;
+        return (column > 0 && position.pieceAt(row * 8 + column - 1) == pawn) ||
+                (column < 7 && position.pieceAt(row * 8 + column + 1) == pawn);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Optional<Table> table : tables.values()) {
+            if (table.isPresent()) {
+                table.get().channel().close();
+            }
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds {@link Tablebase} tables by retrograde analysis.
+ * <p>
+ * A first pass over every position of the endgame finds the checkmates and stalemates,
+ * counts the moves that stay in the endgame, and looks up the moves that leave it (captures
+ * and promotions) in the smaller tables, which are built first. Then, one ply at a time
+ * outwards from the mates, each position whose result became known is taken back a move:
+ * a position with a move into a loss for the opponent is a win, and a position whose every
+ * move is a win for the opponent is a loss. Positions never reached this way are draws.
+ * <p>
+ * En passant captures aren't considered.
+ * <p>
+ * Usage: {@code TablebaseGenerator <directory> <endgame or piece count>...}, for example
+ * {@code TablebaseGenerator tables KQvK KRvK KPvK} or {@code TablebaseGenerator tables 3 4}
+ */
+public class TablebaseGenerator {
+
+    //In the exits array: a move out of the endgame draws, so the position can't be lost
+    private static final int DRAWING_EXIT = 255;
+    private static final int MAX_PLIES = 253;
+
+    private final Path directory;
+    //Finished tables by name, kept for looking up moves out of bigger endgames
+    private final Map<String, byte[]> tables = new HashMap<>();
+
+    public TablebaseGenerator(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Builds the table for an endgame, like {@code KQvK}, and every smaller one it can turn
+     * into, skipping tables that are already in the directory.
+     *
+     * @return the name of the table, which is the mirror image of the endgame if that's
+     * how it's stored
+     */
+    public String generate(String endgame) throws IOException {
+        String name = (Tablebase.isCanonical(endgame) ? endgame : Tablebase.mirror(endgame));
+        if (tables.containsKey(name)) {
+            return name;
+        }
+        int[] pieces = Tablebase.pieces(name);
+        if (pieces.length < 3 || pieces.length > Tablebase.MAX_PIECES || !Tablebase.signature(pieces).equals(name) ||
+                count(pieces, Position.KING) != 2 || pieces[0] != Position.KING) {
+            throw new IllegalArgumentException("not an endgame with 3 to " + Tablebase.MAX_PIECES + " pieces: " +
+                    endgame);
+        }
+        Path path = directory.resolve(name + Tablebase.EXTENSION);
+        if (Files.exists(path)) {
+            byte[] file = Files.readAllBytes(path);
+            if (Tablebase.readHeader(ByteBuffer.wrap(file), file.length) == null) {
+                throw new IOException(path + " is not a tablebase table");
+            }
+            tables.put(name, Arrays.copyOfRange(file, Tablebase.HEADER_SIZE, file.length));
+            return name;
+        }
+        for (String smaller : exits(pieces)) {
+            generate(smaller);
+        }
+        byte[] values = build(pieces);
+        write(path, pieces, values);
+        tables.put(name, values);
+        return name;
+    }
+
+    /**
+     * @return the names of every endgame with the number of pieces, kings included, each
+     * mirrored pair once
+     */
+    public static List<String> endgames(int pieceCount) {
+        Set<String> names = new LinkedHashSet<>();
+        addEndgames(new ArrayList<>(List.of(Position.KING, 6 + Position.KING)), pieceCount - 2, names);
+        return new ArrayList<>(names);
+    }
+
+    private static void addEndgames(List<Integer> pieces, int left, Set<String> names) {
+        if (left == 0) {
+            String name = Tablebase.signature(pieces.stream().mapToInt(Integer::intValue).toArray());
+            names.add(Tablebase.isCanonical(name) ? name : Tablebase.mirror(name));
+            return;
+        }
+        for (int piece = 0; piece < 12; piece++) {
+            if (piece % 6 != Position.KING) {
+                pieces.add(piece);
+                addEndgames(pieces, left - 1, names);
+                pieces.removeLast();
+            }
+        }
+    }
+
+    private static int count(int[] pieces, int type) {
+        int count = 0;
+        for (int piece : pieces) {
+            if (piece % 6 == type) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    //The endgames a move can turn this one into: a capture, a promotion, or both at once
+    private static Set<String> exits(int[] pieces) {
+        Set<String> exits = new LinkedHashSet<>();
+        for (int captured = -1; captured < pieces.length; captured++) {
+            if (captured >= 0 && pieces[captured] % 6 == Position.KING) {
+                continue;
+            }
+            for (int promoted = -1; promoted < pieces.length; promoted++) {
+                if (promoted == captured || (promoted >= 0 && pieces[promoted] % 6 != Position.PAWN) ||
+                        (captured < 0 && promoted < 0)) {
+                    continue;
+                }
+                for (int type : new int[]{Position.QUEEN, Position.ROOK, Position.BISHOP, Position.KNIGHT}) {
+                    List<Integer> left = new ArrayList<>();
+                    for (int i = 0; i < pieces.length; i++) {
+                        if (i == promoted) {
+                            left.add(pieces[i] / 6 * 6 + type);
+                        } else if (i != captured) {
+                            left.add(pieces[i]);
+                        }
+                    }
+                    if (left.size() > 2) {
+                        exits.add(Tablebase.signature(left.stream().mapToInt(Integer::intValue).toArray()));
+                    }
+                    if (promoted < 0) {
+                        break;
+                    }
+                }
+            }
+        }
+        return exits;
+    }
+
+    private byte[] build(int[] pieces) {
+        int count = pieces.length;
+        int size = Tablebase.tableSize(count);
+        //Plies to mate + 1 once known, 0 until then and for draws
+        byte[] values = new byte[size];
+        //Plies to mate + 1 the position is due to be settled at, if known yet
+        byte[] pending = new byte[size];
+        //Moves that stay in the endgame and haven't turned out to lose
+        byte[] remaining = new byte[size];
+        //The longest a move out of the endgame takes to lose + 1, or DRAWING_EXIT
+        byte[] exits = new byte[size];
+        int latest = 0;
+
+        Position position = Position.fromFen("8/8/8/8/8/8/8/8 w - -");
+        int[] squares = new int[count];
+        int[] moves = new int[Position.MAX_MOVES];
+        for (int index = 0; index < size; index++) {
+            int side = decode(index, count, squares);
+            if (!placeable(pieces, squares)) {
+                values[index] = (byte) Tablebase.ILLEGAL;
+                continue;
+            }
+            position.setPieces(pieces, squares, count, side);
+            if (position.isAttacked(position.kingSquare(side ^ 1), side)) {
+                values[index] = (byte) Tablebase.ILLEGAL;
+                continue;
+            }
+            int legal = 0;
+            int moveCount = position.generateMoves(moves, false);
+            for (int i = 0; i < moveCount; i++) {
+                int move = moves[i];
+                boolean exit = position.isCapture(move) || Position.promotion(move) >= 0;
+                position.make(move);
+                if (position.leftKingInCheck()) {
+                    position.unmake(move);
+                    continue;
+                }
+                legal++;
+                if (!exit) {
+                    remaining[index]++;
+                } else {
+                    int value = lookUp(position);
+                    if (value == Tablebase.DRAW) {
+                        exits[index] = (byte) DRAWING_EXIT;
+                    } else if ((value - 1) % 2 == 0) {
+                        //The opponent is mated in value - 1 plies
+                        latest = Math.max(latest, schedule(pending, index, value));
+                    } else if ((exits[index] & 0xff) != DRAWING_EXIT) {
+                        exits[index] = (byte) Math.max(exits[index] & 0xff, value);
+                    }
+                }
+                position.unmake(move);
+            }
+            if (legal == 0) {
+                if (position.inCheck()) {
+                    pending[index] = 1;
+                    latest = Math.max(latest, 1);
+                }
+            } else if (remaining[index] == 0 && pending[index] == 0 && (exits[index] & 0xff) != DRAWING_EXIT) {
+                //Every move leaves the endgame into a loss
+                pending[index] = (byte) ((exits[index] & 0xff) + 1);
+                latest = Math.max(latest, (exits[index] & 0xff) + 1);
+            }
+        }
+
+        int[] origins = new int[64];
+        for (int level = 1; level <= latest; level++) {
+            for (int index = 0; index < size; index++) {
+                if (values[index] != 0 || (pending[index] & 0xff) != level) {
+                    continue;
+                }
+                values[index] = (byte) level;
+                int side = decode(index, count, squares);
+                long occupied = 0;
+                for (int square : squares) {
+                    occupied |= 1L << square;
+                }
+                //Take back each move the other team could have made to get here
+                for (int slot = 0; slot < count; slot++) {
+                    if (pieces[slot] / 6 == side) {
+                        continue;
+                    }
+                    int originCount = origins(pieces[slot], squares[slot], occupied, origins);
+                    for (int i = 0; i < originCount; i++) {
+                        int shift = 6 * (count - 1 - slot);
+                        int previous = ((index & ~(63 << shift)) | (origins[i] << shift)) ^ (1 << (6 * count));
+                        if (values[previous] != 0) {
+                            continue;
+                        }
+                        if ((level - 1) % 2 == 0) {
+                            //A move into a loss for the opponent
+                            latest = Math.max(latest, schedule(pending, previous, level));
+                        } else if (--remaining[previous] == 0 && pending[previous] == 0 &&
+                                (exits[previous] & 0xff) != DRAWING_EXIT) {
+                            int loss = Math.max(level, exits[previous] & 0xff) + 1;
+                            pending[previous] = (byte) loss;
+                            latest = Math.max(latest, loss);
+                        }
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    //Marks the position as winning by a move into a loss in plies - 1, if that's its fastest win
+    private static int schedule(byte[] pending, int index, int lossValue) {
+        int win = lossValue + 1;
+        if (win > MAX_PLIES + 1) {
+            throw new IllegalStateException("mate too long to store");
+        }
+        if (pending[index] == 0 || (pending[index] & 0xff) > win) {
+            pending[index] = (byte) win;
+        }
+        return win;
+    }
+
+    //Fills the squares of each piece and returns the side to move
+    private static int decode(int index, int count, int[] squares) {
+        for (int slot = count - 1; slot >= 0; slot--) {
+            squares[slot] = index & 63;
+            index >>>= 6;
+        }
+        return index;
+    }
+
+    //No two pieces on one square, and no pawns on the first or last row
+    private static boolean placeable(int[] pieces, int[] squares) {
+        long occupied = 0;
+        for (int slot = 0; slot < pieces.length; slot++) {
+            long bit = 1L << squares[slot];
+            if ((occupied & bit) != 0) {
+                return false;
+            }
+            occupied |= bit;
+            if (pieces[slot] % 6 == Position.PAWN && (squares[slot] < 8 || squares[slot] >= 56)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //The squares a piece could have moved from to its square without capturing or promoting
+    private static int origins(int piece, int square, long occupied, int[] origins) {
+        int count = 0;
+        int type = piece % 6;
+        if (type == Position.PAWN) {
+            int step = (piece / 6 == Position.WHITE ? -8 : 8);
+            int from = square + step;
+            if (from >= 8 && from < 56 && (occupied & (1L << from)) == 0) {
+                origins[count++] = from;
+                int homeRow = (piece / 6 == Position.WHITE ? 1 : 6);
+                int doubleFrom = from + step;
+                if (doubleFrom / 8 == homeRow && (occupied & (1L << doubleFrom)) == 0) {
+                    origins[count++] = doubleFrom;
+                }
+            }
+            return count;
+        }
+        if (type == Position.KING || type == Position.KNIGHT) {
+            for (int from : (type == Position.KING ? Position.KING_TARGETS : Position.KNIGHT_TARGETS)[square]) {
+                if ((occupied & (1L << from)) == 0) {
+                    origins[count++] = from;
+                }
+            }
+            return count;
+        }
+        //Rays are orthogonal first, then diagonal
+        int first = (type == Position.BISHOP ? 4 : 0);
+        int last = (type == Position.ROOK ? 4 : 8);
+        for (int direction = first; direction < last; direction++) {
+            for (int from : Position.RAYS[direction][square]) {
+                if ((occupied & (1L << from)) != 0) {
+                    break;
+                }
+                origins[count++] = from;
+            }
+        }
+        return count;
+    }
+
+    //The value of a position just reached by a move out of the endgame being built
+    private int lookUp(Position position) {
+        if (position.pieceCount() == 2) {
+            return Tablebase.DRAW;
+        }
+        String signature = Tablebase.signature(position);
+        boolean mirrored = !Tablebase.isCanonical(signature);
+        String name = (mirrored ? Tablebase.mirror(signature) : signature);
+        byte[] table = tables.get(name);
+        return table[Tablebase.index(Tablebase.pieces(name), position, mirrored)] & 0xff;
+    }
+
+    private static void write(Path path, int[] pieces, byte[] values) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Tablebase.HEADER_SIZE);
+        header.putInt(0, Tablebase.MAGIC).putInt(4, Tablebase.FORMAT_VERSION).putInt(Tablebase.COUNT_OFFSET,
+                pieces.length);
+        for (int i = 0; i < pieces.length; i++) {
+            header.put(Tablebase.PIECES_OFFSET + i, (byte) pieces[i]);
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer body = ByteBuffer.wrap(values);
+            while (header.hasRemaining() || body.hasRemaining()) {
+                out.write(new ByteBuffer[]{header, body});
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: TablebaseGenerator <directory> <endgame or piece count>...");
+            return;
+        }
+        Path directory = Path.of(args[0]);
+        Files.createDirectories(directory);
+        TablebaseGenerator generator = new TablebaseGenerator(directory);
+        for (int i = 1; i < args.length; i++) {
+            List<String> endgames = (args[i].chars().allMatch(Character::isDigit) ?
+                    endgames(Integer.parseInt(args[i])) : List.of(args[i]));
+            for (String endgame : endgames) {
+                long start = System.nanoTime();
+                String name = generator.generate(endgame);
+                System.out.printf("%s %d ms%n", name, (System.nanoTime() - start) / 1_000_000);
+            }
+        }
+    }
+}
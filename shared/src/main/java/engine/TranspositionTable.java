@@ -0,0 +1,166 @@
+package engine;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size table of search results keyed by position hash, kept in one preallocated
+ * {@code long[]} so storing an entry never allocates.
+ * <p>
+ * Each entry is two longs: the data (best move, score, depth, bound and the search
+ * generation that stored it) and the position hash XORed with the data. Threads read
+ * and write entries without locking; an entry torn by two threads writing at once no
+ * longer XORs back to its hash, so it reads as a miss instead of as wrong data.
+ */
+public class TranspositionTable {
+
+    public static final int DEFAULT_MEGABYTES = 16;
+
+    //Bound types: the stored score is exact, at least the true score, or at most the true score
+    public static final int EXACT = 1;
+    public static final int LOWER = 2;
+    public static final int UPPER = 3;
+
+    private static final int BYTES_PER_ENTRY = 16;
+
+    private final long[] table;
+    private final int mask;
+    private volatile int generation;
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    public TranspositionTable() {
+        this(DEFAULT_MEGABYTES);
+    }
+
+    /**
+     * @param megabytes how much memory to use. The table holds the largest power of two
+     *                  entries that fit.
+     */
+    public TranspositionTable(int megabytes) {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException("table needs at least 1 MB");
+        }
+        long entries = Long.highestOneBit((long) megabytes * 1024 * 1024 / BYTES_PER_ENTRY);
+        //A Java array holds at most 2^30 entries of two longs
+        entries = Math.min(entries, 1L << 30);
+        table = new long[(int) entries * 2];
+        mask = (int) entries - 1;
+    }
+
+    /**
+     * @return the entry's data for the position, or 0 if the table has none
+     */
+    public long probe(long hash) {
+        probes.increment();
+        int index = ((int) hash & mask) * 2;
+        long data = table[index + 1];
+        if (data == 0 || (table[index] ^ data) != hash) {
+            return 0;
+        }
+        hits.increment();
+        return data;
+    }
+
+    /**
+     * Stores a result, unless the slot holds a deeper result for the same position from
+     * this search.
+     *
+     * @param score the score from the point of view of the team to move, with mate scores
+     *              counted from the root (they are stored counted from this position)
+     * @param ply   how many plies this position is from the root
+     */
+    public void store(long hash, int move, int score, int depth, int bound, int ply) {
+        int index = ((int) hash & mask) * 2;
+        long old = table[index + 1];
+        if (old != 0 && (table[index] ^ old) == hash && generation(old) == generation && depth(old) > depth) {
+            return;
+        }
+        if (score >= Search.MATE_BOUND) {
+            score += ply;
+        } else if (score <= -Search.MATE_BOUND) {
+            score -= ply;
+        }
+        long data = (move & 0xFFFFL) | ((score & 0xFFFFL) << 16) | ((long) Math.min(depth, 255) << 32) |
+                ((long) bound << 40) | ((long) (generation & 0xFF) << 42);
+        table[index] = hash ^ data;
+        table[index + 1] = data;
+    }
+
+    public static int move(long data) {
+        return (int) (data & 0xFFFF);
+    }
+
+    /**
+     * @param ply how many plies the position is from the root
+     * @return the stored score, with mate scores counted from the root again
+     */
+    public static int score(long data, int ply) {
+        int score = (short) (data >>> 16);
+        if (score >= Search.MATE_BOUND) {
+            return score - ply;
+        } else if (score <= -Search.MATE_BOUND) {
+            return score + ply;
+        }
+        return score;
+    }
+
+    public static int depth(long data) {
+        return (int) ((data >>> 32) & 0xFF);
+    }
+
+    public static int bound(long data) {
+        return (int) ((data >>> 40) & 3);
+    }
+
+    private static int generation(long data) {
+        return (int) ((data >>> 42) & 0xFF);
+    }
+
+    /**
+     * Marks the start of a new search, so entries from older searches give way to new ones.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(table, 0);
+        resetStats();
+    }
+
+    public int entries() {
+        return mask + 1;
+    }
+
+    public long probes() {
+        return probes.sum();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public double hitRate() {
+        long probed = probes.sum();
+        return probed == 0 ? 0 : (double) hits.sum() / probed;
+    }
+
+    public void resetStats() {
+        probes.reset();
+        hits.reset();
+    }
+
+    /**
+     * @return how full the table is, in thousandths, judged from its first 1000 entries
+     */
+    public int permilleFull() {
+        int sampled = Math.min(1000, entries());
+        int used = 0;
+        for (int i = 0; i < sampled; i++) {
+            if (table[i * 2 + 1] != 0) {
+                used++;
+            }
+        }
+        return used * 1000 / sampled;
+    }
+}
@@ -12,7 +12,8 @@ public class RequestException extends Exception {
         UnauthorizedError,
         AlreadyTakenError,
         ServerError,
-        DataAccessError
+        DataAccessError,
+        ServiceUnavailableError
     }
 
     private final Code code;
@@ -40,6 +41,7 @@ public class RequestException extends Exception {
             case 400 -> Code.BadRequestError;
             case 401 -> Code.UnauthorizedError;
             case 403 -> Code.AlreadyTakenError;
+            case 503 -> Code.ServiceUnavailableError;
             default -> throw new IllegalArgumentException("Unknown HTTP status code: " + httpStatusCode);
         };
     }
@@ -50,6 +52,7 @@ public class RequestException extends Exception {
             case BadRequestError -> 400;
             case UnauthorizedError -> 401;
             case AlreadyTakenError -> 403;
+            case ServiceUnavailableError -> 503;
         };
     }
 }
@@ -0,0 +1,3 @@
+package request;
+
+public record AnalysisRequest(int gameID, String authToken) { }
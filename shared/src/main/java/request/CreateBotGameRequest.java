@@ -0,0 +1,7 @@
+package request;
+
+import chess.ChessGame;
+import datamodel.BotLevel;
+
+public record CreateBotGameRequest(String gameName, BotLevel botLevel, ChessGame.TeamColor botColor,
+                                   String authToken) {}
@@ -0,0 +1,7 @@
+package request;
+
+import chess.ChessGame;
+import datamodel.BotLevel;
+
+public record CreateBotGameRequestBody(String gameName, BotLevel botLevel, ChessGame.TeamColor botColor) {
+}
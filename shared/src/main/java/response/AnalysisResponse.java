@@ -0,0 +1,18 @@
+package response;
+
+import datamodel.MoveAnalysis;
+
+import java.util.ArrayList;
+
+/**
+ * How far the analysis of a game has got, with the moves analysed so far.
+ */
+public record AnalysisResponse(int gameID, State state, int analysedMoves, int totalMoves,
+                               ArrayList<MoveAnalysis> moves) {
+    public enum State {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+}
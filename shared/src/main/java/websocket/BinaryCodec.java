@@ -0,0 +1,189 @@
+package websocket;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import exception.RequestException;
+import websocket.commands.UserGameCommand;
+import websocket.messages.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact tagged encoding of websocket commands and messages, used when a client opens
+ * its connection with a binary frame instead of a JSON text frame.
+ * <p>
+ * Every frame starts with a type tag and a flags byte. Game ids and sequence numbers
+ * are varints, moves are 2 bytes (see {@link ChessMove#encode()}) and games are sent
+ * packed (see {@link ChessGame#pack()}). The auth token only needs to be sent on the
+ * first command, after which the server remembers it for the connection.
+ */
+public final class BinaryCodec {
+
+    private static final int HAS_GAME_ID = 1;
+    private static final int HAS_AUTH_TOKEN = 2;
+    private static final int HAS_MOVE = 4;
+    private static final int HAS_TEAM = 8;
+    private static final int TEAM_BLACK = 16;
+    private static final int DELTA_UPDATES = 32;
+    private static final int HAS_LAST_SEQUENCE = 64;
+
+    private static final int HAS_SEQUENCE = 1;
+
+    private BinaryCodec() {
+    }
+
+    public static ByteBuffer encodeCommand(UserGameCommand command, boolean includeAuthToken) {
+        Writer out = new Writer();
+        out.writeByte(command.getCommandType().ordinal());
+        int flags = (command.getGameID() != null ? HAS_GAME_ID : 0)
+                | (includeAuthToken && command.getAuthToken() != null ? HAS_AUTH_TOKEN : 0)
+                | (command.getMove() != null ? HAS_MOVE : 0)
+                | (command.getTeam() != null ? HAS_TEAM : 0)
+                | (command.getTeam() == ChessGame.TeamColor.BLACK ? TEAM_BLACK : 0)
+                | (command.wantsDeltaUpdates() ? DELTA_UPDATES : 0)
+                | (command.getCommandType() == UserGameCommand.CommandType.RESUME ? HAS_LAST_SEQUENCE : 0);
+        out.writeByte(flags);
+        if ((flags & HAS_GAME_ID) != 0) {
+            out.writeVarint(command.getGameID());
+        }
+        if ((flags & HAS_AUTH_TOKEN) != 0) {
+            out.writeString(command.getAuthToken());
+        }
+        if ((flags & HAS_MOVE) != 0) {
+            out.writeShort(command.getMove().encode());
+        }
+        if ((flags & HAS_LAST_SEQUENCE) != 0) {
+            out.writeVarint(command.getLastSequence());
+        }
+        return out.toByteBuffer();
+    }
+
+    /**
+     * @param boundAuthToken the auth token already bound to the connection, used when
+     *                       the frame does not carry one
+     */
+    public static UserGameCommand decodeCommand(ByteBuffer frame, String boundAuthToken) throws RequestException {
+        try {
+            UserGameCommand.CommandType type = UserGameCommand.CommandType.values()[frame.get()];
+            int flags = frame.get();
+            Integer gameID = ((flags & HAS_GAME_ID) != 0 ? (int) readVarint(frame) : null);
+            String authToken = ((flags & HAS_AUTH_TOKEN) != 0 ? readString(frame) : boundAuthToken);
+            ChessMove move = ((flags & HAS_MOVE) != 0 ? ChessMove.decode(frame.getShort() & 0xFFFF) : null);
+            ChessGame.TeamColor team = ((flags & HAS_TEAM) == 0 ? null :
+                    (flags & TEAM_BLACK) != 0 ? ChessGame.TeamColor.BLACK : ChessGame.TeamColor.WHITE);
+            boolean deltaUpdates = (flags & DELTA_UPDATES) != 0;
+            if (move != null) {
+                return new UserGameCommand(type, authToken, gameID, move, team);
+            } else if ((flags & HAS_LAST_SEQUENCE) != 0) {
+                return new UserGameCommand(type, authToken, gameID, team, deltaUpdates, readVarint(frame));
+            } else if (deltaUpdates) {
+                return new UserGameCommand(type, authToken, gameID, team, true);
+            }
+            return new UserGameCommand(type, authToken, gameID, team);
+        } catch (RuntimeException ex) {
+            throw new RequestException("Error: malformed command", RequestException.Code.BadRequestError);
+        }
+    }
+
+    public static ByteBuffer encodeMessage(ServerMessage message) {
+        Writer out = new Writer();
+        out.writeByte(message.getServerMessageType().ordinal());
+        out.writeByte(message.getSequence() != null ? HAS_SEQUENCE : 0);
+        if (message.getSequence() != null) {
+            out.writeVarint(message.getSequence());
+        }
+        switch (message.getServerMessageType()) {
+            case LOAD_GAME -> out.writeBytes(((LoadGame) message).getGame().pack());
+            case ERROR -> out.writeString(((ErrorMessage) message).getErrorMessage());
+            case NOTIFICATION -> out.writeString(((Notification) message).getMessage());
+            case MOVE_APPLIED -> {
+                MoveApplied moveApplied = (MoveApplied) message;
+                out.writeShort(moveApplied.getMove().encode());
+                out.writeVarint(moveApplied.getMoveSequence());
+                out.writeLong(moveApplied.getPositionHash());
+            }
+        }
+        return out.toByteBuffer();
+    }
+
+    public static ServerMessage decodeMessage(ByteBuffer frame) throws RequestException {
+        try {
+            ServerMessage.ServerMessageType type = ServerMessage.ServerMessageType.values()[frame.get()];
+            int flags = frame.get();
+            Long sequence = ((flags & HAS_SEQUENCE) != 0 ? readVarint(frame) : null);
+            ServerMessage message = switch (type) {
+                case LOAD_GAME -> {
+                    byte[] packed = new byte[ChessGame.PACKED_SIZE];
+                    frame.get(packed);
+                    yield new LoadGame(ChessGame.unpack(packed));
+                }
+                case ERROR -> new ErrorMessage(readString(frame));
+                case NOTIFICATION -> new Notification(readString(frame));
+                case MOVE_APPLIED -> {
+                    ChessMove move = ChessMove.decode(frame.getShort() & 0xFFFF);
+                    int moveSequence = (int) readVarint(frame);
+                    yield new MoveApplied(move, moveSequence, frame.getLong());
+                }
+            };
+            message.setSequence(sequence);
+            return message;
+        } catch (RuntimeException ex) {
+            throw new RequestException("Error: malformed message", RequestException.Code.BadRequestError);
+        }
+    }
+
+    private static long readVarint(ByteBuffer frame) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = frame.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static String readString(ByteBuffer frame) {
+        byte[] bytes = new byte[(int) readVarint(frame)];
+        frame.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class Writer extends ByteArrayOutputStream {
+        void writeByte(int b) {
+            write(b);
+        }
+
+        void writeShort(int s) {
+            write(s >>> 8);
+            write(s);
+        }
+
+        void writeLong(long l) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (l >>> shift));
+            }
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeString(String string) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            writeBytes(bytes);
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
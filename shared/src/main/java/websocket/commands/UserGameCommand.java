@@ -18,6 +18,8 @@ public class UserGameCommand {
     private final Integer gameID;
     private final ChessMove move;
     private final TeamColor team;
+    private final Boolean deltaUpdates;
+    private final Long lastSequence;
 
     public UserGameCommand(CommandType commandType, String authToken, Integer gameID) {
         this.commandType = commandType;
@@ -25,6 +27,8 @@ public class UserGameCommand {
         this.gameID = gameID;
         move = null;
         team = null;
+        deltaUpdates = null;
+        lastSequence = null;
     }
 
     public UserGameCommand(CommandType commandType, String authToken, Integer gameID, ChessMove move, TeamColor team) {
@@ -33,6 +37,8 @@ public class UserGameCommand {
         this.gameID = gameID;
         this.move = move;
         this.team = team;
+        deltaUpdates = null;
+        lastSequence = null;
     }
 
     public UserGameCommand(CommandType commandType, String authToken, Integer gameID, TeamColor team) {
@@ -41,13 +47,39 @@ public class UserGameCommand {
         this.gameID = gameID;
         this.team = team;
         move = null;
+        deltaUpdates = null;
+        lastSequence = null;
+    }
+
+    public UserGameCommand(CommandType commandType, String authToken, Integer gameID, TeamColor team,
+                           boolean deltaUpdates) {
+        this.commandType = commandType;
+        this.authToken = authToken;
+        this.gameID = gameID;
+        this.team = team;
+        this.deltaUpdates = deltaUpdates;
+        move = null;
+        lastSequence = null;
+    }
+
+    public UserGameCommand(CommandType commandType, String authToken, Integer gameID, TeamColor team,
+                           boolean deltaUpdates, long lastSequence) {
+        this.commandType = commandType;
+        this.authToken = authToken;
+        this.gameID = gameID;
+        this.team = team;
+        this.deltaUpdates = deltaUpdates;
+        this.lastSequence = lastSequence;
+        move = null;
     }
 
     public enum CommandType {
         CONNECT,
         MAKE_MOVE,
         LEAVE,
-        RESIGN
+        RESIGN,
+        SYNC,
+        RESUME
     }
 
     public CommandType getCommandType() {
@@ -70,6 +102,20 @@ public class UserGameCommand {
         return team;
     }
 
+    /**
+     * @return True if the client wants MOVE_APPLIED deltas instead of a full LOAD_GAME after each move
+     */
+    public boolean wantsDeltaUpdates() {
+        return deltaUpdates != null && deltaUpdates;
+    }
+
+    /**
+     * @return The last message sequence number a resuming client received, or 0 if none was given
+     */
+    public long getLastSequence() {
+        return lastSequence == null ? 0 : lastSequence;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -96,6 +142,8 @@ public class UserGameCommand {
                 ", gameID=" + gameID +
                 ", move=" + move +
                 ", team=" + team +
+                ", deltaUpdates=" + deltaUpdates +
+                ", lastSequence=" + lastSequence +
                 '}';
     }
 }
@@ -0,0 +1,36 @@
+package websocket.messages;
+
+import chess.ChessMove;
+
+/**
+ * Sent instead of a full {@link LoadGame} to clients that asked for delta updates.
+ * Clients apply the move to their own copy of the game and check the resulting
+ * position hash, asking for a full reload if anything doesn't line up.
+ */
+public class MoveApplied extends ServerMessage {
+    private final ChessMove move;
+    private final int moveSequence;
+    private final long positionHash;
+
+    public MoveApplied(ChessMove move, int moveSequence, long positionHash) {
+        super(ServerMessageType.MOVE_APPLIED);
+        this.move = move;
+        this.moveSequence = moveSequence;
+        this.positionHash = positionHash;
+    }
+
+    public ChessMove getMove() {
+        return move;
+    }
+
+    /**
+     * @return The game's move count after this move was made
+     */
+    public int getMoveSequence() {
+        return moveSequence;
+    }
+
+    public long getPositionHash() {
+        return positionHash;
+    }
+}
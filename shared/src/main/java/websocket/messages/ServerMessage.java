@@ -12,11 +12,13 @@ import java.util.Objects;
  */
 public class ServerMessage {
     ServerMessageType serverMessageType;
+    Long sequence;
 
     public enum ServerMessageType {
         LOAD_GAME,
         ERROR,
-        NOTIFICATION
+        NOTIFICATION,
+        MOVE_APPLIED
     }
 
     public ServerMessage(ServerMessageType type) {
@@ -27,6 +29,18 @@ public class ServerMessage {
         return this.serverMessageType;
     }
 
+    /**
+     * @return The game's message sequence number as of this message, or null if the
+     * message was not part of a game's message stream
+     */
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(Long sequence) {
+        this.sequence = sequence;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -0,0 +1,65 @@
+package engine;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MoveOrdererTest {
+
+    private static int square(String name) {
+        return (name.charAt(1) - '1') * 8 + (name.charAt(0) - 'a');
+    }
+
+    private static int move(String from, String to) {
+        return Position.move(square(from), square(to), -1);
+    }
+
+    @Test
+    public void staticExchange() {
+        //Rook takes a knight defended by a pawn
+        Position position = Position.fromFen("4k3/8/3p4/4n3/8/8/8/4RK2 w - - 0 1");
+        Assertions.assertEquals(-180, MoveOrderer.staticExchange(position, move("e1", "e5")));
+        Assertions.assertTrue(MoveOrderer.isLosingCapture(position, move("e1", "e5")));
+
+        //Rooks doubled behind each other win a pawn defended once
+        position = Position.fromFen("4r1k1/8/8/4p3/8/8/4R3/4RK2 w - - 0 1");
+        Assertions.assertEquals(100, MoveOrderer.staticExchange(position, move("e2", "e5")));
+
+        //The bishop recaptures before the queen, so taking the knight loses the queen
+        position = Position.fromFen("4k3/8/5b2/4n3/8/8/8/4QK2 w - - 0 1");
+        Assertions.assertEquals(320 - 900, MoveOrderer.staticExchange(position, move("e1", "e5")));
+
+        //Pawn takes an undefended knight
+        position = Position.fromFen("4k3/8/8/4n3/3P4/8/8/4K3 w - - 0 1");
+        Assertions.assertEquals(320, MoveOrderer.staticExchange(position, move("d4", "e5")));
+        Assertions.assertFalse(MoveOrderer.isLosingCapture(position, move("d4", "e5")));
+    }
+
+    @Test
+    public void ordersMoves() {
+        Position position = Position.fromFen("4k3/8/3p4/4n3/8/1q6/P7/4RK2 w - - 0 1");
+        MoveOrderer orderer = new MoveOrderer();
+        int[] moves = new int[Position.MAX_MOVES];
+        int count = position.generateMoves(moves, false);
+        orderer.cutoff(position, move("f1", "g1"), 3, 0, 2);
+        orderer.score(position, moves, count, 0, 0);
+
+        Assertions.assertEquals(move("a2", "b3"), orderer.next(moves, count, 0, 0));
+        Assertions.assertEquals(move("f1", "g1"), orderer.next(moves, count, 1, 0));
+        int last = 0;
+        for (int i = 2; i < count; i++) {
+            last = orderer.next(moves, count, i, 0);
+        }
+        Assertions.assertEquals(move("e1", "e5"), last);
+        Assertions.assertTrue(orderer.isLosingCapture(0, count - 1));
+        Assertions.assertEquals(0, orderer.firstMoveCutoffRate());
+    }
+
+    @Test
+    public void mostCutoffsOnFirstMove() {
+        Search search = new Search();
+        search.search(Position.fromFen(PositionTest.KIWIPETE), SearchLimits.depth(6));
+        Assertions.assertTrue(search.getOrderer().cutoffs() > 0);
+        Assertions.assertTrue(search.getOrderer().firstMoveCutoffRate() > 0.8,
+                "first move cutoff rate " + search.getOrderer().firstMoveCutoffRate());
+    }
+}
@@ -0,0 +1,65 @@
+package engine;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+public class OpeningBookTest {
+
+    private static final String GAMES = """
+            1. e4 e5 2. Nf3 Nc6 1-0
+            1. e4 e5 2. Nf3 Nf6 0-1
+            1. e4 c5 2. Nf3 d6 1/2-1/2
+            1. d4 d5 2. c4 e6 1-0
+            """;
+
+    @TempDir
+    Path directory;
+
+    private static int square(String name) {
+        return (name.charAt(1) - '1') * 8 + (name.charAt(0) - 'a');
+    }
+
+    private static ChessMove move(String from, String to) {
+        return Position.toChessMove(Position.move(square(from), square(to), -1));
+    }
+
+    @Test
+    public void buildsAndLooksUpMoves() throws IOException {
+        OpeningBookBuilder builder = new OpeningBookBuilder(3);
+        builder.addPgn(new StringReader(GAMES));
+        Path path = directory.resolve("test.book");
+        //e4, e4-e5, e4-e5-Nf3, and Nf3 after c5 only once
+        Assertions.assertEquals(3, builder.write(path, 2));
+        Assertions.assertEquals(4, builder.games());
+
+        try (OpeningBook book = OpeningBook.open(path)) {
+            Assertions.assertEquals(3, book.size());
+            Position start = Position.fromGame(new ChessGame());
+            Assertions.assertEquals(List.of(new OpeningBook.BookMove(move("e2", "e4"), 3)), book.moves(start));
+            Assertions.assertEquals(move("e2", "e4"), book.pickMove(start, new Random(1)));
+            Assertions.assertFalse(book.contains(start, move("d2", "d4")));
+
+            start.make(Position.fromChessMove(move("e2", "e4")));
+            Assertions.assertEquals(move("e7", "e5"), book.bestMove(start));
+            start.make(Position.fromChessMove(move("c7", "c5")));
+            Assertions.assertNull(book.bestMove(start));
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        Path path = directory.resolve("not.book");
+        Files.writeString(path, "1. e4 e5 2. Nf3 Nc6 1-0");
+        Assertions.assertThrows(IOException.class, () -> OpeningBook.open(path));
+    }
+}
@@ -0,0 +1,32 @@
+package engine;
+
+import chess.ChessMove;
+import chess.ChessPosition;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ParallelSearchTest {
+
+    @Test
+    public void findsSameMoveAsOneThread() {
+        Position position = Position.fromFen("4k3/8/8/3q4/8/8/3R4/4K3 w - - 0 1");
+        try (ParallelSearch search = new ParallelSearch(3, new TranspositionTable(4))) {
+            Assertions.assertEquals(3, search.getThreads());
+            SearchResult result = search.search(position, SearchLimits.depth(5));
+            Assertions.assertEquals(new ChessMove(new ChessPosition(2, 4), new ChessPosition(5, 4), null),
+                    result.bestMove());
+            Assertions.assertEquals(5, result.depth());
+        }
+    }
+
+    @Test
+    public void stopsHelpersWhenMainFinishes() {
+        try (ParallelSearch search = new ParallelSearch(4, new TranspositionTable(4))) {
+            for (int i = 0; i < 3; i++) {
+                SearchResult result = search.search(Position.fromFen(PositionTest.KIWIPETE), SearchLimits.millis(100));
+                Assertions.assertNotNull(result.bestMove());
+                Assertions.assertTrue(result.millis() < 2000, "took " + result.millis());
+            }
+        }
+    }
+}
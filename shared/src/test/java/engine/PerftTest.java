@@ -0,0 +1,28 @@
+package engine;
+
+import chess.ChessGame;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PerftTest {
+
+    @Test
+    public void parallelCountsMatch() {
+        try (Perft perft = new Perft(3, 2, 0)) {
+            Perft.Result result = perft.count(new ChessGame(), 4);
+            Assertions.assertEquals(197281, result.nodes());
+            Assertions.assertEquals(3, result.threads());
+            Assertions.assertEquals(97814, perft.count(Position.fromFen(PositionTest.KIWIPETE), 3).nodes());
+        }
+    }
+
+    @Test
+    public void countTableKeepsCountsRight() {
+        try (Perft perft = new Perft(2, 1, 1)) {
+            Assertions.assertEquals(4865609, perft.count(new ChessGame(), 5).nodes());
+            //Counted again from the table
+            Assertions.assertEquals(4865609, perft.count(new ChessGame(), 5).nodes());
+            Assertions.assertEquals(1, perft.count(new ChessGame(), 0).nodes());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package engine;
+
+import chess.ChessMove;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PgnTest {
+
+    private static int square(String name) {
+        return (name.charAt(1) - '1') * 8 + (name.charAt(0) - 'a');
+    }
+
+    private static int move(String from, String to) {
+        return Position.move(square(from), square(to), -1);
+    }
+
+    @Test
+    public void parsesMoves() {
+        Position position = Position.fromFen("r3k2r/1P6/8/8/8/2N3N1/8/R3K2R w KQkq - 0 1");
+        Assertions.assertEquals(move("e1", "g1"), Pgn.parseMove(position, "O-O"));
+        Assertions.assertEquals(move("e1", "c1"), Pgn.parseMove(position, "O-O-O+"));
+        Assertions.assertEquals(Position.move(square("b7"), square("a8"), Position.QUEEN),
+                Pgn.parseMove(position, "bxa8=Q+"));
+        Assertions.assertEquals(Position.move(square("b7"), square("b8"), Position.KNIGHT),
+                Pgn.parseMove(position, "b8N"));
+        //Both knights can reach e4
+        Assertions.assertEquals(-1, Pgn.parseMove(position, "Ne4"));
+        Assertions.assertEquals(move("c3", "e4"), Pgn.parseMove(position, "Nce4"));
+        Assertions.assertEquals(move("g3", "e4"), Pgn.parseMove(position, "Nge4!?"));
+        Assertions.assertEquals(-1, Pgn.parseMove(position, "Qd4"));
+    }
+
+    @Test
+    public void readsGames() throws IOException {
+        String pgn = """
+                [Event "Test"]
+                [White "Somebody"]
+
+                1. e4 e5 {the open game} 2. Nf3 (2. f4 exf4) 2... Nc6 3.Bb5 $1 a6 1-0
+
+                [Event "Test"]
+
+                1. d4 d5 2. c4 ; queen's gambit
+                dxc4 2. Zz9 e5 *
+                """;
+        List<List<ChessMove>> games = new ArrayList<>();
+        Pgn.readGames(new StringReader(pgn), games::add);
+
+        Assertions.assertEquals(2, games.size());
+        Assertions.assertEquals(6, games.get(0).size());
+        Assertions.assertEquals(Position.toChessMove(move("f1", "b5")), games.get(0).get(4));
+        //The game stops at the move that can't be read
+        Assertions.assertEquals(4, games.get(1).size());
+    }
+}
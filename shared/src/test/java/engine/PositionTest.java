@@ -0,0 +1,117 @@
+package engine;
+
+import chess.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class PositionTest {
+
+    static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+    static long perft(Position position, int depth) {
+        int[] moves = new int[Position.MAX_MOVES];
+        int count = position.legalMoves(moves);
+        if (depth == 1) {
+            return count;
+        }
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            position.make(moves[i]);
+            nodes += perft(position, depth - 1);
+            position.unmake(moves[i]);
+        }
+        return nodes;
+    }
+
+    @Test
+    public void perftCounts() {
+        Assertions.assertEquals(197281, perft(Position.fromFen(START), 4));
+        Assertions.assertEquals(43238, perft(Position.fromFen("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1"), 4));
+        Assertions.assertEquals(62379, perft(Position.fromFen(
+                "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8"), 3));
+        //These are 97862 and 9467 in standard chess, but ChessGame won't castle queenside past an attacked
+        //b-file square
+        Assertions.assertEquals(97814, perft(Position.fromFen(KIWIPETE), 3));
+        Assertions.assertEquals(9221, perft(Position.fromFen(
+                "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1"), 3));
+    }
+
+    @Test
+    public void unmakeRestoresPosition() {
+        Position position = Position.fromFen(KIWIPETE);
+        long hash = position.hash();
+        int evaluation = Evaluator.evaluate(position);
+        int[] moves = new int[Position.MAX_MOVES];
+        int count = position.legalMoves(moves);
+        for (int i = 0; i < count; i++) {
+            position.make(moves[i]);
+            position.unmake(moves[i]);
+            Assertions.assertEquals(hash, position.hash());
+            Assertions.assertEquals(evaluation, Evaluator.evaluate(position));
+        }
+        Assertions.assertEquals(48, count);
+    }
+
+    @Test
+    public void evaluationIsSymmetric() {
+        Position start = Position.fromFen(START);
+        Assertions.assertEquals(0, Evaluator.evaluate(start));
+        Assertions.assertEquals(Evaluator.MAX_PHASE, start.phase());
+
+        Position white = Position.fromFen("4k3/8/8/8/8/8/3PP3/2N1K3 w - - 0 1");
+        Position black = Position.fromFen("2n1k3/3pp3/8/8/8/8/8/4K3 b - - 0 1");
+        Assertions.assertEquals(Evaluator.evaluate(white), Evaluator.evaluate(black));
+        Assertions.assertEquals(1, white.phase());
+    }
+
+    @Test
+    public void matchesGameOverRandomGames() throws InvalidMoveException {
+        Random random = new Random(7);
+        int[] moves = new int[Position.MAX_MOVES];
+        for (int gameNumber = 0; gameNumber < 20; gameNumber++) {
+            ChessGame game = new ChessGame();
+            Position position = Position.fromGame(game);
+            Assertions.assertEquals(Position.fromFen(START).hash(), position.hash());
+            for (int ply = 0; ply < 150; ply++) {
+                int count = position.legalMoves(moves);
+                Set<ChessMove> gameMoves = validMoves(game);
+                for (int i = 0; i < count; i++) {
+                    Assertions.assertTrue(gameMoves.contains(Position.toChessMove(moves[i])),
+                            "engine move " + Position.toChessMove(moves[i]) + " not valid in game");
+                }
+                if (count == 0) {
+                    Assertions.assertTrue(gameMoves.isEmpty());
+                    break;
+                }
+                int move = moves[random.nextInt(count)];
+                game.makeMove(Position.toChessMove(move));
+                position.make(move);
+                Assertions.assertEquals(ZobristHash.hash(game), position.hash());
+                Position rebuilt = Position.fromGame(game);
+                Assertions.assertEquals(rebuilt.hash(), position.hash());
+                Assertions.assertEquals(rebuilt.midgameScore(), position.midgameScore());
+                Assertions.assertEquals(rebuilt.endgameScore(), position.endgameScore());
+                Assertions.assertEquals(rebuilt.phase(), position.phase());
+            }
+        }
+    }
+
+    private static Set<ChessMove> validMoves(ChessGame game) {
+        Set<ChessMove> moves = new HashSet<>();
+        for (int row = 1; row <= 8; row++) {
+            for (int col = 1; col <= 8; col++) {
+                ChessPosition square = new ChessPosition(row, col);
+                ChessPiece piece = game.getBoard().getPiece(square);
+                if (piece != null && piece.getTeamColor() == game.getTeamTurn()) {
+                    moves.addAll(game.validMoves(square));
+                }
+            }
+        }
+        return moves;
+    }
+}
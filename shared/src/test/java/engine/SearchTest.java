@@ -0,0 +1,60 @@
+package engine;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SearchTest {
+
+    @Test
+    public void findsMateInOne() {
+        //Back rank mate: Re8#
+        SearchResult result = new Search().search(Position.fromFen("6k1/5ppp/8/8/8/8/5PPP/4R1K1 w - - 0 1"),
+                SearchLimits.depth(4));
+        Assertions.assertEquals(new ChessMove(new ChessPosition(1, 5), new ChessPosition(8, 5), null),
+                result.bestMove());
+        Assertions.assertTrue(result.isMate());
+        Assertions.assertEquals(Search.MATE - 1, result.score());
+        Assertions.assertEquals(1, result.principalVariation().size());
+    }
+
+    @Test
+    public void winsHangingQueen() {
+        SearchResult result = new Search().search(Position.fromFen("4k3/8/8/3q4/8/8/3R4/4K3 w - - 0 1"),
+                SearchLimits.depth(3));
+        Assertions.assertEquals(new ChessMove(new ChessPosition(2, 4), new ChessPosition(5, 4), null),
+                result.bestMove());
+        Assertions.assertTrue(result.score() > 300);
+    }
+
+    @Test
+    public void stopsAtNodeLimit() {
+        SearchResult result = new Search().search(new ChessGame(), SearchLimits.nodes(20000));
+        Assertions.assertNotNull(result.bestMove());
+        Assertions.assertTrue(result.depth() >= 1);
+        Assertions.assertTrue(result.nodes() <= 20001, "visited " + result.nodes());
+        Assertions.assertEquals(result.bestMove(), result.principalVariation().getFirst());
+    }
+
+    @Test
+    public void reusesTranspositionTable() {
+        Search search = new Search();
+        Position position = Position.fromFen(PositionTest.KIWIPETE);
+        SearchResult first = search.search(position, SearchLimits.depth(5));
+        Assertions.assertTrue(search.getTable().hitRate() > 0);
+        SearchResult second = search.search(position, SearchLimits.depth(5));
+        Assertions.assertTrue(second.nodes() < first.nodes() / 2,
+                "first " + first.nodes() + ", second " + second.nodes());
+        Assertions.assertEquals(first.score(), second.score());
+    }
+
+    @Test
+    public void noMovesWhenMated() {
+        SearchResult result = new Search().search(Position.fromFen("R5k1/5ppp/8/8/8/8/5PPP/6K1 b - - 0 1"),
+                SearchLimits.depth(3));
+        Assertions.assertNull(result.bestMove());
+        Assertions.assertEquals(-Search.MATE, result.score());
+    }
+}
@@ -0,0 +1,100 @@
+package engine;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class TablebaseTest {
+
+    @TempDir
+    static Path directory;
+
+    private static Tablebase tablebase;
+
+    @BeforeAll
+    public static void generate() throws IOException {
+        TablebaseGenerator generator = new TablebaseGenerator(directory);
+        Assertions.assertEquals("KQvK", generator.generate("KvKQ"));
+        generator.generate("KPvK");
+        tablebase = Tablebase.open(directory);
+    }
+
+    @AfterAll
+    public static void close() throws IOException {
+        tablebase.close();
+    }
+
+    private static Tablebase.Result probe(String fen) {
+        return tablebase.probe(Position.fromFen(fen));
+    }
+
+    //The longest win in the table, in plies
+    private static int longestWin(String name) throws IOException {
+        byte[] file = Files.readAllBytes(directory.resolve(name + Tablebase.EXTENSION));
+        int longest = 0;
+        for (int i = Tablebase.HEADER_SIZE; i < file.length; i++) {
+            int value = file[i] & 0xff;
+            if (value != Tablebase.ILLEGAL && Tablebase.decode(value).outcome() == Tablebase.Outcome.WIN) {
+                longest = Math.max(longest, value - 1);
+            }
+        }
+        return longest;
+    }
+
+    @Test
+    public void generatesTheSmallerTablesFirst() {
+        for (String name : List.of("KQvK", "KRvK", "KBvK", "KNvK", "KPvK")) {
+            Assertions.assertTrue(Files.exists(directory.resolve(name + Tablebase.EXTENSION)), name);
+        }
+        Assertions.assertEquals(3, tablebase.maxPieces());
+        Assertions.assertEquals(List.of("KQvK", "KBvK", "KNvK", "KRvK", "KPvK"), TablebaseGenerator.endgames(3));
+    }
+
+    @Test
+    public void knowsTheLongestMates() throws IOException {
+        //Mate in 10 with the queen and 16 with the rook, counted from white's move
+        Assertions.assertEquals(19, longestWin("KQvK"));
+        Assertions.assertEquals(31, longestWin("KRvK"));
+        Assertions.assertEquals(0, longestWin("KBvK"));
+        Assertions.assertEquals(0, longestWin("KNvK"));
+    }
+
+    @Test
+    public void probesPositions() {
+        Assertions.assertEquals(new Tablebase.Result(Tablebase.Outcome.WIN, 1), probe("7k/8/6K1/8/8/8/Q7/8 w - -"));
+        Assertions.assertEquals(new Tablebase.Result(Tablebase.Outcome.LOSS, 0), probe("Q6k/8/6K1/8/8/8/8/8 b - -"));
+        //Stalemate
+        Assertions.assertEquals(new Tablebase.Result(Tablebase.Outcome.DRAW, 0), probe("7k/5Q2/6K1/8/8/8/8/8 b - -"));
+        //The same mate with the colors swapped is looked up in KQvK
+        Assertions.assertEquals(new Tablebase.Result(Tablebase.Outcome.WIN, 1), probe("8/q7/8/8/8/6k1/8/7K b - -"));
+
+        //The king in front of a rook pawn draws, a king on the sixth ahead of its pawn wins
+        Assertions.assertEquals(Tablebase.Outcome.DRAW, probe("k7/8/8/8/8/8/P7/7K w - -").outcome());
+        Assertions.assertEquals(Tablebase.Outcome.LOSS, probe("4k3/8/4K3/4P3/8/8/8/8 b - -").outcome());
+        Assertions.assertEquals(Tablebase.Outcome.DRAW, probe("4k3/4P3/4K3/8/8/8/8/8 b - -").outcome());
+        Assertions.assertEquals(Tablebase.Outcome.DRAW, probe("8/8/8/3k4/8/8/8/4K3 w - -").outcome());
+
+        //Not covered: the side not to move is in check, too many pieces, castling rights
+        Assertions.assertNull(probe("7k/8/6K1/8/8/8/8/7Q w - -"));
+        Assertions.assertNull(probe("7k/8/6K1/8/8/8/8/QQ6 w - -"));
+        Assertions.assertNull(probe("4k3/8/8/8/8/8/8/R3K3 w Q -"));
+    }
+
+    @Test
+    public void searchUsesTheTablebase() {
+        Search search = new Search();
+        search.setTablebase(tablebase);
+        //A mate far too deep for a 2 ply search to see on its own
+        SearchResult result = search.search(Position.fromFen("8/8/8/4k3/8/8/8/R3K3 w - -"), SearchLimits.depth(2));
+        Assertions.assertTrue(result.score() >= Search.MATE_BOUND);
+        Assertions.assertEquals(Search.MATE - 1,
+                search.search(Position.fromFen("7k/8/6K1/8/8/8/Q7/8 w - -"), SearchLimits.depth(2)).score());
+    }
+}
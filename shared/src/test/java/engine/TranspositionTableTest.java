@@ -0,0 +1,47 @@
+package engine;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TranspositionTableTest {
+
+    @Test
+    public void storeAndProbe() {
+        TranspositionTable table = new TranspositionTable(1);
+        Assertions.assertEquals(65536, table.entries());
+        long hash = 0x123456789ABCDEFL;
+        int move = Position.move(12, 28, -1);
+        table.store(hash, move, -250, 7, TranspositionTable.LOWER, 3);
+
+        long entry = table.probe(hash);
+        Assertions.assertEquals(move, TranspositionTable.move(entry));
+        Assertions.assertEquals(-250, TranspositionTable.score(entry, 3));
+        Assertions.assertEquals(7, TranspositionTable.depth(entry));
+        Assertions.assertEquals(TranspositionTable.LOWER, TranspositionTable.bound(entry));
+
+        //Same slot, different position
+        Assertions.assertEquals(0, table.probe(hash + 65536));
+        Assertions.assertEquals(0.5, table.hitRate());
+    }
+
+    @Test
+    public void mateScoresAreRelativeToPosition() {
+        TranspositionTable table = new TranspositionTable(1);
+        //Mate found 5 plies from the root, 2 plies below this position
+        table.store(42, 0, Search.MATE - 5, 2, TranspositionTable.EXACT, 3);
+        //Reached again 1 ply from the root, the mate is 3 plies away
+        Assertions.assertEquals(Search.MATE - 3, TranspositionTable.score(table.probe(42), 1));
+    }
+
+    @Test
+    public void keepsDeeperEntryWithinSearch() {
+        TranspositionTable table = new TranspositionTable(1);
+        table.store(42, 0, 10, 6, TranspositionTable.EXACT, 0);
+        table.store(42, 0, 20, 2, TranspositionTable.EXACT, 0);
+        Assertions.assertEquals(6, TranspositionTable.depth(table.probe(42)));
+
+        table.newSearch();
+        table.store(42, 0, 20, 2, TranspositionTable.EXACT, 0);
+        Assertions.assertEquals(2, TranspositionTable.depth(table.probe(42)));
+    }
+}
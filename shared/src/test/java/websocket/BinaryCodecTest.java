@@ -0,0 +1,81 @@
+package websocket;
+
+import chess.*;
+import exception.RequestException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import websocket.commands.UserGameCommand;
+import websocket.messages.*;
+
+import java.nio.ByteBuffer;
+
+public class BinaryCodecTest {
+
+    private final ChessMove promotion = new ChessMove(new ChessPosition(7, 2), new ChessPosition(8, 1),
+            ChessPiece.PieceType.KNIGHT);
+
+    @Test
+    public void moveRoundTrip() {
+        Assertions.assertEquals(promotion, ChessMove.decode(promotion.encode()));
+        ChessMove plain = new ChessMove(new ChessPosition(1, 1), new ChessPosition(8, 8), null);
+        Assertions.assertEquals(plain, ChessMove.decode(plain.encode()));
+    }
+
+    @Test
+    public void gameRoundTrip() throws InvalidMoveException {
+        ChessGame game = new ChessGame();
+        game.makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        ChessGame unpacked = ChessGame.unpack(game.pack());
+        Assertions.assertEquals(game, unpacked);
+        Assertions.assertEquals(game.getMoveCount(), unpacked.getMoveCount());
+        Assertions.assertEquals(game.positionHash(), unpacked.positionHash());
+    }
+
+    @Test
+    public void commandRoundTrip() throws RequestException {
+        var move = new UserGameCommand(UserGameCommand.CommandType.MAKE_MOVE, "token", 1234, promotion,
+                ChessGame.TeamColor.WHITE);
+        ByteBuffer frame = BinaryCodec.encodeCommand(move, false);
+        Assertions.assertTrue(frame.remaining() <= 6);
+        UserGameCommand decoded = BinaryCodec.decodeCommand(frame, "token");
+        Assertions.assertEquals(move, decoded);
+        Assertions.assertEquals(promotion, decoded.getMove());
+        Assertions.assertEquals(ChessGame.TeamColor.WHITE, decoded.getTeam());
+
+        var resume = new UserGameCommand(UserGameCommand.CommandType.RESUME, "token", 7, ChessGame.TeamColor.BLACK,
+                true, 300);
+        decoded = BinaryCodec.decodeCommand(BinaryCodec.encodeCommand(resume, true), null);
+        Assertions.assertEquals(resume, decoded);
+        Assertions.assertEquals(300, decoded.getLastSequence());
+        Assertions.assertTrue(decoded.wantsDeltaUpdates());
+        Assertions.assertEquals(ChessGame.TeamColor.BLACK, decoded.getTeam());
+    }
+
+    @Test
+    public void messageRoundTrip() throws RequestException {
+        ChessGame game = new ChessGame();
+        LoadGame loadGame = new LoadGame(game);
+        loadGame.setSequence(42L);
+        LoadGame decodedLoad = (LoadGame) BinaryCodec.decodeMessage(BinaryCodec.encodeMessage(loadGame));
+        Assertions.assertEquals(game, decodedLoad.getGame());
+        Assertions.assertEquals(42L, decodedLoad.getSequence());
+
+        MoveApplied moveApplied = new MoveApplied(promotion, 12, game.positionHash());
+        MoveApplied decodedMove = (MoveApplied) BinaryCodec.decodeMessage(BinaryCodec.encodeMessage(moveApplied));
+        Assertions.assertEquals(promotion, decodedMove.getMove());
+        Assertions.assertEquals(12, decodedMove.getMoveSequence());
+        Assertions.assertEquals(game.positionHash(), decodedMove.getPositionHash());
+        Assertions.assertNull(decodedMove.getSequence());
+
+        Notification notification = new Notification("héllo");
+        Notification decodedNotification = (Notification) BinaryCodec.decodeMessage(
+                BinaryCodec.encodeMessage(notification));
+        Assertions.assertEquals("héllo", decodedNotification.getMessage());
+    }
+
+    @Test
+    public void malformedFrame() {
+        Assertions.assertThrows(RequestException.class,
+                () -> BinaryCodec.decodeCommand(ByteBuffer.wrap(new byte[]{1}), null));
+    }
+}